@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.config;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+/**
+ * The entity endpoints compute their ETags from per-table version counters
+ * (see TableVersionService). /api/currentUser has no such counter, but the
+ * frontend polls it constantly, so it gets a content-hash ETag instead: the
+ * response is still built, but unchanged bodies go back as an empty 304.
+ */
+
+@Configuration
+public class EtagConfig {
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> currentUserEtagFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration =
+                new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/api/currentUser");
+        return registration;
+    }
+}
@@ -2,25 +2,45 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Apartment;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BatchItem;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
 import edu.ucsb.cs156.example.repositories.ApartmentRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.ApartmentCityCache;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 
 @Api(description = "Apartment")
 @RequestMapping("/api/apartment")
@@ -31,27 +51,121 @@ public class ApartmentController extends ApiController {
     @Autowired
     ApartmentRepository apartmentRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    ApartmentCityCache apartmentCityCache;
+
     @ApiOperation(value = "List all apartments")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Apartment> allApartments() {
-        Iterable<Apartment> apartments = apartmentRepository.findAll();
-        return apartments;
+    public ResponseEntity<?> allApartments(
+            @ApiParam("only list apartments whose code sorts after this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of apartments to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. code,name (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of apartments in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Apartment.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Apartment.class, apartmentRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(apartmentRepository, Apartment.class, "code", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Apartment> apartments = apartmentRepository.findAll();
+            return ResponseEntity.ok(apartments);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Apartment> apartments = after == null
+                ? apartmentRepository.findAllByOrderByCodeAsc(page)
+                : apartmentRepository.findByCodeGreaterThanOrderByCodeAsc(after, page);
+        return keysetPage(apartments, page, Apartment::getCode);
+    }
+
+    @ApiOperation(value = "Export all apartments as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportApartments(HttpServletResponse response) throws IOException {
+        writeNdjson(apartmentRepository.streamAll(), apartmentRepository, response);
+    }
+
+    @ApiOperation(value = "Count the apartments")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countApartment(WebRequest webRequest) {
+        if (notModified(webRequest, Apartment.class)) {
+            return null;
+        }
+
+        return Map.of("count", apartmentRepository.count());
     }
 
     @ApiOperation(value = "Get a single apartment")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Apartment getById(
-            @ApiParam("code") @RequestParam String code) {
+            @ApiParam("code") @RequestParam String code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Apartment.class)) {
+            return null;
+        }
+
         Apartment apartment = apartmentRepository.findById(code)
                 .orElseThrow(() -> new EntityNotFoundException(Apartment.class, code));
 
         return apartment;
     }
 
+    @ApiOperation(value = "Get several apartments at once, in request order")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/batch")
+    public List<BatchItem<Apartment>> getBatch(
+            @ApiParam("code (repeat the parameter for each one)") @RequestParam List<String> code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Apartment.class)) {
+            return null;
+        }
+
+        return batchLookup(Apartment.class, code, apartmentRepository::findAllById, Apartment::getCode);
+    }
+
+    @ApiOperation(value = "Search apartments by city, state and number of rooms")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/search")
+    public List<Apartment> searchApartments(
+            @ApiParam("city, exact match (default: any)") @RequestParam(required = false) String city,
+            @ApiParam("state, exact match (default: any)") @RequestParam(required = false) String state,
+            @ApiParam("fewest rooms, inclusive") @RequestParam(defaultValue = "0") int minRooms,
+            @ApiParam("most rooms, inclusive") @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int maxRooms,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Apartment.class)) {
+            return null;
+        }
+
+        if (city != null) {
+            return apartmentCityCache.apartmentsIn(city).stream()
+                    .filter(apartment -> state == null || state.equals(apartment.getState()))
+                    .filter(apartment -> apartment.getRooms() >= minRooms && apartment.getRooms() <= maxRooms)
+                    .collect(Collectors.toList());
+        }
+        if (state != null) {
+            return apartmentRepository.findByStateAndRoomsBetweenOrderByCodeAsc(state, minRooms, maxRooms);
+        }
+        return apartmentRepository.findByRoomsBetweenOrderByCodeAsc(minRooms, maxRooms);
+    }
+
     @ApiOperation(value = "Create a new apartment")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Apartment postApartment(
         @ApiParam("code") @RequestParam String code,
@@ -74,24 +188,51 @@ public class ApartmentController extends ApiController {
         apartment.setDescription(description);
 
         Apartment savedApartment = apartmentRepository.save(apartment);
+        entityChanged(Operation.CREATE, Apartment.class, code, savedApartment);
 
         return savedApartment;
     }
 
+    @ApiOperation(value = "Create many apartments from a JSON array of rows; with upsert=true, rows whose key exists replace the stored row")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostApartments(HttpServletRequest request,
+            @ApiParam("upsert") @RequestParam(defaultValue = "false") boolean upsert) throws IOException {
+        if (upsert) {
+            return bulkWriter.upsert(request.getInputStream(), Apartment.class, Apartment::getCode,
+                    apartment -> missingKey(apartment.getCode(), "code"),
+                    apartmentRepository::findExistingCodes, apartmentRepository);
+        }
+        return bulkWriter.insert(request.getInputStream(), Apartment.class, Apartment::getCode,
+                apartment -> missingKey(apartment.getCode(), "code"),
+                apartmentRepository::findExistingCodes, apartmentRepository::insertAll);
+    }
+
     @ApiOperation(value = "Delete an Apartment")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteApartment(
             @ApiParam("code") @RequestParam String code) {
-        Apartment apartment = apartmentRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(Apartment.class, code));
-
-        apartmentRepository.delete(apartment);
+        if (apartmentRepository.deleteRow(code) == 0) {
+            throw new EntityNotFoundException(Apartment.class, code);
+        }
+        entityChanged(Operation.DELETE, Apartment.class, code, null);
         return genericMessage("Apartment with id %s deleted".formatted(code));
     }
 
+    @ApiOperation(value = "Delete many apartments at once, given a JSON array of their codes")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteApartments(
+            @RequestBody List<String> codes) {
+        return bulkDelete(Apartment.class, codes, apartmentRepository::findExistingCodes, apartmentRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single apartment")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Apartment updateCommons(
             @ApiParam("code") @RequestParam String code,
@@ -109,7 +250,18 @@ public class ApartmentController extends ApiController {
         apartment.setDescription(incoming.getDescription());
 
         apartmentRepository.save(apartment);
+        entityChanged(Operation.UPDATE, Apartment.class, code, apartment);
 
         return apartment;
     }
+
+    @ApiOperation(value = "Change some fields of a single apartment, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchApartment(
+            @ApiParam("code") @RequestParam String code,
+            @RequestBody JsonNode patch) {
+        return mergePatch(apartmentRepository, Apartment.class, code, patch);
+    }
 }
@@ -1,23 +1,86 @@
 package edu.ucsb.cs156.example.controllers;
 
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.QueueFullException;
 import net.bytebuddy.implementation.bytecode.Throw;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.models.BatchItem;
 import edu.ucsb.cs156.example.models.CurrentUser;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.TableVersion;
+import edu.ucsb.cs156.example.repositories.DetachableRepository;
+import edu.ucsb.cs156.example.repositories.PatchRepository;
+import edu.ucsb.cs156.example.repositories.SparseFieldsRepository;
 import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.RowCountCache;
+import edu.ucsb.cs156.example.services.TableVersionService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletResponse;
 
 @Slf4j
 public abstract class ApiController {
+  // Keyset pagination for the /all endpoints: ?after=<key>&limit=N returns at most
+  // N rows whose key sorts after <key>, and the key of the last row is sent back in
+  // the X-Next-Cursor header whenever there may be more rows to fetch.
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  // Approximate row count of the table, sent on list responses that ask for it
+  // with withCount=true (see RowCountCache).
+  public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+  // Media type for the streaming export of the /all endpoints: one JSON object per line.
+  public static final String NDJSON = "application/x-ndjson";
+
+  // Media type of RFC 7396 merge patches, taken (along with plain JSON) by the PATCH endpoints.
+  public static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+
   @Autowired
   private CurrentUserService currentUserService;
 
+  @Autowired
+  private ObjectMapper mapper;
+
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  private TableVersionService tableVersionService;
+
+  @Autowired
+  private RowCountCache rowCountCache;
+
   protected CurrentUser getCurrentUser() {
     return currentUserService.getCurrentUser();
   }
@@ -26,6 +89,141 @@ public abstract class ApiController {
     return Map.of("message", message);
   }
 
+  // Call after every successful write so that table versions (and anything else
+  // listening for EntityChangedEvent) stay in step with the database.
+  protected void entityChanged(EntityChangedEvent.Operation operation, Class<?> entityType, Object id, Object entity) {
+    eventPublisher.publishEvent(new EntityChangedEvent(entityType, id, operation, entity));
+  }
+
+  // Sets ETag and Last-Modified from the table's version counter; returns true (and
+  // sets a 304 status) when the client's copy is still current, in which case the
+  // handler should return null without touching the repository.
+  protected boolean notModified(WebRequest request, Class<?> entityType) {
+    TableVersion version = tableVersionService.getVersion(entityType);
+    return request.checkNotModified(version.getEtag(), version.getLastModified());
+  }
+
+  protected void totalCount(HttpServletResponse response, Class<?> entityType, LongSupplier count) {
+    response.setHeader(TOTAL_COUNT_HEADER, String.valueOf(rowCountCache.rowCount(entityType, count)));
+  }
+
+  protected Pageable keysetPageable(Integer limit) {
+    int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    return PageRequest.of(0, size);
+  }
+
+  protected <T> ResponseEntity<Iterable<T>> keysetPage(List<T> rows, Pageable page, Function<T, ?> keyOf) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.isPaged() && !rows.isEmpty() && rows.size() == page.getPageSize()) {
+      response.header(NEXT_CURSOR_HEADER, String.valueOf(keyOf.apply(rows.get(rows.size() - 1))));
+    }
+    return response.body(rows);
+  }
+
+  // ?fields=a,b on a list endpoint: select only those columns (plus the key), with
+  // the same after/limit paging as the full-entity listing.
+  protected ResponseEntity<Iterable<Map<String, Object>>> sparseFields(SparseFieldsRepository repository,
+      Class<?> entityType, String keyName, List<String> fields, Object after, Integer limit) {
+    Pageable page = after == null && limit == null ? Pageable.unpaged() : keysetPageable(limit);
+    List<Map<String, Object>> rows = repository.findFields(entityType, fields, after, page);
+    return keysetPage(rows, page, row -> row.get(keyName));
+  }
+
+  // Resolves a whole set of keys with one findAllById (a single IN query) and
+  // answers in request order, with a not-found entry for every missing key.
+  protected <T, K> List<BatchItem<T>> batchLookup(Class<T> entityType, List<K> keys,
+      Function<Set<K>, Iterable<T>> findAllById, Function<T, K> keyOf) {
+    if (keys.size() > MAX_PAGE_SIZE) {
+      throw new BadRequestException("At most %d keys may be requested at once".formatted(MAX_PAGE_SIZE));
+    }
+
+    Map<K, T> found = new HashMap<>();
+    for (T entity : findAllById.apply(new LinkedHashSet<>(keys))) {
+      found.put(keyOf.apply(entity), entity);
+    }
+
+    List<BatchItem<T>> items = new ArrayList<>(keys.size());
+    for (K key : keys) {
+      T entity = found.get(key);
+      if (entity != null) {
+        items.add(BatchItem.<T>builder().key(key).found(true).item(entity).build());
+      } else {
+        String message = new EntityNotFoundException(entityType, key).getMessage();
+        items.add(BatchItem.<T>builder().key(key).found(false).message(message).build());
+      }
+    }
+    return items;
+  }
+
+  // Deletes the rows with the given keys without loading them: per MAX_PAGE_SIZE
+  // keys, one SELECT of the keys that exist and one DELETE ... WHERE key IN (...)
+  // of those. Callers run this in a transaction, so a delete event is published
+  // for exactly the keys that were found and deleted.
+  protected <K> Object bulkDelete(Class<?> entityType, List<K> keys, Function<Collection<K>, List<K>> existing,
+      ToIntFunction<Collection<K>> deleteRows) {
+    List<K> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+    int deleted = 0;
+    for (int from = 0; from < distinct.size(); from += MAX_PAGE_SIZE) {
+      List<K> found = existing.apply(distinct.subList(from, Math.min(from + MAX_PAGE_SIZE, distinct.size())));
+      if (found.isEmpty()) {
+        continue;
+      }
+      deleted += deleteRows.applyAsInt(found);
+      for (K key : found) {
+        entityChanged(EntityChangedEvent.Operation.DELETE, entityType, key, null);
+      }
+    }
+    return Map.of("requested", distinct.size(), "deleted", deleted);
+  }
+
+
+  // Applies a merge patch with a single UPDATE of just the fields it names, without
+  // reading the row first (so there is no entity to return or to publish; the event
+  // carries the changes instead). derive may reject fields or add derived ones.
+  protected Object mergePatch(PatchRepository repository, Class<?> entityType, Object key, JsonNode patch,
+      Consumer<Map<String, Object>> derive) {
+    Map<String, Object> changes = repository.patchChanges(entityType, patch);
+    derive.accept(changes);
+    if (repository.updateColumns(entityType, key, changes) == 0) {
+      throw new EntityNotFoundException(entityType, key);
+    }
+    eventPublisher.publishEvent(new EntityChangedEvent(entityType, key, EntityChangedEvent.Operation.UPDATE, null, changes));
+    return genericMessage("%s with id %s updated".formatted(entityType.getSimpleName(), key));
+  }
+
+  protected Object mergePatch(PatchRepository repository, Class<?> entityType, Object key, JsonNode patch) {
+    return mergePatch(repository, entityType, key, patch, changes -> {});
+  }
+
+  // Row checks for the /bulk endpoints: a row must carry its own key, and must
+  // leave a generated id unset (saving a row with an id would overwrite that row).
+  protected String missingKey(String key, String keyName) {
+    return key == null || key.isBlank() ? "%s is required".formatted(keyName) : null;
+  }
+
+  protected String presetId(long id) {
+    return id != 0 ? "id is assigned by the server and must be left out" : null;
+  }
+
+  // Writes each row straight to the response as it comes off the cursor and then
+  // detaches it, so neither the persistence context nor the response body grows
+  // with the size of the table. Callers must hold a (read-only) transaction open.
+  protected <T> void writeNdjson(Stream<T> rows, DetachableRepository repository, HttpServletResponse response)
+      throws IOException {
+    response.setContentType(NDJSON);
+    OutputStream out = response.getOutputStream();
+    try (rows) {
+      Iterator<T> iterator = rows.iterator();
+      while (iterator.hasNext()) {
+        T row = iterator.next();
+        out.write(mapper.writeValueAsBytes(row));
+        out.write('\n');
+        repository.detach(row);
+      }
+    }
+    out.flush();
+  }
+
   @ExceptionHandler({ EntityNotFoundException.class })
   @ResponseStatus(HttpStatus.NOT_FOUND)
   public Object handleGenericException(Throwable e) {
@@ -34,4 +232,22 @@ public abstract class ApiController {
       "message", e.getMessage()
     );
   }
+
+  @ExceptionHandler({ QueueFullException.class })
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public Object handleQueueFull(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
+
+  @ExceptionHandler({ BadRequestException.class })
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleBadRequest(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
 }
@@ -2,25 +2,46 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Book;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.models.FacetCount;
+import edu.ucsb.cs156.example.models.SearchHit;
 import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.BookFacets;
+import edu.ucsb.cs156.example.services.BookSearchIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "Books")
 @RequestMapping("/api/books")
@@ -31,27 +52,106 @@ public class BookController extends ApiController {
     @Autowired
     BookRepository bookRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    BookFacets bookFacets;
+
+    @Autowired
+    BookSearchIndex bookSearchIndex;
+
     @ApiOperation(value = "List all books")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Book> allBooks() {
-        Iterable<Book> books = bookRepository.findAll();
-        return books;
+    public ResponseEntity<?> allBooks(
+            @ApiParam("only list books whose id sorts after this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of books to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. id,title (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of books in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Book.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Book.class, bookRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(bookRepository, Book.class, "id", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Book> books = bookRepository.findAll();
+            return ResponseEntity.ok(books);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Book> books = after == null
+                ? bookRepository.findAllByOrderByIdAsc(page)
+                : bookRepository.findByIdGreaterThanOrderByIdAsc(after, page);
+        return keysetPage(books, page, Book::getId);
+    }
+
+    @ApiOperation(value = "Export all books as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportBooks(HttpServletResponse response) throws IOException {
+        writeNdjson(bookRepository.streamAll(), bookRepository, response);
+    }
+
+    @ApiOperation(value = "Count the books")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countBook(WebRequest webRequest) {
+        if (notModified(webRequest, Book.class)) {
+            return null;
+        }
+
+        return Map.of("count", bookRepository.count());
     }
 
     @ApiOperation(value = "Get a single book")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Book getById(
-            @ApiParam("id") @RequestParam Long id) {
+            @ApiParam("id") @RequestParam Long id,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Book.class)) {
+            return null;
+        }
+
                 Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(Book.class, id));
 
         return book;
     }
 
+    @ApiOperation(value = "Search books by title, author, genre and description")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/search")
+    public List<SearchHit<Book>> searchBooks(
+            @ApiParam("search terms") @RequestParam String q,
+            @ApiParam("maximum number of books to return, best match first") @RequestParam(defaultValue = "20") int limit) {
+        return bookSearchIndex.search(q, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
+    @ApiOperation(value = "Count book rows by genre and author")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/facets")
+    public Map<String, List<FacetCount>> facetCounts(WebRequest webRequest) {
+        if (notModified(webRequest, Book.class)) {
+            return null;
+        }
+
+        return bookFacets.facets();
+    }
+
     @ApiOperation(value = "Create a new book")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Book postBook(
             @ApiParam("title") @RequestParam String title,
@@ -67,12 +167,22 @@ public class BookController extends ApiController {
         book.setGenre(genre);
 
         Book savedBook = bookRepository.save(book);
+        entityChanged(Operation.CREATE, Book.class, savedBook.getId(), savedBook);
 
         return savedBook;
     }
 
+    @ApiOperation(value = "Create many books from a JSON array of rows")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostBooks(HttpServletRequest request) throws IOException {
+        return bulkWriter.create(request.getInputStream(), Book.class, Book::getId,
+                book -> presetId(book.getId()), bookRepository::saveAll);
+    }
+
     @ApiOperation(value = "Update a single book")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Book updateBook(
             @ApiParam("code") @RequestParam Long id,
@@ -87,21 +197,40 @@ public class BookController extends ApiController {
         book.setGenre(incoming.getGenre());
 
         bookRepository.save(book);
+        entityChanged(Operation.UPDATE, Book.class, id, book);
 
         return book;
     }
 
     @ApiOperation(value = "Delete a Book")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteBook(
             @ApiParam("id") @RequestParam Long id) {
-        Book book = bookRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Book.class, id));
-
-        bookRepository.delete(book);
+        if (bookRepository.deleteRow(id) == 0) {
+            throw new EntityNotFoundException(Book.class, id);
+        }
+        entityChanged(Operation.DELETE, Book.class, id, null);
         return genericMessage("Book with id %s deleted".formatted(id));
     }
 
+    @ApiOperation(value = "Delete many books at once, given a JSON array of their ids")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteBooks(
+            @RequestBody List<Long> ids) {
+        return bulkDelete(Book.class, ids, bookRepository::findExistingIds, bookRepository::deleteRows);
+    }
 
+    @ApiOperation(value = "Change some fields of a single book, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchBook(
+            @ApiParam("id") @RequestParam Long id,
+            @RequestBody JsonNode patch) {
+        return mergePatch(bookRepository, Book.class, id, patch);
+    }
 }
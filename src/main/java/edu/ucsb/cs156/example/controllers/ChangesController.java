@@ -0,0 +1,40 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.repositories.EntityChangeRepository;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@Api(description = "Change feed")
+@RequestMapping("/api/changes")
+@RestController
+@Slf4j
+public class ChangesController extends ApiController {
+
+    @Autowired
+    EntityChangeRepository entityChangeRepository;
+
+    @ApiOperation(value = "List the writes made after a given sequence number, oldest first")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("")
+    public ResponseEntity<Iterable<EntityChange>> changes(
+            @ApiParam("only list changes with a seq greater than this (default: from the beginning)") @RequestParam(defaultValue = "0") long since,
+            @ApiParam("maximum number of changes to list") @RequestParam(required = false) Integer limit) {
+        Pageable page = keysetPageable(limit);
+        List<EntityChange> changes = entityChangeRepository.findBySeqGreaterThanOrderBySeqAsc(since, page);
+        return keysetPage(changes, page, EntityChange::getSeq);
+    }
+}
@@ -2,25 +2,45 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Movie;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BatchItem;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
 import edu.ucsb.cs156.example.repositories.MovieRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.MovieSuggestions;
+import edu.ucsb.cs156.example.services.MovieYearIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "Movies")
 @RequestMapping("/api/movies")
@@ -31,26 +51,122 @@ public class MoviesController extends ApiController {
     @Autowired
     MovieRepository movierepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    MovieSuggestions movieSuggestions;
+
+    @Autowired
+    MovieYearIndex movieYearIndex;
+
     @ApiOperation(value = "List all movies")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Movie> allMovies() {
-        Iterable<Movie> movies = movierepository.findAll();
-        return movies;
+    public ResponseEntity<?> allMovies(
+            @ApiParam("only list movies whose id sorts after this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of movies to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. id,title (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of movies in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Movie.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Movie.class, movierepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(movierepository, Movie.class, "id", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Movie> movies = movierepository.findAll();
+            return ResponseEntity.ok(movies);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Movie> movies = after == null
+                ? movierepository.findAllByOrderByIdAsc(page)
+                : movierepository.findByIdGreaterThanOrderByIdAsc(after, page);
+        return keysetPage(movies, page, Movie::getId);
+    }
+
+    @ApiOperation(value = "Export all movies as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportMovies(HttpServletResponse response) throws IOException {
+        writeNdjson(movierepository.streamAll(), movierepository, response);
+    }
+
+    @ApiOperation(value = "Count the movies")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countMovie(WebRequest webRequest) {
+        if (notModified(webRequest, Movie.class)) {
+            return null;
+        }
+
+        return Map.of("count", movierepository.count());
     }
 
     @ApiOperation(value = "Get a single movie")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Movie getById(
-            @ApiParam("id") @RequestParam String id) {
+            @ApiParam("id") @RequestParam String id,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Movie.class)) {
+            return null;
+        }
+
         Movie moviE = movierepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(Movie.class, id));
         return moviE;
     }
 
+    @ApiOperation(value = "Get several movies at once, in request order")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/batch")
+    public List<BatchItem<Movie>> getBatch(
+            @ApiParam("id (repeat the parameter for each one)") @RequestParam List<String> id,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Movie.class)) {
+            return null;
+        }
+
+        return batchLookup(Movie.class, id, movierepository::findAllById, Movie::getId);
+    }
+
+    @ApiOperation(value = "List the movies released in a range of years")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/range")
+    public List<Movie> moviesInRange(
+            @ApiParam("first release year, inclusive") @RequestParam long fromYear,
+            @ApiParam("last release year, inclusive") @RequestParam long toYear,
+            @ApiParam("director (default: any)") @RequestParam(required = false) String director,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Movie.class)) {
+            return null;
+        }
+
+        return movieYearIndex.range(fromYear, toYear, director);
+    }
+
+    @ApiOperation(value = "Suggest movies whose title starts with what has been typed so far")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/suggest")
+    public List<Movie> suggestMovies(
+            @ApiParam("start of a word in the title, case-insensitive") @RequestParam String prefix,
+            @ApiParam("maximum number of suggestions") @RequestParam(defaultValue = "10") int limit) {
+        return movieSuggestions.suggest(prefix, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
     @ApiOperation(value = "Create a new movie")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Movie postMovie(
         @ApiParam("id") @RequestParam String id,
@@ -68,24 +184,51 @@ public class MoviesController extends ApiController {
         moviE.setRelease_year(release_year);
        
         Movie savedMovie = movierepository.save(moviE);
+        entityChanged(Operation.CREATE, Movie.class, id, savedMovie);
 
         return savedMovie;
     }
 
+    @ApiOperation(value = "Create many movies from a JSON array of rows; with upsert=true, rows whose key exists replace the stored row")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostMovies(HttpServletRequest request,
+            @ApiParam("upsert") @RequestParam(defaultValue = "false") boolean upsert) throws IOException {
+        if (upsert) {
+            return bulkWriter.upsert(request.getInputStream(), Movie.class, Movie::getId,
+                    movie -> missingKey(movie.getId(), "id"),
+                    movierepository::findExistingIds, movierepository);
+        }
+        return bulkWriter.insert(request.getInputStream(), Movie.class, Movie::getId,
+                movie -> missingKey(movie.getId(), "id"),
+                movierepository::findExistingIds, movierepository::insertAll);
+    }
+
     @ApiOperation(value = "Delete a Movie")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteMovie(
             @ApiParam("id") @RequestParam String id) {
-        Movie moviE = movierepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Movie.class, id));
-
-        movierepository.delete(moviE);
+        if (movierepository.deleteRow(id) == 0) {
+            throw new EntityNotFoundException(Movie.class, id);
+        }
+        entityChanged(Operation.DELETE, Movie.class, id, null);
         return genericMessage("Movie with id %s deleted".formatted(id));
     }
 
+    @ApiOperation(value = "Delete many movies at once, given a JSON array of their ids")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteMovies(
+            @RequestBody List<String> ids) {
+        return bulkDelete(Movie.class, ids, movierepository::findExistingIds, movierepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single movie")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Movie updateMovie(
             @ApiParam("id") @RequestParam String id,
@@ -100,7 +243,18 @@ public class MoviesController extends ApiController {
         moviE.setRelease_year(incoming.getRelease_year());
 
         movierepository.save(moviE);
+        entityChanged(Operation.UPDATE, Movie.class, id, moviE);
 
         return moviE;
     }
+
+    @ApiOperation(value = "Change some fields of a single movie, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchMovie(
+            @ApiParam("id") @RequestParam String id,
+            @RequestBody JsonNode patch) {
+        return mergePatch(movierepository, Movie.class, id, patch);
+    }
 }
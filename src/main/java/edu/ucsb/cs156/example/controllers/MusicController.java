@@ -1,26 +1,48 @@
 package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.models.FacetCount;
+import edu.ucsb.cs156.example.models.WriteTicket;
 import edu.ucsb.cs156.example.repositories.MusicRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.MusicFacets;
+import edu.ucsb.cs156.example.services.MusicWriteBehind;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "Music")
 @RequestMapping("/api/music")
@@ -31,27 +53,97 @@ public class MusicController extends ApiController {
     @Autowired
     MusicRepository musicRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    MusicFacets musicFacets;
+
+    @Autowired
+    MusicWriteBehind musicWriteBehind;
+
     @ApiOperation(value = "List all Musics")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Music> allMusics() {
-        Iterable<Music> musics = musicRepository.findAll();
-        return musics;
+    public ResponseEntity<?> allMusics(
+            @ApiParam("only list musics whose id sorts after this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of musics to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. id,title (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of musics in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Music.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Music.class, musicRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(musicRepository, Music.class, "id", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Music> musics = musicRepository.findAll();
+            return ResponseEntity.ok(musics);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Music> musics = after == null
+                ? musicRepository.findAllByOrderByIdAsc(page)
+                : musicRepository.findByIdGreaterThanOrderByIdAsc(after, page);
+        return keysetPage(musics, page, Music::getId);
+    }
+
+    @ApiOperation(value = "Export all musics as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportMusics(HttpServletResponse response) throws IOException {
+        writeNdjson(musicRepository.streamAll(), musicRepository, response);
+    }
+
+    @ApiOperation(value = "Count the music")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countMusic(WebRequest webRequest) {
+        if (notModified(webRequest, Music.class)) {
+            return null;
+        }
+
+        return Map.of("count", musicRepository.count());
     }
 
     @ApiOperation(value = "Get a single musics")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Music getById(
-            @ApiParam("id") @RequestParam Long id) {
+            @ApiParam("id") @RequestParam Long id,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Music.class)) {
+            return null;
+        }
+
         Music musics = musicRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(Music.class, id));
 
         return musics;
     }
 
+    @ApiOperation(value = "Count music rows by genre, artist and album")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/facets")
+    public Map<String, List<FacetCount>> facetCounts(WebRequest webRequest) {
+        if (notModified(webRequest, Music.class)) {
+            return null;
+        }
+
+        return musicFacets.facets();
+    }
+
     @ApiOperation(value = "Create a new music")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Music postMusic(
         @ApiParam("title") @RequestParam String title,
@@ -69,23 +161,66 @@ public class MusicController extends ApiController {
         musics.setGenre(genre);
 
         Music savedMusics = musicRepository.save(musics);
+        entityChanged(Operation.CREATE, Music.class, savedMusics.getId(), savedMusics);
 
         return savedMusics;
     }
 
+    @ApiOperation(value = "Create many songs from a JSON array of rows")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostMusic(HttpServletRequest request) throws IOException {
+        return bulkWriter.create(request.getInputStream(), Music.class, Music::getId,
+                music -> presetId(music.getId()), musicRepository::saveAll);
+    }
+
+    @ApiOperation(value = "Queue many songs, given a JSON array of rows, to be saved in the background; answers at once with a ticket")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<WriteTicket> postMusicAsync(
+            @RequestBody List<Music> rows) {
+        for (int row = 0; row < rows.size(); row++) {
+            String problem = presetId(rows.get(row).getId());
+            if (problem != null) {
+                throw new BadRequestException("Row %d: %s".formatted(row, problem));
+            }
+        }
+        return ResponseEntity.accepted().body(musicWriteBehind.submit(rows));
+    }
+
+    @ApiOperation(value = "Get whether the songs queued under a ticket have been saved")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @GetMapping("/async")
+    public WriteTicket musicAsyncStatus(
+            @ApiParam("ticket") @RequestParam long ticket) {
+        return musicWriteBehind.status(ticket);
+    }
+
     @ApiOperation(value = "Delete a Music")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteMusics(
             @ApiParam("id") @RequestParam Long id) {
-        Music musics = musicRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Music.class, id));
-        musicRepository.delete(musics);
+        if (musicRepository.deleteRow(id) == 0) {
+            throw new EntityNotFoundException(Music.class, id);
+        }
+        entityChanged(Operation.DELETE, Music.class, id, null);
         return genericMessage("Music with id %s deleted".formatted(id));
     }
 
+    @ApiOperation(value = "Delete many songs at once, given a JSON array of their ids")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteMusic(
+            @RequestBody List<Long> ids) {
+        return bulkDelete(Music.class, ids, musicRepository::findExistingIds, musicRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single musics")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Music updateMusics(
             @ApiParam("id") @RequestParam Long id,
@@ -101,7 +236,18 @@ public class MusicController extends ApiController {
         musics.setGenre(incoming.getGenre());
 
         musicRepository.save(musics);
+        entityChanged(Operation.UPDATE, Music.class, id, musics);
 
         return musics;
     }
+
+    @ApiOperation(value = "Change some fields of a single music row, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchMusic(
+            @ApiParam("id") @RequestParam Long id,
+            @RequestBody JsonNode patch) {
+        return mergePatch(musicRepository, Music.class, id, patch);
+    }
 }
@@ -2,25 +2,47 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Painting;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BatchItem;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
 import edu.ucsb.cs156.example.repositories.PaintingRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.PaintingImporter;
+import edu.ucsb.cs156.example.services.PaintingSuggestions;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "Painting")
 @RequestMapping("/api/painting")
@@ -31,27 +53,108 @@ public class PaintingController extends ApiController {
     @Autowired
     PaintingRepository paintingRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    PaintingImporter paintingImporter;
+
+    @Autowired
+    PaintingSuggestions paintingSuggestions;
+
     @ApiOperation(value = "List all paintings")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Painting> allPaintingss() {
-        Iterable<Painting> paintings = paintingRepository.findAll();
-        return paintings;
+    public ResponseEntity<?> allPaintingss(
+            @ApiParam("only list paintings whose code sorts after this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of paintings to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. code,name (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of paintings in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Painting.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Painting.class, paintingRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(paintingRepository, Painting.class, "code", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Painting> paintings = paintingRepository.findAll();
+            return ResponseEntity.ok(paintings);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Painting> paintings = after == null
+                ? paintingRepository.findAllByOrderByCodeAsc(page)
+                : paintingRepository.findByCodeGreaterThanOrderByCodeAsc(after, page);
+        return keysetPage(paintings, page, Painting::getCode);
+    }
+
+    @ApiOperation(value = "Export all paintings as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportPaintings(HttpServletResponse response) throws IOException {
+        writeNdjson(paintingRepository.streamAll(), paintingRepository, response);
+    }
+
+    @ApiOperation(value = "Count the paintings")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countPainting(WebRequest webRequest) {
+        if (notModified(webRequest, Painting.class)) {
+            return null;
+        }
+
+        return Map.of("count", paintingRepository.count());
     }
 
     @ApiOperation(value = "Get a single paintings")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Painting getById(
-            @ApiParam("code") @RequestParam String code) {
+            @ApiParam("code") @RequestParam String code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Painting.class)) {
+            return null;
+        }
+
         Painting paintings = paintingRepository.findById(code)
                 .orElseThrow(() -> new EntityNotFoundException(Painting.class, code));
 
         return paintings;
     }
 
+    @ApiOperation(value = "Get several paintings at once, in request order")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/batch")
+    public List<BatchItem<Painting>> getBatch(
+            @ApiParam("code (repeat the parameter for each one)") @RequestParam List<String> code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Painting.class)) {
+            return null;
+        }
+
+        return batchLookup(Painting.class, code, paintingRepository::findAllById, Painting::getCode);
+    }
+
+    @ApiOperation(value = "Suggest paintings whose name or artist starts with what has been typed so far")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/suggest")
+    public List<Painting> suggestPaintings(
+            @ApiParam("start of a word in the name or artist, case-insensitive") @RequestParam String prefix,
+            @ApiParam("maximum number of suggestions") @RequestParam(defaultValue = "10") int limit) {
+        return paintingSuggestions.suggest(prefix, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
     @ApiOperation(value = "Create a new paintings")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Painting postPaintings(
         @ApiParam("code") @RequestParam String code,
@@ -72,24 +175,61 @@ public class PaintingController extends ApiController {
         paintings.setPeriod(period);
 
         Painting savedPaintings = paintingRepository.save(paintings);
+        entityChanged(Operation.CREATE, Painting.class, code, savedPaintings);
 
         return savedPaintings;
     }
 
+    @ApiOperation(value = "Create many paintings from a JSON array of rows; with upsert=true, rows whose key exists replace the stored row")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostPaintings(HttpServletRequest request,
+            @ApiParam("upsert") @RequestParam(defaultValue = "false") boolean upsert) throws IOException {
+        if (upsert) {
+            return bulkWriter.upsert(request.getInputStream(), Painting.class, Painting::getCode,
+                    painting -> missingKey(painting.getCode(), "code"),
+                    paintingRepository::findExistingCodes, paintingRepository);
+        }
+        return bulkWriter.insert(request.getInputStream(), Painting.class, Painting::getCode,
+                painting -> missingKey(painting.getCode(), "code"),
+                paintingRepository::findExistingCodes, paintingRepository::insertAll);
+    }
+
+    @ApiOperation(value = "Import paintings from a CSV file whose header row names the columns (code, name, artist, year, medium, period)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public BulkResult importPaintings(
+            @ApiParam("CSV file") @RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream csv = file.getInputStream()) {
+            return paintingImporter.importCsv(csv);
+        }
+    }
+
     @ApiOperation(value = "Delete a Painting")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deletePaintings(
             @ApiParam("code") @RequestParam String code) {
-        Painting paintings = paintingRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(Painting.class, code));
-
-        paintingRepository.delete(paintings);
+        if (paintingRepository.deleteRow(code) == 0) {
+            throw new EntityNotFoundException(Painting.class, code);
+        }
+        entityChanged(Operation.DELETE, Painting.class, code, null);
         return genericMessage("Painting with id %s deleted".formatted(code));
     }
 
+    @ApiOperation(value = "Delete many paintings at once, given a JSON array of their codes")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeletePaintings(
+            @RequestBody List<String> codes) {
+        return bulkDelete(Painting.class, codes, paintingRepository::findExistingCodes, paintingRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single paintings")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Painting updatePaintings(
             @ApiParam("code") @RequestParam String code,
@@ -106,7 +246,18 @@ public class PaintingController extends ApiController {
         paintings.setPeriod(incoming.getPeriod());
 
         paintingRepository.save(paintings);
+        entityChanged(Operation.UPDATE, Painting.class, code, paintings);
 
         return paintings;
     }
+
+    @ApiOperation(value = "Change some fields of a single painting, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchPainting(
+            @ApiParam("code") @RequestParam String code,
+            @RequestBody JsonNode patch) {
+        return mergePatch(paintingRepository, Painting.class, code, patch);
+    }
 }
@@ -1,26 +1,48 @@
 package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BatchItem;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.models.SearchHit;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.RestaurantFuzzyIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "Restaurant")
 @RequestMapping("/api/restaurant")
@@ -32,27 +54,121 @@ public class RestaurantController extends ApiController {
     @Autowired
     RestaurantRepository RestaurantRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    RestaurantFuzzyIndex restaurantFuzzyIndex;
+
     @ApiOperation(value = "List all restaurants")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Restaurant> allRestaurants() {
-        Iterable<Restaurant> restaurants = RestaurantRepository.findAll();
-        return restaurants;
+    public ResponseEntity<?> allRestaurants(
+            @ApiParam("only list restaurants whose code sorts after this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of restaurants to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. code,name (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of restaurants in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, Restaurant.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, Restaurant.class, RestaurantRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(RestaurantRepository, Restaurant.class, "code", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<Restaurant> restaurants = RestaurantRepository.findAll();
+            return ResponseEntity.ok(restaurants);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<Restaurant> restaurants = after == null
+                ? RestaurantRepository.findAllByOrderByCodeAsc(page)
+                : RestaurantRepository.findByCodeGreaterThanOrderByCodeAsc(after, page);
+        return keysetPage(restaurants, page, Restaurant::getCode);
+    }
+
+    @ApiOperation(value = "Export all restaurants as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportRestaurants(HttpServletResponse response) throws IOException {
+        writeNdjson(RestaurantRepository.streamAll(), RestaurantRepository, response);
+    }
+
+    @ApiOperation(value = "Count the restaurants")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countRestaurant(WebRequest webRequest) {
+        if (notModified(webRequest, Restaurant.class)) {
+            return null;
+        }
+
+        return Map.of("count", RestaurantRepository.count());
     }
 
     @ApiOperation(value = "Get a single restaurant")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public Restaurant getById(
-            @ApiParam("code") @RequestParam String code) {
+            @ApiParam("code") @RequestParam String code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Restaurant.class)) {
+            return null;
+        }
+
         Restaurant restaurants = RestaurantRepository.findById(code)
                 .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, code));
 
         return restaurants;
     }
 
+    @ApiOperation(value = "Get several restaurants at once, in request order")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/batch")
+    public List<BatchItem<Restaurant>> getBatch(
+            @ApiParam("code (repeat the parameter for each one)") @RequestParam List<String> code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Restaurant.class)) {
+            return null;
+        }
+
+        return batchLookup(Restaurant.class, code, RestaurantRepository::findAllById, Restaurant::getCode);
+    }
+
+    @ApiOperation(value = "List the highest rated restaurants")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/top")
+    public List<Restaurant> topRestaurants(
+            @ApiParam("how many restaurants to list") @RequestParam(defaultValue = "10") int n,
+            @ApiParam("only list restaurants rated at least this many stars") @RequestParam(defaultValue = "0") double minRating,
+            WebRequest webRequest) {
+        if (notModified(webRequest, Restaurant.class)) {
+            return null;
+        }
+
+        return RestaurantRepository.findByRatingGreaterThanEqualOrderByRatingDescCodeAsc(minRating,
+                PageRequest.of(0, Math.max(1, Math.min(n, MAX_PAGE_SIZE))));
+    }
+
+    @ApiOperation(value = "Search restaurant names and descriptions, tolerating typos")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/fuzzy")
+    public List<SearchHit<Restaurant>> fuzzySearch(
+            @ApiParam("search text") @RequestParam String q,
+            @ApiParam("lowest similarity to return, from 0 (exclusive) to 1") @RequestParam(defaultValue = "0.3") double minSimilarity,
+            @ApiParam("maximum number of restaurants to return, best match first") @RequestParam(defaultValue = "10") int limit) {
+        return restaurantFuzzyIndex.search(q, minSimilarity, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+
     @ApiOperation(value = "Create a new restaurant")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public Restaurant postRestaurants(
         @ApiParam("code") @RequestParam String code,
@@ -70,24 +186,51 @@ public class RestaurantController extends ApiController {
     
 
         Restaurant savedRestaurant = RestaurantRepository.save(restaurants);
+        entityChanged(Operation.CREATE, Restaurant.class, code, savedRestaurant);
 
         return savedRestaurant;
     }
 
+    @ApiOperation(value = "Create many restaurants from a JSON array of rows; with upsert=true, rows whose key exists replace the stored row")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostRestaurants(HttpServletRequest request,
+            @ApiParam("upsert") @RequestParam(defaultValue = "false") boolean upsert) throws IOException {
+        if (upsert) {
+            return bulkWriter.upsert(request.getInputStream(), Restaurant.class, Restaurant::getCode,
+                    restaurant -> missingKey(restaurant.getCode(), "code"),
+                    RestaurantRepository::findExistingCodes, RestaurantRepository);
+        }
+        return bulkWriter.insert(request.getInputStream(), Restaurant.class, Restaurant::getCode,
+                restaurant -> missingKey(restaurant.getCode(), "code"),
+                RestaurantRepository::findExistingCodes, RestaurantRepository::insertAll);
+    }
+
     @ApiOperation(value = "Delete a Restaurant")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteRestaurant(
             @ApiParam("code") @RequestParam String code) {
-        Restaurant restaurants = RestaurantRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, code));
-
-        RestaurantRepository.delete(restaurants);
+        if (RestaurantRepository.deleteRow(code) == 0) {
+            throw new EntityNotFoundException(Restaurant.class, code);
+        }
+        entityChanged(Operation.DELETE, Restaurant.class, code, null);
         return genericMessage("Restaurant with id %s deleted".formatted(code));
     }
 
+    @ApiOperation(value = "Delete many restaurants at once, given a JSON array of their codes")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteRestaurants(
+            @RequestBody List<String> codes) {
+        return bulkDelete(Restaurant.class, codes, RestaurantRepository::findExistingCodes, RestaurantRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single restaurant")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public Restaurant updateRestaurant(
             @ApiParam("code") @RequestParam String code,
@@ -103,7 +246,25 @@ public class RestaurantController extends ApiController {
     
 
         RestaurantRepository.save(restaurants);
+        entityChanged(Operation.UPDATE, Restaurant.class, code, restaurants);
 
         return restaurants;
     }
+
+    @ApiOperation(value = "Change some fields of a single restaurant, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchRestaurant(
+            @ApiParam("code") @RequestParam String code,
+            @RequestBody JsonNode patch) {
+        return mergePatch(RestaurantRepository, Restaurant.class, code, patch, changes -> {
+            if (changes.containsKey("rating")) {
+                throw new BadRequestException("rating cannot be changed; it is derived from yelp_rating");
+            }
+            if (changes.containsKey("yelp_rating")) {
+                changes.put("rating", Restaurant.parseRating((String) changes.get("yelp_rating")));
+            }
+        });
+    }
 }
@@ -0,0 +1,38 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.UnifiedSearchResults;
+import edu.ucsb.cs156.example.services.UnifiedSearchService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@Api(description = "Search across all tables")
+@RequestMapping("/api/search")
+@RestController
+@Slf4j
+public class SearchController extends ApiController {
+
+    @Autowired
+    UnifiedSearchService unifiedSearchService;
+
+    @ApiOperation(value = "Search every table at once and merge the results into one ranked list")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("")
+    public UnifiedSearchResults search(
+            @ApiParam("search text") @RequestParam String q,
+            @ApiParam("maximum number of results") @RequestParam(defaultValue = "20") int limit) {
+        if (q.isBlank()) {
+            throw new BadRequestException("q must not be blank");
+        }
+        return unifiedSearchService.search(q.strip(), Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+}
@@ -0,0 +1,61 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.entities.Apartment;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.services.ChangeBroadcaster;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.TreeSet;
+
+@Api(description = "Server-sent event streams of writes")
+@RequestMapping("/api/stream")
+@RestController
+@Slf4j
+public class StreamController extends ApiController {
+
+    // Keyed by the same path segment as each table's CRUD endpoints.
+    static final Map<String, Class<?>> STREAMS = Map.of(
+            "apartment", Apartment.class,
+            "books", Book.class,
+            "movies", Movie.class,
+            "music", Music.class,
+            "painting", Painting.class,
+            "restaurant", Restaurant.class,
+            "ucsbdates", UCSBDate.class,
+            "ucsbdiningcommons", UCSBDiningCommons.class);
+
+    @Autowired
+    ChangeBroadcaster changeBroadcaster;
+
+    @ApiOperation(value = "Stream creates, updates and deletes on one table as server-sent events")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/{entity}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @ApiParam("table to watch, e.g. books or restaurant") @PathVariable String entity) {
+        Class<?> entityType = STREAMS.get(entity);
+        if (entityType == null) {
+            throw new BadRequestException("No stream named %s; expected one of %s".formatted(entity, new TreeSet<>(STREAMS.keySet())));
+        }
+        return changeBroadcaster.subscribe(entityType);
+    }
+}
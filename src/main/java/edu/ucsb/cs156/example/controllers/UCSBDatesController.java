@@ -2,7 +2,13 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.UCSBDateIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -11,20 +17,31 @@ import lombok.extern.slf4j.Slf4j;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @Api(description = "UCSBDates")
 @RequestMapping("/api/ucsbdates")
@@ -35,27 +52,112 @@ public class UCSBDatesController extends ApiController {
     @Autowired
     UCSBDateRepository ucsbDateRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    UCSBDateIndex ucsbDateIndex;
+
     @ApiOperation(value = "List all ucsb dates")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<UCSBDate> allUCSBDates() {
-        Iterable<UCSBDate> dates = ucsbDateRepository.findAll();
-        return dates;
+    public ResponseEntity<?> allUCSBDates(
+            @ApiParam("only list dates whose id sorts after this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of dates to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. id,name (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of dates in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, UCSBDate.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, UCSBDate.class, ucsbDateRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(ucsbDateRepository, UCSBDate.class, "id", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<UCSBDate> dates = ucsbDateRepository.findAll();
+            return ResponseEntity.ok(dates);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<UCSBDate> dates = after == null
+                ? ucsbDateRepository.findAllByOrderByIdAsc(page)
+                : ucsbDateRepository.findByIdGreaterThanOrderByIdAsc(after, page);
+        return keysetPage(dates, page, UCSBDate::getId);
+    }
+
+    @ApiOperation(value = "Export all ucsb dates as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportUCSBDates(HttpServletResponse response) throws IOException {
+        writeNdjson(ucsbDateRepository.streamAll(), ucsbDateRepository, response);
+    }
+
+    @ApiOperation(value = "Count the ucsb dates")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countUCSBDate(WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDate.class)) {
+            return null;
+        }
+
+        return Map.of("count", ucsbDateRepository.count());
     }
 
     @ApiOperation(value = "Get a single date")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public UCSBDate getById(
-            @ApiParam("id") @RequestParam Long id) {
+            @ApiParam("id") @RequestParam Long id,
+            WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDate.class)) {
+            return null;
+        }
+
         UCSBDate ucsbDate = ucsbDateRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
 
         return ucsbDate;
     }
 
+    @ApiOperation(value = "List the dates in a time range, optionally within one quarter, a page at a time")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/range")
+    public ResponseEntity<Iterable<UCSBDate>> datesInRange(
+            @ApiParam("quarter, e.g. 20231 (default: all quarters)") @RequestParam(required = false) String quarterYYYYQ,
+            @ApiParam("earliest date, inclusive, in iso format, e.g. 2023-01-09T00:00:00") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @ApiParam("latest date, exclusive, in iso format, e.g. 2023-03-25T00:00:00") @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @ApiParam("only list dates after this position (the X-Next-Cursor of the previous page)") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of dates to list") @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDate.class)) {
+            return null;
+        }
+
+        Pageable page = keysetPageable(limit);
+        UCSBDateIndex.Cursor cursor = after == null ? null : UCSBDateIndex.Cursor.parse(after);
+        return keysetPage(ucsbDateIndex.range(quarterYYYYQ, from, to, cursor, page.getPageSize()), page,
+                UCSBDateIndex.Cursor::of);
+    }
+
+    @ApiOperation(value = "List the next dates from now")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/upcoming")
+    public List<UCSBDate> upcomingDates(
+            @ApiParam("quarter, e.g. 20231 (default: all quarters)") @RequestParam(required = false) String quarterYYYYQ,
+            @ApiParam("how many dates to list") @RequestParam(defaultValue = "5") int count) {
+        return ucsbDateIndex.upcoming(quarterYYYYQ, LocalDateTime.now(), Math.max(1, Math.min(count, MAX_PAGE_SIZE)));
+    }
+
     @ApiOperation(value = "Create a new date")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public UCSBDate postUCSBDate(
             @ApiParam("quarterYYYYQ") @RequestParam String quarterYYYYQ,
@@ -74,24 +176,44 @@ public class UCSBDatesController extends ApiController {
         ucsbDate.setLocalDateTime(localDateTime);
 
         UCSBDate savedUcsbDate = ucsbDateRepository.save(ucsbDate);
+        entityChanged(Operation.CREATE, UCSBDate.class, savedUcsbDate.getId(), savedUcsbDate);
 
         return savedUcsbDate;
     }
 
+    @ApiOperation(value = "Create many ucsb dates from a JSON array of rows")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostUCSBDates(HttpServletRequest request) throws IOException {
+        return bulkWriter.create(request.getInputStream(), UCSBDate.class, UCSBDate::getId,
+                ucsbDate -> presetId(ucsbDate.getId()), ucsbDateRepository::saveAll);
+    }
+
     @ApiOperation(value = "Delete a UCSBDate")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteUCSBDate(
             @ApiParam("id") @RequestParam Long id) {
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
-
-        ucsbDateRepository.delete(ucsbDate);
+        if (ucsbDateRepository.deleteRow(id) == 0) {
+            throw new EntityNotFoundException(UCSBDate.class, id);
+        }
+        entityChanged(Operation.DELETE, UCSBDate.class, id, null);
         return genericMessage("UCSBDate with id %s deleted".formatted(id));
     }
 
+    @ApiOperation(value = "Delete many ucsb dates at once, given a JSON array of their ids")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteUCSBDates(
+            @RequestBody List<Long> ids) {
+        return bulkDelete(UCSBDate.class, ids, ucsbDateRepository::findExistingIds, ucsbDateRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single date")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public UCSBDate updateUCSBDate(
             @ApiParam("id") @RequestParam Long id,
@@ -105,7 +227,18 @@ public class UCSBDatesController extends ApiController {
         ucsbDate.setLocalDateTime(incoming.getLocalDateTime());
 
         ucsbDateRepository.save(ucsbDate);
+        entityChanged(Operation.UPDATE, UCSBDate.class, id, ucsbDate);
 
         return ucsbDate;
     }
+
+    @ApiOperation(value = "Change some fields of a single date, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchUCSBDate(
+            @ApiParam("id") @RequestParam Long id,
+            @RequestBody JsonNode patch) {
+        return mergePatch(ucsbDateRepository, UCSBDate.class, id, patch);
+    }
 }
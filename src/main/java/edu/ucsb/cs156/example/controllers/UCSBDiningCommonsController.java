@@ -2,25 +2,45 @@ package edu.ucsb.cs156.example.controllers;
 
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.BatchItem;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.models.Nearby;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import edu.ucsb.cs156.example.services.DiningCommonsSpatialIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
 
 @Api(description = "UCSBDiningCommons")
 @RequestMapping("/api/ucsbdiningcommons")
@@ -31,27 +51,117 @@ public class UCSBDiningCommonsController extends ApiController {
     @Autowired
     UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
 
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    DiningCommonsSpatialIndex diningCommonsSpatialIndex;
+
     @ApiOperation(value = "List all ucsb dining commons")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<UCSBDiningCommons> allCommonss() {
-        Iterable<UCSBDiningCommons> commons = ucsbDiningCommonsRepository.findAll();
-        return commons;
+    public ResponseEntity<?> allCommonss(
+            @ApiParam("only list commons whose code sorts after this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of commons to list") @RequestParam(required = false) Integer limit,
+            @ApiParam("comma separated list of fields to return, e.g. code,name (default: all fields)") @RequestParam(required = false) List<String> fields,
+            @ApiParam("also send the total number of commons in the X-Total-Count header") @RequestParam(defaultValue = "false") boolean withCount,
+            WebRequest webRequest,
+            HttpServletResponse response) {
+        if (notModified(webRequest, UCSBDiningCommons.class)) {
+            return null;
+        }
+        if (withCount) {
+            totalCount(response, UCSBDiningCommons.class, ucsbDiningCommonsRepository::count);
+        }
+
+        if (fields != null) {
+            return sparseFields(ucsbDiningCommonsRepository, UCSBDiningCommons.class, "code", fields, after, limit);
+        }
+
+        if (after == null && limit == null) {
+            Iterable<UCSBDiningCommons> commons = ucsbDiningCommonsRepository.findAll();
+            return ResponseEntity.ok(commons);
+        }
+
+        Pageable page = keysetPageable(limit);
+        List<UCSBDiningCommons> commons = after == null
+                ? ucsbDiningCommonsRepository.findAllByOrderByCodeAsc(page)
+                : ucsbDiningCommonsRepository.findByCodeGreaterThanOrderByCodeAsc(after, page);
+        return keysetPage(commons, page, UCSBDiningCommons::getCode);
+    }
+
+    @ApiOperation(value = "Export all ucsb dining commons as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @Transactional(readOnly = true)
+    @GetMapping(value = "/all", produces = NDJSON)
+    public void exportCommons(HttpServletResponse response) throws IOException {
+        writeNdjson(ucsbDiningCommonsRepository.streamAll(), ucsbDiningCommonsRepository, response);
+    }
+
+    @ApiOperation(value = "Count the ucsb dining commons")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/count")
+    public Object countUCSBDiningCommons(WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDiningCommons.class)) {
+            return null;
+        }
+
+        return Map.of("count", ucsbDiningCommonsRepository.count());
     }
 
     @ApiOperation(value = "Get a single commons")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
     public UCSBDiningCommons getById(
-            @ApiParam("code") @RequestParam String code) {
+            @ApiParam("code") @RequestParam String code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDiningCommons.class)) {
+            return null;
+        }
+
         UCSBDiningCommons commons = ucsbDiningCommonsRepository.findById(code)
                 .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
 
         return commons;
     }
 
+    @ApiOperation(value = "Get several commons at once, in request order")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/batch")
+    public List<BatchItem<UCSBDiningCommons>> getBatch(
+            @ApiParam("code (repeat the parameter for each one)") @RequestParam List<String> code,
+            WebRequest webRequest) {
+        if (notModified(webRequest, UCSBDiningCommons.class)) {
+            return null;
+        }
+
+        return batchLookup(UCSBDiningCommons.class, code, ucsbDiningCommonsRepository::findAllById, UCSBDiningCommons::getCode);
+    }
+
+    @ApiOperation(value = "Find the commons closest to a location")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/nearest")
+    public List<Nearby<UCSBDiningCommons>> nearestCommons(
+            @ApiParam("latitude, in degrees") @RequestParam double lat,
+            @ApiParam("longitude, in degrees") @RequestParam double lon,
+            @ApiParam("how many commons to return, closest first") @RequestParam(defaultValue = "3") int k) {
+        return diningCommonsSpatialIndex.nearest(lat, lon, Math.max(1, Math.min(k, MAX_PAGE_SIZE)));
+    }
+
+    @ApiOperation(value = "List the commons inside a map viewport")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/within")
+    public List<UCSBDiningCommons> commonsWithin(
+            @ApiParam("southern edge latitude") @RequestParam double south,
+            @ApiParam("western edge longitude") @RequestParam double west,
+            @ApiParam("northern edge latitude") @RequestParam double north,
+            @ApiParam("eastern edge longitude (less than west if the box crosses the antimeridian)") @RequestParam double east) {
+        return diningCommonsSpatialIndex.within(south, west, north, east);
+    }
+
     @ApiOperation(value = "Create a new commons")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PostMapping("/post")
     public UCSBDiningCommons postCommons(
         @ApiParam("code") @RequestParam String code,
@@ -74,24 +184,51 @@ public class UCSBDiningCommonsController extends ApiController {
         commons.setLongitude(longitude);
 
         UCSBDiningCommons savedCommons = ucsbDiningCommonsRepository.save(commons);
+        entityChanged(Operation.CREATE, UCSBDiningCommons.class, code, savedCommons);
 
         return savedCommons;
     }
 
+    @ApiOperation(value = "Create many dining commons from a JSON array of rows; with upsert=true, rows whose key exists replace the stored row")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult bulkPostCommons(HttpServletRequest request,
+            @ApiParam("upsert") @RequestParam(defaultValue = "false") boolean upsert) throws IOException {
+        if (upsert) {
+            return bulkWriter.upsert(request.getInputStream(), UCSBDiningCommons.class, UCSBDiningCommons::getCode,
+                    commons -> missingKey(commons.getCode(), "code"),
+                    ucsbDiningCommonsRepository::findExistingCodes, ucsbDiningCommonsRepository);
+        }
+        return bulkWriter.insert(request.getInputStream(), UCSBDiningCommons.class, UCSBDiningCommons::getCode,
+                commons -> missingKey(commons.getCode(), "code"),
+                ucsbDiningCommonsRepository::findExistingCodes, ucsbDiningCommonsRepository::insertAll);
+    }
+
     @ApiOperation(value = "Delete a UCSBDiningCommons")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @DeleteMapping("")
     public Object deleteCommons(
             @ApiParam("code") @RequestParam String code) {
-        UCSBDiningCommons commons = ucsbDiningCommonsRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
-
-        ucsbDiningCommonsRepository.delete(commons);
+        if (ucsbDiningCommonsRepository.deleteRow(code) == 0) {
+            throw new EntityNotFoundException(UCSBDiningCommons.class, code);
+        }
+        entityChanged(Operation.DELETE, UCSBDiningCommons.class, code, null);
         return genericMessage("UCSBDiningCommons with id %s deleted".formatted(code));
     }
 
+    @ApiOperation(value = "Delete many dining commons at once, given a JSON array of their codes")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @DeleteMapping("/bulk")
+    public Object bulkDeleteCommons(
+            @RequestBody List<String> codes) {
+        return bulkDelete(UCSBDiningCommons.class, codes, ucsbDiningCommonsRepository::findExistingCodes, ucsbDiningCommonsRepository::deleteRows);
+    }
+
     @ApiOperation(value = "Update a single commons")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
     @PutMapping("")
     public UCSBDiningCommons updateCommons(
             @ApiParam("code") @RequestParam String code,
@@ -109,7 +246,18 @@ public class UCSBDiningCommonsController extends ApiController {
         commons.setLongitude(incoming.getLongitude());
 
         ucsbDiningCommonsRepository.save(commons);
+        entityChanged(Operation.UPDATE, UCSBDiningCommons.class, code, commons);
 
         return commons;
     }
+
+    @ApiOperation(value = "Change some fields of a single commons, given a JSON merge patch (RFC 7396)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @Transactional
+    @PatchMapping(value = "", consumes = { MERGE_PATCH_JSON, MediaType.APPLICATION_JSON_VALUE })
+    public Object patchCommons(
+            @ApiParam("code") @RequestParam String code,
+            @RequestBody JsonNode patch) {
+        return mergePatch(ucsbDiningCommonsRepository, UCSBDiningCommons.class, code, patch);
+    }
 }
@@ -2,6 +2,8 @@ package edu.ucsb.cs156.example.entities;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,6 +15,11 @@ import lombok.Builder;
 @NoArgsConstructor
 @Builder
 @Entity(name = "apartment")
+@Table(indexes = {
+  @Index(name = "idx_apartment_city_state_rooms", columnList = "city, state, rooms"),
+  @Index(name = "idx_apartment_state_rooms", columnList = "state, rooms"),
+  @Index(name = "idx_apartment_rooms", columnList = "rooms")
+})
 public class Apartment {
   @Id
   private String code;
@@ -0,0 +1,23 @@
+package edu.ucsb.cs156.example.entities;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+// One row per one-off data backfill that has finished, so it is not run again.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "backfills")
+public class Backfill {
+  @Id
+  private String name;
+  private Instant completedAt;
+}
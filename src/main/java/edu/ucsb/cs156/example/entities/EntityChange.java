@@ -0,0 +1,37 @@
+package edu.ucsb.cs156.example.entities;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "entitychanges")
+public class EntityChange {
+  public static final String SEQUENCE = "entitychanges_seq";
+
+  // drawn from SEQUENCE by the database as the row is inserted (see ChangeLogRepository)
+  @Id
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE)
+  @SequenceGenerator(name = SEQUENCE, sequenceName = SEQUENCE, allocationSize = 1)
+  private long seq;
+  private String entityType;
+  private String entityId;
+  @Enumerated(EnumType.STRING)
+  private EntityChangedEvent.Operation operation;
+  private Instant changedAt;
+}
@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+// The single row (id ROW) every change log append locks until its transaction
+// ends, so seq values are drawn in the order the appends commit (see
+// ChangeLogRepository).
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "entitychangelock")
+public class EntityChangeLock {
+  public static final long ROW = 1;
+
+  @Id
+  private long id;
+}
@@ -2,6 +2,8 @@ package edu.ucsb.cs156.example.entities;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,6 +15,7 @@ import lombok.Builder;
 @NoArgsConstructor
 @Builder
 @Entity(name = "movies")
+@Table(indexes = @Index(name = "idx_movies_release_year", columnList = "release_year"))
 public class Movie {
   @Id
   private String id;
@@ -6,6 +6,7 @@ import javax.persistence.Entity;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.GeneratedValue;
+import javax.persistence.SequenceGenerator;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -19,7 +20,8 @@ import lombok.Builder;
 @Entity(name = "musics")
 public class Music {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "musics_seq")
+  @SequenceGenerator(name = "musics_seq", sequenceName = "musics_seq", allocationSize = 50)
   private long id;  
   private String title;
   private String album;
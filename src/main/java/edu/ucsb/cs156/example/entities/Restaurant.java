@@ -1,12 +1,21 @@
 package edu.ucsb.cs156.example.entities;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Builder;
+import lombok.Setter;
 
 
 @Data
@@ -14,10 +23,45 @@ import lombok.Builder;
 @NoArgsConstructor
 @Builder
 @Entity(name = "restaurant")
+@Table(indexes = @Index(name = "idx_restaurant_rating", columnList = "rating"))
 public class Restaurant {
+  private static final Pattern RATING = Pattern.compile("\\d+(\\.\\d+)?");
+
   @Id
   private String code;
   private String name;  
   private String descript;
   private String yelp_rating;
+
+  // yelp_rating as a number (e.g. "4.5 stars" -> 4.5), or null if it has none;
+  // always derived from yelp_rating, never set directly
+  @Setter(AccessLevel.NONE)
+  @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+  private Double rating;
+
+  public void setYelp_rating(String yelp_rating) {
+    this.yelp_rating = yelp_rating;
+    this.rating = parseRating(yelp_rating);
+  }
+
+  // The first number in the text, if it is a plausible star rating (0 to 5).
+  public static Double parseRating(String yelp_rating) {
+    if (yelp_rating == null) {
+      return null;
+    }
+    Matcher m = RATING.matcher(yelp_rating);
+    if (!m.find()) {
+      return null;
+    }
+    double rating = Double.parseDouble(m.group());
+    return rating <= 5 ? rating : null;
+  }
+
+  public static class RestaurantBuilder {
+    public RestaurantBuilder yelp_rating(String yelp_rating) {
+      this.yelp_rating = yelp_rating;
+      this.rating = parseRating(yelp_rating);
+      return this;
+    }
+  }
 }
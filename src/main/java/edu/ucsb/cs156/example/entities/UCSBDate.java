@@ -5,7 +5,10 @@ import java.time.LocalDateTime;
 import javax.persistence.Entity;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import javax.persistence.GeneratedValue;
+import javax.persistence.SequenceGenerator;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -17,9 +20,14 @@ import lombok.Builder;
 @NoArgsConstructor
 @Builder
 @Entity(name = "ucsbdates")
+@Table(indexes = {
+  @Index(name = "idx_ucsbdates_local_date_time", columnList = "localDateTime"),
+  @Index(name = "idx_ucsbdates_quarter_local_date_time", columnList = "quarterYYYYQ, localDateTime")
+})
 public class UCSBDate {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ucsbdates_seq")
+  @SequenceGenerator(name = "ucsbdates_seq", sequenceName = "ucsbdates_seq", allocationSize = 50)
   private long id;
 
   private String quarterYYYYQ;
@@ -8,6 +8,7 @@ import lombok.AccessLevel;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.GeneratedValue;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.GenerationType;
 
 @Data
@@ -17,7 +18,8 @@ import javax.persistence.GenerationType;
 @Entity(name = "users")
 public class User {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+  @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
   private long id;
   private String email;
   private String googleSub;
@@ -0,0 +1,8 @@
+package edu.ucsb.cs156.example.errors;
+
+public class QueueFullException extends RuntimeException {
+  public QueueFullException(String queue, int rows, int capacity) {
+    super("The %s queue has no room for %d more rows (it holds at most %d); try again shortly"
+      .formatted(queue, rows, capacity));
+  }
+}
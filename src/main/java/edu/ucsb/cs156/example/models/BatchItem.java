@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.models;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * One entry of a multi-get (batch) response: either the item that was found
+ * for the requested key, or a not-found message in its place.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItem<T> {
+  private Object key;
+  private boolean found;
+  private T item;
+  private String message;
+}
@@ -0,0 +1,22 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.List;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * Outcome of a bulk upload: how many rows were saved, and the rows that were
+ * rejected (and not saved) with the reason for each.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class BulkResult {
+  private long saved;
+  private List<RowError> errors;
+}
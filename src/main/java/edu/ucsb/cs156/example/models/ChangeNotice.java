@@ -0,0 +1,40 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * What a stream subscriber is sent: either one write (operation, id and, except
+ * for deletes, the entity as written, or for partial updates just the changed
+ * fields), or a note that `dropped` earlier notices were discarded because the
+ * subscriber fell behind.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChangeNotice {
+  private EntityChangedEvent.Operation operation;
+  private Object id;
+  private Object entity;
+  private Map<String, Object> changes;
+  private Long dropped;
+
+  public static ChangeNotice of(EntityChangedEvent event) {
+    boolean deleted = event.getOperation() == EntityChangedEvent.Operation.DELETE;
+    return new ChangeNotice(event.getOperation(), event.getId(), deleted ? null : event.getEntity(),
+        event.getChanges(), null);
+  }
+
+  public static ChangeNotice dropped(long dropped) {
+    return ChangeNotice.builder().dropped(dropped).build();
+  }
+}
@@ -0,0 +1,36 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.Map;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * Published by the controllers for every create, update or delete, inside the
+ * transaction that makes the write. ChangeLogService records it in that same
+ * transaction; every other listener is a @TransactionalEventListener and so
+ * only hears of the write once it has committed (or straight away, for writes
+ * made outside a transaction). For deletes, entity may be null; id is always set. Partial updates
+ * (merge patches) carry the changed fields, by entity attribute name, in
+ * changes instead of the entity.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class EntityChangedEvent {
+  public enum Operation { CREATE, UPDATE, DELETE }
+
+  private Class<?> entityType;
+  private Object id;
+  private Operation operation;
+  private Object entity;
+  private Map<String, Object> changes;
+
+  public EntityChangedEvent(Class<?> entityType, Object id, Operation operation, Object entity) {
+    this(entityType, id, operation, entity, null);
+  }
+}
@@ -0,0 +1,20 @@
+package edu.ucsb.cs156.example.models;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * An item returned by a nearest-neighbour query, with its great-circle distance
+ * from the query point in meters.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class Nearby<T> {
+  private T item;
+  private double distanceMeters;
+}
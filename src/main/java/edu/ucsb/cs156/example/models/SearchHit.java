@@ -0,0 +1,20 @@
+package edu.ucsb.cs156.example.models;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * One result of a ranked search: the matching item and its relevance score
+ * (higher is better; scores are only comparable within one query).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class SearchHit<T> {
+  private T item;
+  private double score;
+}
@@ -0,0 +1,21 @@
+package edu.ucsb.cs156.example.models;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * One result of the cross-table search: which table it came from (named as in
+ * the CRUD paths), its fused score, and the row itself.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class SourcedHit {
+  private String source;
+  private double score;
+  private Object item;
+}
@@ -0,0 +1,22 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.List;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * Merged results of the cross-table search. Tables listed in incomplete timed
+ * out or failed, so hits from them are missing.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class UnifiedSearchResults {
+  private List<SourcedHit> hits;
+  private List<String> incomplete;
+}
@@ -0,0 +1,32 @@
+package edu.ucsb.cs156.example.models;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import lombok.Builder;
+import lombok.AccessLevel;
+
+/**
+ * Receipt for rows queued on an asynchronous write path, and where they have got
+ * to: QUEUED until the group they are in is committed, then COMMITTED (with the
+ * ids the rows were saved under, in the order they were sent) or FAILED (with the
+ * reason; none of the ticket's rows were saved).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder(toBuilder = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WriteTicket {
+  public enum Status { QUEUED, COMMITTED, FAILED }
+
+  private long ticket;
+  private Status status;
+  private int rows;
+  private List<Object> ids;
+  private String message;
+}
@@ -1,11 +1,44 @@
 package edu.ucsb.cs156.example.repositories;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 import edu.ucsb.cs156.example.entities.Book;
 
 @Repository
-public interface BookRepository extends CrudRepository<Book, Long>{
+public interface BookRepository extends CrudRepository<Book, Long>, DetachableRepository, SparseFieldsRepository, PatchRepository {
+  List<Book> findAllByOrderByIdAsc(Pageable pageable);
+  List<Book> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select b from books b")
+  Stream<Book> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from books b where b.id = :id")
+  int deleteRow(@Param("id") Long id);
+
+  @Query("select b.id from books b where b.id in :ids")
+  List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 
+  @Transactional
+  @Modifying
+  @Query("delete from books b where b.id in :ids")
+  int deleteRows(@Param("ids") Collection<Long> ids);
 }
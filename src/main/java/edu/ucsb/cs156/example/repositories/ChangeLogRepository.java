@@ -0,0 +1,21 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.List;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+
+/**
+ * Repository fragment that appends change log entries with one batched INSERT,
+ * in the caller's transaction. Each entry's seq is ignored: the database draws
+ * it from EntityChange.SEQUENCE as the row goes in, so no round trip is spent
+ * fetching numbers and no two instances of the app can hand out the same one.
+ * <p>
+ * Before drawing, the append locks the EntityChangeLock row, and the lock is
+ * held until the caller's transaction commits or rolls back. Appends therefore
+ * take their numbers one transaction at a time: one that drew a lower seq has
+ * already committed (or rolled back) when the next one draws. A reader that
+ * has seen a seq can never be handed a lower one later.
+ */
+public interface ChangeLogRepository {
+  void append(List<EntityChange> changes);
+}
@@ -0,0 +1,66 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.entities.EntityChangeLock;
+
+public class ChangeLogRepositoryImpl implements ChangeLogRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public void append(List<EntityChange> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+        .getJdbcServices().getDialect();
+    String sql = "insert into entitychanges (seq, entity_type, entity_id, operation, changed_at) values (%s, ?, ?, ?, ?)"
+        .formatted(dialect.getSelectSequenceNextValString(EntityChange.SEQUENCE));
+
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try (Statement lock = connection.createStatement()) {
+        lock.executeUpdate(lockSql(connection.getMetaData().getDatabaseProductName()));
+      }
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        for (EntityChange change : changes) {
+          statement.setString(1, change.getEntityType());
+          statement.setString(2, change.getEntityId());
+          statement.setString(3, change.getOperation().name());
+          statement.setTimestamp(4, Timestamp.from(change.getChangedAt()));
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      }
+    });
+  }
+
+  // Creates the lock row the first time and locks it every time after, in one
+  // statement, so concurrent first appends wait on each other instead of one
+  // failing on the duplicate key.
+  static String lockSql(String database) {
+    switch (database) {
+      case "PostgreSQL":
+        return "insert into entitychangelock (id) values (%d) on conflict (id) do update set id = excluded.id"
+            .formatted(EntityChangeLock.ROW);
+      case "H2":
+        return "merge into entitychangelock (id) key (id) values (%d)".formatted(EntityChangeLock.ROW);
+      default:
+        throw new IllegalStateException("The change log cannot be locked on %s".formatted(database));
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package edu.ucsb.cs156.example.repositories;
+
+/**
+ * Repository fragment for code that walks a large result set one row at a
+ * time (e.g. from a Stream query) and needs to evict each row from the
+ * persistence context once it is done with it, so that memory use stays flat.
+ */
+public interface DetachableRepository {
+  void detach(Object entity);
+}
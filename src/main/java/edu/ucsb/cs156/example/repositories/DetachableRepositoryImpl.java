@@ -0,0 +1,15 @@
+package edu.ucsb.cs156.example.repositories;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+public class DetachableRepositoryImpl implements DetachableRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public void detach(Object entity) {
+    entityManager.detach(entity);
+  }
+}
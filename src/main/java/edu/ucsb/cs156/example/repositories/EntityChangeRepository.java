@@ -0,0 +1,14 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EntityChangeRepository extends CrudRepository<EntityChange, Long>, ChangeLogRepository {
+  List<EntityChange> findBySeqGreaterThanOrderBySeqAsc(long since, Pageable pageable);
+}
@@ -0,0 +1,14 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.List;
+
+/**
+ * Repository fragment for entities whose key is supplied by the client. Inserts
+ * new rows with persist rather than saveAll, which would merge each row and so
+ * silently overwrite any row that already has its key (after reading it first).
+ * A row whose key exists fails the flush instead, with a
+ * DataIntegrityViolationException. Returns the rows it was given.
+ */
+public interface InsertRepository {
+  <T> List<T> insertAll(List<T> rows);
+}
@@ -0,0 +1,22 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.transaction.annotation.Transactional;
+
+public class InsertRepositoryImpl implements InsertRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public <T> List<T> insertAll(List<T> rows) {
+    rows.forEach(entityManager::persist);
+    entityManager.flush();
+    return rows;
+  }
+}
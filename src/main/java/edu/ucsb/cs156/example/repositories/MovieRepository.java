@@ -1,13 +1,51 @@
 package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.models.MovieYear;
 
 import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface MovieRepository extends CrudRepository<Movie, String> {
- 
-}
\ No newline at end of file
+public interface MovieRepository extends CrudRepository<Movie, String>, DetachableRepository, SparseFieldsRepository, PatchRepository, UpsertRepository, InsertRepository {
+  List<Movie> findAllByOrderByIdAsc(Pageable pageable);
+  List<Movie> findByIdGreaterThanOrderByIdAsc(String after, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select m from movies m")
+  Stream<Movie> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from movies m where m.id = :id")
+  int deleteRow(@Param("id") String id);
+
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+  @Query("select new edu.ucsb.cs156.example.models.MovieYear(m.id, m.release_year) from movies m")
+  List<MovieYear> findAllYears();
+
+  @Query("select m.id from movies m where m.id in :ids")
+  List<String> findExistingIds(@Param("ids") Collection<String> ids);
+
+  @Transactional
+  @Modifying
+  @Query("delete from movies m where m.id in :ids")
+  int deleteRows(@Param("ids") Collection<String> ids);
+}
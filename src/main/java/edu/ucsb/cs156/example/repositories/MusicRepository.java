@@ -2,11 +2,50 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Music;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+import static org.hibernate.jpa.QueryHints.SPEC_HINT_TIMEOUT;
 
 
 @Repository
-public interface MusicRepository extends CrudRepository<Music, Long> {
- 
-}
\ No newline at end of file
+public interface MusicRepository extends CrudRepository<Music, Long>, DetachableRepository, SparseFieldsRepository, PatchRepository {
+  List<Music> findAllByOrderByIdAsc(Pageable pageable);
+  List<Music> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+
+  // Used by the unified search, which stops waiting for a table after 500 ms
+  // (app.search.timeoutMillis); the database gives up on the query at the same time.
+  @QueryHints(@QueryHint(name = SPEC_HINT_TIMEOUT, value = "500"))
+  List<Music> findByTitleContainingIgnoreCaseOrArtistContainingIgnoreCaseOrderByIdAsc(String title, String artist, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select m from musics m")
+  Stream<Music> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from musics m where m.id = :id")
+  int deleteRow(@Param("id") Long id);
+
+  @Query("select m.id from musics m where m.id in :ids")
+  List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+  @Transactional
+  @Modifying
+  @Query("delete from musics m where m.id in :ids")
+  int deleteRows(@Param("ids") Collection<Long> ids);
+}
@@ -3,11 +3,44 @@ package edu.ucsb.cs156.example.repositories;
 import edu.ucsb.cs156.example.entities.Painting;
 
 import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface PaintingRepository extends CrudRepository<Painting, String> {
- 
-}
\ No newline at end of file
+public interface PaintingRepository extends CrudRepository<Painting, String>, DetachableRepository, SparseFieldsRepository, PatchRepository, UpsertRepository, InsertRepository {
+  List<Painting> findAllByOrderByCodeAsc(Pageable pageable);
+  List<Painting> findByCodeGreaterThanOrderByCodeAsc(String after, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select p from paintings p")
+  Stream<Painting> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from paintings p where p.code = :code")
+  int deleteRow(@Param("code") String code);
+
+  @Query("select p.code from paintings p where p.code in :codes")
+  List<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
+  @Transactional
+  @Modifying
+  @Query("delete from paintings p where p.code in :codes")
+  int deleteRows(@Param("codes") Collection<String> codes);
+}
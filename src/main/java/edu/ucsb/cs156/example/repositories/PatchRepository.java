@@ -0,0 +1,18 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Repository fragment for partial updates (RFC 7396 merge patches). patchChanges
+ * turns a patch body into the new value of each field it names, rejecting unknown
+ * fields, the id and nulls for primitive fields with a BadRequestException;
+ * updateColumns then writes just those columns with one UPDATE and returns the
+ * number of rows it matched (0 or 1), without loading the row first.
+ */
+public interface PatchRepository {
+  Map<String, Object> patchChanges(Class<?> entityType, JsonNode patch);
+
+  int updateColumns(Class<?> entityType, Object key, Map<String, Object> changes);
+}
@@ -0,0 +1,101 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PatchRepositoryImpl implements PatchRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  @Override
+  public Map<String, Object> patchChanges(Class<?> entityType, JsonNode patch) {
+    if (patch == null || !patch.isObject()) {
+      throw new BadRequestException("A merge patch must be a JSON object");
+    }
+    EntityType<?> model = entityManager.getMetamodel().entity(entityType);
+
+    Map<String, Object> changes = new LinkedHashMap<>();
+    Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+    while (fields.hasNext()) {
+      Map.Entry<String, JsonNode> field = fields.next();
+      String name = field.getKey();
+      SingularAttribute<?, ?> attribute = attribute(model, entityType, name);
+      if (attribute.isId()) {
+        throw new BadRequestException("%s cannot be changed".formatted(name));
+      }
+      JsonNode value = field.getValue();
+      if (value.isNull() && attribute.getJavaType().isPrimitive()) {
+        throw new BadRequestException("%s cannot be null".formatted(name));
+      }
+      // In a merge patch null means "remove", which for a column is NULL.
+      changes.put(name, value.isNull() ? null : convert(value, attribute.getJavaType(), name));
+    }
+    return changes;
+  }
+
+  @Override
+  @Transactional
+  public int updateColumns(Class<?> entityType, Object key, Map<String, Object> changes) {
+    EntityType<?> model = entityManager.getMetamodel().entity(entityType);
+    String idName = model.getId(model.getIdType().getJavaType()).getName();
+
+    if (changes.isEmpty()) {
+      // An empty patch changes nothing, but should still 404 on a missing row.
+      Long count = entityManager.createQuery(
+          "select count(e) from %s e where e.%s = :key".formatted(model.getName(), idName), Long.class)
+          .setParameter("key", key)
+          .getSingleResult();
+      return count.intValue();
+    }
+
+    StringJoiner set = new StringJoiner(", ");
+    int i = 0;
+    for (String name : changes.keySet()) {
+      set.add("e.%s = :p%d".formatted(name, i++));
+    }
+    Query update = entityManager.createQuery(
+        "update %s e set %s where e.%s = :key".formatted(model.getName(), set, idName));
+    i = 0;
+    for (Object value : changes.values()) {
+      update.setParameter("p" + i++, value);
+    }
+    return update.setParameter("key", key).executeUpdate();
+  }
+
+  private static SingularAttribute<?, ?> attribute(EntityType<?> model, Class<?> entityType, String name) {
+    for (SingularAttribute<?, ?> attribute : model.getSingularAttributes()) {
+      if (attribute.getName().equals(name)) {
+        return attribute;
+      }
+    }
+    throw new BadRequestException("%s has no field named %s".formatted(entityType.getSimpleName(), name));
+  }
+
+  private Object convert(JsonNode value, Class<?> type, String name) {
+    try {
+      return mapper.treeToValue(value, type);
+    } catch (Exception e) {
+      throw new BadRequestException("%s must be a %s".formatted(name, type.getSimpleName()));
+    }
+  }
+}
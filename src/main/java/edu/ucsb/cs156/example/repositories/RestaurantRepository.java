@@ -3,11 +3,48 @@ package edu.ucsb.cs156.example.repositories;
 import edu.ucsb.cs156.example.entities.Restaurant;
 
 import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface RestaurantRepository extends CrudRepository<Restaurant, String> {
- 
-}
\ No newline at end of file
+public interface RestaurantRepository extends CrudRepository<Restaurant, String>, DetachableRepository, SparseFieldsRepository, PatchRepository, UpsertRepository, InsertRepository {
+  List<Restaurant> findAllByOrderByCodeAsc(Pageable pageable);
+  List<Restaurant> findByCodeGreaterThanOrderByCodeAsc(String after, Pageable pageable);
+  List<Restaurant> findByRatingGreaterThanEqualOrderByRatingDescCodeAsc(Double minRating, Pageable pageable);
+
+  @Query("select r from restaurant r where r.rating is null and r.yelp_rating is not null")
+  List<Restaurant> findUnrated();
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select r from restaurant r")
+  Stream<Restaurant> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from restaurant r where r.code = :code")
+  int deleteRow(@Param("code") String code);
+
+  @Query("select r.code from restaurant r where r.code in :codes")
+  List<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
+  @Transactional
+  @Modifying
+  @Query("delete from restaurant r where r.code in :codes")
+  int deleteRows(@Param("codes") Collection<String> codes);
+}
@@ -0,0 +1,17 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Repository fragment for sparse fieldsets (?fields=a,b on the list endpoints).
+ * Only the requested columns (plus the id, which is always included so that
+ * keyset pagination keeps working) are selected, in id order. Unknown field
+ * names are rejected with a BadRequestException.
+ */
+public interface SparseFieldsRepository {
+  List<Map<String, Object>> findFields(Class<?> entityType, Collection<String> fields, Object after, Pageable pageable);
+}
@@ -0,0 +1,94 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.springframework.data.domain.Pageable;
+
+public class SparseFieldsRepositoryImpl implements SparseFieldsRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public List<Map<String, Object>> findFields(Class<?> entityType, Collection<String> fields, Object after, Pageable pageable) {
+    EntityType<?> model = entityManager.getMetamodel().entity(entityType);
+
+    String idName = null;
+    Set<String> known = new LinkedHashSet<>();
+    for (SingularAttribute<?, ?> attribute : model.getSingularAttributes()) {
+      known.add(attribute.getName());
+      if (attribute.isId()) {
+        idName = attribute.getName();
+      }
+    }
+
+    Set<String> selected = new LinkedHashSet<>();
+    selected.add(idName);
+    for (String field : fields) {
+      String name = field.trim();
+      if (name.isEmpty()) {
+        continue;
+      }
+      if (!known.contains(name)) {
+        throw new BadRequestException("%s has no field named %s".formatted(entityType.getSimpleName(), name));
+      }
+      selected.add(name);
+    }
+
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<Tuple> query = cb.createTupleQuery();
+    Root<?> root = query.from(entityType);
+
+    List<Selection<?>> selections = new ArrayList<>();
+    for (String name : selected) {
+      selections.add(root.get(name).alias(name));
+    }
+    query.multiselect(selections);
+    if (after != null) {
+      query.where(greaterThan(cb, root.get(idName), after));
+    }
+    query.orderBy(cb.asc(root.get(idName)));
+
+    TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+    if (pageable.isPaged()) {
+      typedQuery.setFirstResult((int) pageable.getOffset());
+      typedQuery.setMaxResults(pageable.getPageSize());
+    }
+
+    List<Map<String, Object>> rows = new ArrayList<>();
+    for (Tuple tuple : typedQuery.getResultList()) {
+      Map<String, Object> row = new LinkedHashMap<>();
+      for (String name : selected) {
+        row.put(name, tuple.get(name));
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static Predicate greaterThan(CriteriaBuilder cb, Expression<?> id, Object after) {
+    return cb.greaterThan((Expression<Comparable>) id, (Comparable) after);
+  }
+}
@@ -2,11 +2,45 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.UCSBDate;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 
 @Repository
-public interface UCSBDateRepository extends CrudRepository<UCSBDate, Long> {
+public interface UCSBDateRepository extends CrudRepository<UCSBDate, Long>, DetachableRepository, SparseFieldsRepository, PatchRepository {
   Iterable<UCSBDate> findAllByQuarterYYYYQ(String quarterYYYYQ);
-}
\ No newline at end of file
+  List<UCSBDate> findAllByOrderByIdAsc(Pageable pageable);
+  List<UCSBDate> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select u from ucsbdates u")
+  Stream<UCSBDate> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from ucsbdates u where u.id = :id")
+  int deleteRow(@Param("id") Long id);
+
+  @Query("select u.id from ucsbdates u where u.id in :ids")
+  List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+  @Transactional
+  @Modifying
+  @Query("delete from ucsbdates u where u.id in :ids")
+  int deleteRows(@Param("ids") Collection<Long> ids);
+}
@@ -3,11 +3,50 @@ package edu.ucsb.cs156.example.repositories;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 
 import org.springframework.beans.propertyeditors.StringArrayPropertyEditor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.Collection;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+import static org.hibernate.jpa.QueryHints.SPEC_HINT_TIMEOUT;
 
 
 @Repository
-public interface UCSBDiningCommonsRepository extends CrudRepository<UCSBDiningCommons, String> {
- 
-}
\ No newline at end of file
+public interface UCSBDiningCommonsRepository extends CrudRepository<UCSBDiningCommons, String>, DetachableRepository, SparseFieldsRepository, PatchRepository, UpsertRepository, InsertRepository {
+  List<UCSBDiningCommons> findAllByOrderByCodeAsc(Pageable pageable);
+  List<UCSBDiningCommons> findByCodeGreaterThanOrderByCodeAsc(String after, Pageable pageable);
+
+  // Used by the unified search, which stops waiting for a table after 500 ms
+  // (app.search.timeoutMillis); the database gives up on the query at the same time.
+  @QueryHints(@QueryHint(name = SPEC_HINT_TIMEOUT, value = "500"))
+  List<UCSBDiningCommons> findByNameContainingIgnoreCaseOrderByCodeAsc(String name, Pageable pageable);
+
+  @QueryHints({ @QueryHint(name = HINT_FETCH_SIZE, value = "500"), @QueryHint(name = HINT_READONLY, value = "true") })
+  @Query("select u from ucsbdiningcommons u")
+  Stream<UCSBDiningCommons> streamAll();
+
+  @Transactional
+  @Modifying
+  @Query("delete from ucsbdiningcommons u where u.code = :code")
+  int deleteRow(@Param("code") String code);
+
+  @Query("select u.code from ucsbdiningcommons u where u.code in :codes")
+  List<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
+  @Transactional
+  @Modifying
+  @Query("delete from ucsbdiningcommons u where u.code in :codes")
+  int deleteRows(@Param("codes") Collection<String> codes);
+}
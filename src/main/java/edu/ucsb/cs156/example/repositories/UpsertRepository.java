@@ -0,0 +1,13 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.util.List;
+
+/**
+ * Repository fragment for entities whose key is supplied by the client. Writes
+ * every row with one batched native insert-or-update (INSERT ... ON CONFLICT DO
+ * UPDATE on PostgreSQL, MERGE on H2), so no row is read first to decide between
+ * persist and merge. Returns the number of rows written.
+ */
+public interface UpsertRepository {
+  int upsertAll(Class<?> entityType, List<?> rows);
+}
@@ -0,0 +1,79 @@
+package edu.ucsb.cs156.example.repositories;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.StringJoiner;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.springframework.transaction.annotation.Transactional;
+
+public class UpsertRepositoryImpl implements UpsertRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public int upsertAll(Class<?> entityType, List<?> rows) {
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    AbstractEntityPersister persister = (AbstractEntityPersister) entityManager.getEntityManagerFactory()
+        .unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersister(entityType);
+    SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+    Type[] types = persister.getPropertyTypes();
+
+    return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      String sql = upsertSql(connection.getMetaData().getDatabaseProductName(), persister);
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+        for (Object row : rows) {
+          persister.getIdentifierType().nullSafeSet(statement, persister.getIdentifier(row, session), 1, session);
+          Object[] values = persister.getPropertyValues(row);
+          for (int i = 0; i < values.length; i++) {
+            types[i].nullSafeSet(statement, values[i], i + 2, session);
+          }
+          statement.addBatch();
+        }
+        int written = 0;
+        for (int count : statement.executeBatch()) {
+          written += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+        }
+        return written;
+      }
+    });
+  }
+
+  // Columns are listed id first, then in the persister's property order, which is
+  // also the order upsertAll binds them in.
+  static String upsertSql(String database, AbstractEntityPersister persister) {
+    String id = persister.getIdentifierColumnNames()[0];
+    StringJoiner columns = new StringJoiner(", ").add(id);
+    StringJoiner params = new StringJoiner(", ").add("?");
+    StringJoiner updates = new StringJoiner(", ");
+    for (int i = 0; i < persister.getPropertyNames().length; i++) {
+      String column = persister.getPropertyColumnNames(i)[0];
+      columns.add(column);
+      params.add("?");
+      updates.add("%s = excluded.%s".formatted(column, column));
+    }
+    String table = persister.getTableName();
+
+    switch (database) {
+      case "PostgreSQL":
+        return "insert into %s (%s) values (%s) on conflict (%s) do update set %s"
+            .formatted(table, columns, params, id, updates);
+      case "H2":
+        return "merge into %s (%s) key (%s) values (%s)".formatted(table, columns, id, params);
+      default:
+        throw new IllegalStateException("Upsert is not supported on %s".formatted(database));
+    }
+  }
+}
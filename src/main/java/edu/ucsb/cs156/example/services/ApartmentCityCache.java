@@ -0,0 +1,96 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Apartment;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.repositories.ApartmentRepository;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// The apartments of the most recently searched cities, so that the search box
+// can filter a city's apartments in memory on every keystroke. Least recently
+// used cities are dropped beyond CAPACITY; any write to an apartment drops the
+// buckets it was or is now in. The city each cached apartment is bucketed under
+// is kept by code, so a write finds its old bucket without scanning them all.
+
+@Service
+public class ApartmentCityCache {
+
+  static final int CAPACITY = 32;
+
+  private final ApartmentRepository apartmentRepository;
+
+  private final Map<String, List<Apartment>> buckets = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, List<Apartment>> eldest) {
+      if (size() <= CAPACITY) {
+        return false;
+      }
+      forget(eldest.getKey(), eldest.getValue());
+      return true;
+    }
+  };
+
+  // apartment code -> the city of the cached bucket it is in
+  private final Map<Object, String> cityOf = new HashMap<>();
+
+  // bumped on every write, so a bucket read from the database while a write was
+  // going on is not cached
+  private long generation = 0;
+
+  public ApartmentCityCache(ApartmentRepository apartmentRepository) {
+    this.apartmentRepository = apartmentRepository;
+  }
+
+  public List<Apartment> apartmentsIn(String city) {
+    long loadedAt;
+    synchronized (this) {
+      List<Apartment> bucket = buckets.get(city);
+      if (bucket != null) {
+        return bucket;
+      }
+      loadedAt = generation;
+    }
+    List<Apartment> bucket = List.copyOf(apartmentRepository.findByCityOrderByCodeAsc(city));
+    synchronized (this) {
+      if (generation == loadedAt) {
+        bucket.forEach(apartment -> cityOf.put(apartment.getCode(), city));
+        buckets.put(city, bucket);
+      }
+    }
+    return bucket;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public synchronized void onEntityChanged(EntityChangedEvent event) {
+    if (event.getEntityType() != Apartment.class) {
+      return;
+    }
+    generation++;
+    String oldCity = cityOf.get(event.getId());
+    if (oldCity != null) {
+      drop(oldCity);
+    }
+    if (event.getEntity() != null) {
+      drop(((Apartment) event.getEntity()).getCity());
+    } else if (event.getChanges() != null && event.getChanges().get("city") instanceof String city) {
+      drop(city);
+    }
+  }
+
+  private void drop(String city) {
+    List<Apartment> bucket = buckets.remove(city);
+    if (bucket != null) {
+      forget(city, bucket);
+    }
+  }
+
+  private void forget(String city, List<Apartment> bucket) {
+    bucket.forEach(apartment -> cityOf.remove(apartment.getCode(), city));
+  }
+}
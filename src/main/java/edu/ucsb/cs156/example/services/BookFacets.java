@@ -0,0 +1,33 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public class BookFacets extends FacetIndex<Book, Long> {
+
+  private final BookRepository bookRepository;
+
+  public BookFacets(BookRepository bookRepository) {
+    super(Book.class, Book::getId, facetColumns());
+    this.bookRepository = bookRepository;
+  }
+
+  private static Map<String, Function<Book, String>> facetColumns() {
+    Map<String, Function<Book, String>> facets = new LinkedHashMap<>();
+    facets.put("genre", Book::getGenre);
+    facets.put("author", Book::getAuthor);
+    return facets;
+  }
+
+  @Override
+  protected Iterable<Book> loadAll() {
+    return bookRepository.findAll();
+  }
+}
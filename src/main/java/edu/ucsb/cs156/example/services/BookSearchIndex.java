@@ -0,0 +1,152 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+// Inverted index over the text fields of Book, ranked with BM25. A term found in
+// the title counts three times, in the author or genre twice, and in the
+// description once, so that a query for an author or title ranks those books
+// above ones that merely mention it.
+
+@Service
+public class BookSearchIndex extends EntityIndex<Book, Long> {
+
+  static final double K1 = 1.2;
+  static final double B = 0.75;
+
+  private static final int TITLE_WEIGHT = 3;
+  private static final int AUTHOR_WEIGHT = 2;
+  private static final int GENRE_WEIGHT = 2;
+  private static final int DESCRIPTION_WEIGHT = 1;
+
+  private static final Comparator<SearchHit<Book>> RANKING = Comparator
+      .comparingDouble((SearchHit<Book> hit) -> hit.getScore())
+      .thenComparing(hit -> hit.getItem().getId(), Comparator.reverseOrder());
+
+  private final BookRepository bookRepository;
+
+  // term -> (book id -> weighted term frequency)
+  private final Map<String, Map<Long, Integer>> postings = new HashMap<>();
+  // book id -> the terms it was indexed under, so it can be removed after an edit
+  private final Map<Long, Map<String, Integer>> documents = new HashMap<>();
+  private final Map<Long, Integer> lengths = new HashMap<>();
+  private long totalLength = 0;
+
+  public BookSearchIndex(BookRepository bookRepository) {
+    super(Book.class, Book::getId);
+    this.bookRepository = bookRepository;
+  }
+
+  // The limit best matches for the query, best first. A book matches if it
+  // contains any of the query terms.
+  public List<SearchHit<Book>> search(String query, int limit) {
+    Set<String> terms = new LinkedHashSet<>(tokenize(query));
+    return read(() -> {
+      if (terms.isEmpty() || documents.isEmpty()) {
+        return List.of();
+      }
+      int n = documents.size();
+      double averageLength = (double) totalLength / n;
+      Map<Long, Double> scores = new HashMap<>();
+      for (String term : terms) {
+        Map<Long, Integer> posting = postings.get(term);
+        if (posting == null) {
+          continue;
+        }
+        double idf = Math.log(1 + (n - posting.size() + 0.5) / (posting.size() + 0.5));
+        posting.forEach((id, tf) -> {
+          double norm = K1 * (1 - B + B * lengths.get(id) / averageLength);
+          scores.merge(id, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+        });
+      }
+
+      PriorityQueue<SearchHit<Book>> best = new PriorityQueue<>(RANKING);
+      scores.forEach((id, score) -> {
+        SearchHit<Book> hit = new SearchHit<>(get(id), score);
+        if (best.size() < limit) {
+          best.add(hit);
+        } else if (RANKING.compare(hit, best.peek()) > 0) {
+          best.poll();
+          best.add(hit);
+        }
+      });
+      List<SearchHit<Book>> hits = new ArrayList<>(best);
+      hits.sort(RANKING.reversed());
+      return hits;
+    });
+  }
+
+  // Lower-cased runs of letters and digits.
+  static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+    if (text == null) {
+      return tokens;
+    }
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar && start < 0) {
+        start = i;
+      } else if (!wordChar && start >= 0) {
+        tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return tokens;
+  }
+
+  @Override
+  protected Iterable<Book> loadAll() {
+    return bookRepository.findAll();
+  }
+
+  @Override
+  protected void indexed(Book book) {
+    Map<String, Integer> terms = new HashMap<>();
+    addTerms(terms, book.getTitle(), TITLE_WEIGHT);
+    addTerms(terms, book.getAuthor(), AUTHOR_WEIGHT);
+    addTerms(terms, book.getGenre(), GENRE_WEIGHT);
+    addTerms(terms, book.getDescription(), DESCRIPTION_WEIGHT);
+
+    int length = terms.values().stream().mapToInt(Integer::intValue).sum();
+    documents.put(book.getId(), terms);
+    lengths.put(book.getId(), length);
+    totalLength += length;
+    terms.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new HashMap<>()).put(book.getId(), tf));
+  }
+
+  @Override
+  protected void unindexed(Book book) {
+    Map<String, Integer> terms = documents.remove(book.getId());
+    if (terms == null) {
+      return;
+    }
+    totalLength -= lengths.remove(book.getId());
+    for (String term : terms.keySet()) {
+      Map<Long, Integer> posting = postings.get(term);
+      posting.remove(book.getId());
+      if (posting.isEmpty()) {
+        postings.remove(term);
+      }
+    }
+  }
+
+  private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+    for (String token : tokenize(text)) {
+      terms.merge(token, weight, Integer::sum);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.repositories.UpsertRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Saves a JSON array of rows without holding the whole array in memory: rows are
+// read one at a time, checked, and saved chunkSize at a time with saveAll, one
+// transaction per chunk (Hibernate batches the inserts within it; see
+// hibernate.jdbc.batch_size). A row that cannot be read as the entity, or that
+// fails the caller's check, is reported and skipped; the rest are still saved.
+// Malformed JSON stops the upload, but chunks already committed stay saved.
+
+@Slf4j
+@Service
+public class BulkWriter {
+
+  private final ObjectMapper mapper;
+  private final TransactionTemplate transactionTemplate;
+  private final ApplicationEventPublisher eventPublisher;
+  private final int chunkSize;
+
+  public BulkWriter(ObjectMapper mapper, TransactionTemplate transactionTemplate,
+      ApplicationEventPublisher eventPublisher, @Value("${app.bulk.chunkSize:500}") int chunkSize) {
+    this.mapper = mapper;
+    this.transactionTemplate = transactionTemplate;
+    this.eventPublisher = eventPublisher;
+    this.chunkSize = chunkSize;
+  }
+
+  // problem returns why a row must not be saved, or null if it is fine.
+  public <T> BulkResult create(InputStream json, Class<T> entityType, Function<T, Object> keyOf,
+      Function<T, String> problem, Function<List<T>, Iterable<T>> saveAll) throws IOException {
+    return write(json, entityType, keyOf, problem, null, false, saveAll);
+  }
+
+  // As create, for entities whose key is supplied by the client, where saveAll
+  // would merge and so overwrite any stored row with the same key. Each chunk
+  // first looks up which of its keys exist (existing returns those keys); those
+  // rows, and rows repeating a key earlier in the chunk, are reported rather than
+  // saved. The rest go to insertAll, which must insert rather than merge, so a row
+  // stored concurrently fails its chunk instead of being overwritten.
+  public <T, K> BulkResult insert(InputStream json, Class<T> entityType, Function<T, K> keyOf,
+      Function<T, String> problem, Function<Collection<K>, List<K>> existing,
+      Function<List<T>, Iterable<T>> insertAll) throws IOException {
+    return write(json, entityType, keyOf, problem, existing, false, insertAll);
+  }
+
+  // As create, but each chunk is written with one native upsert, so rows whose key
+  // already exists replace the stored row. The upsert does not report which rows it
+  // inserted, so each chunk first looks up its stored keys (as insert does): rows
+  // whose key was stored, or repeats a key earlier in the chunk, are published as
+  // updates and the rest as creates.
+  public <T, K> BulkResult upsert(InputStream json, Class<T> entityType, Function<T, K> keyOf,
+      Function<T, String> problem, Function<Collection<K>, List<K>> existing, UpsertRepository repository)
+      throws IOException {
+    Function<List<T>, Iterable<T>> upsertAll = rows -> {
+      repository.upsertAll(entityType, rows);
+      return rows;
+    };
+    return write(json, entityType, keyOf, problem, existing, true, upsertAll);
+  }
+
+  // existing is null when rows need not be checked against the stored keys; replace
+  // says whether rows whose key is stored are saved (as updates) or reported.
+  private <T, K> BulkResult write(InputStream json, Class<T> entityType, Function<T, K> keyOf,
+      Function<T, String> problem, Function<Collection<K>, List<K>> existing, boolean replace,
+      Function<List<T>, Iterable<T>> saveAll) throws IOException {
+    List<RowError> errors = new ArrayList<>();
+    List<T> chunk = new ArrayList<>(chunkSize);
+    List<Long> chunkRows = new ArrayList<>(chunkSize);
+    long saved = 0;
+    long row = 0;
+
+    try (JsonParser parser = mapper.getFactory().createParser(json)) {
+      if (parser.nextToken() != JsonToken.START_ARRAY) {
+        throw new BadRequestException("Expected a JSON array of %s rows".formatted(entityType.getSimpleName()));
+      }
+      for (; parser.nextToken() != JsonToken.END_ARRAY; row++) {
+        JsonNode node = mapper.readTree(parser);
+        T entity;
+        try {
+          entity = mapper.treeToValue(node, entityType);
+        } catch (JsonProcessingException e) {
+          errors.add(new RowError(row, e.getOriginalMessage()));
+          continue;
+        }
+        String message = problem.apply(entity);
+        if (message != null) {
+          errors.add(new RowError(row, message));
+          continue;
+        }
+        chunk.add(entity);
+        chunkRows.add(row);
+        if (chunk.size() == chunkSize) {
+          saved += saveChunk(entityType, keyOf, chunk, chunkRows, existing, replace, errors, saveAll);
+          chunk.clear();
+          chunkRows.clear();
+        }
+      }
+    } catch (JsonProcessingException e) {
+      throw new BadRequestException("Malformed JSON at row %d (%d rows before it were saved): %s"
+          .formatted(row, saved, e.getOriginalMessage()));
+    }
+    if (!chunk.isEmpty()) {
+      saved += saveChunk(entityType, keyOf, chunk, chunkRows, existing, replace, errors, saveAll);
+    }
+    return new BulkResult(saved, errors);
+  }
+
+  // Saves one chunk in a transaction of its own, publishing an event for each row
+  // within it (so the change log is written in the same transaction); returns the
+  // number of rows saved. If this throws, the chunk's transaction rolled back.
+  public <T> int saveChunk(Class<T> entityType, Function<T, Object> keyOf, List<T> chunk,
+      Function<List<T>, Iterable<T>> saveAll) {
+    return saveChunk(entityType, keyOf, chunk, null, null, false, null, saveAll);
+  }
+
+  // As saveChunk, checking keys the way insert does: rows (the row number of each
+  // entity in chunk) whose key is stored, or repeats a key earlier in the chunk,
+  // are added to errors rather than saved, and the rest go to insertAll.
+  public <T, K> int insertChunk(Class<T> entityType, Function<T, K> keyOf, List<T> chunk, List<Long> rows,
+      Function<Collection<K>, List<K>> existing, List<RowError> errors, Function<List<T>, Iterable<T>> insertAll) {
+    return saveChunk(entityType, keyOf, chunk, rows, existing, false, errors, insertAll);
+  }
+
+  // rows holds the row number of each entity in chunk, for the errors of rows
+  // whose key already exists; it and errors are only used when existing is set.
+  // saveAll must return the rows it saved in the order it was given them.
+  private <T, K> int saveChunk(Class<T> entityType, Function<T, K> keyOf, List<T> chunk, List<Long> rows,
+      Function<Collection<K>, List<K>> existing, boolean replace, List<RowError> errors,
+      Function<List<T>, Iterable<T>> saveAll) {
+    List<T> savedRows = new ArrayList<>(chunk.size());
+    transactionTemplate.executeWithoutResult(status -> {
+      List<T> toSave = chunk;
+      List<EntityChangedEvent.Operation> operations =
+          Collections.nCopies(chunk.size(), EntityChangedEvent.Operation.CREATE);
+      if (existing != null) {
+        toSave = new ArrayList<>(chunk.size());
+        operations = new ArrayList<>(chunk.size());
+        Set<K> stored = new HashSet<>(existing.apply(chunk.stream().map(keyOf).toList()));
+        for (int i = 0; i < chunk.size(); i++) {
+          K key = keyOf.apply(chunk.get(i));
+          boolean created = stored.add(key);
+          if (created || replace) {
+            toSave.add(chunk.get(i));
+            operations.add(created ? EntityChangedEvent.Operation.CREATE : EntityChangedEvent.Operation.UPDATE);
+          } else {
+            errors.add(new RowError(rows.get(i), "%s %s already exists".formatted(entityType.getSimpleName(), key)));
+          }
+        }
+        if (toSave.isEmpty()) {
+          return;
+        }
+      }
+      saveAll.apply(toSave).forEach(savedRows::add);
+      for (int i = 0; i < savedRows.size(); i++) {
+        T entity = savedRows.get(i);
+        eventPublisher.publishEvent(new EntityChangedEvent(entityType, keyOf.apply(entity), operations.get(i), entity));
+      }
+    });
+    log.debug("Saved {} {} rows", savedRows.size(), entityType.getSimpleName());
+    return savedRows.size();
+  }
+}
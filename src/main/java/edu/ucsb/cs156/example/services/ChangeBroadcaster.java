@@ -0,0 +1,219 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.ChangeNotice;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+// Pushes each write to everyone subscribed to its table. Publishing never waits
+// on a subscriber: notices go into a bounded per-subscriber buffer, and each
+// subscriber with something to send gets its own sender task, so one slow client
+// only ever holds its own thread. When a subscriber falls more than BUFFER_SIZE
+// notices behind, the oldest are dropped and it is sent a "dropped" notice
+// instead, telling it to refetch. A send that has not returned after
+// SEND_TIMEOUT_MILLIS means the client has stalled: a watchdog drops that
+// subscriber, interrupts its sender and closes its stream.
+
+@Slf4j
+@Service
+public class ChangeBroadcaster {
+
+  public static final int BUFFER_SIZE = 256;
+  static final long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+  static final long SEND_TIMEOUT_MILLIS = 10 * 1000L;
+  private static final long NOT_SENDING = Long.MIN_VALUE;
+
+  public interface Sink {
+    void send(ChangeNotice notice) throws IOException;
+  }
+
+  private final Executor executor;
+  private final LongSupplier clock;
+  private final Map<Class<?>, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+  private ScheduledExecutorService watchdog;
+
+  public ChangeBroadcaster() {
+    this(Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "change-broadcaster");
+      thread.setDaemon(true);
+      return thread;
+    }), System::currentTimeMillis);
+    watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "change-broadcaster-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    watchdog.scheduleWithFixedDelay(this::dropStalled, SEND_TIMEOUT_MILLIS / 2, SEND_TIMEOUT_MILLIS / 2,
+        TimeUnit.MILLISECONDS);
+  }
+
+  // Tests pass an executor and a clock they drive by hand, and call dropStalled
+  // themselves in place of the watchdog.
+  ChangeBroadcaster(Executor executor, LongSupplier clock) {
+    this.executor = executor;
+    this.clock = clock;
+  }
+
+  // An SSE stream of the writes to one table; the event name is the operation
+  // (create, update, delete) or "dropped".
+  public SseEmitter subscribe(Class<?> entityType) {
+    SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+    Subscriber subscriber = subscribe(entityType, notice -> emitter.send(SseEmitter.event()
+        .name(notice.getOperation() == null ? "dropped" : notice.getOperation().name().toLowerCase())
+        .data(notice)), () -> emitter.completeWithError(new IOException("SSE send timed out")));
+    emitter.onCompletion(subscriber::cancel);
+    emitter.onTimeout(subscriber::cancel);
+    emitter.onError(e -> subscriber.cancel());
+    return emitter;
+  }
+
+  public Subscriber subscribe(Class<?> entityType, Sink sink) {
+    return subscribe(entityType, sink, () -> { });
+  }
+
+  // onStall is run on a sender thread after the subscriber is dropped for
+  // stalling; it may block until the stalled send gives up.
+  public Subscriber subscribe(Class<?> entityType, Sink sink, Runnable onStall) {
+    Subscriber subscriber = new Subscriber(entityType, sink, onStall);
+    subscribers.computeIfAbsent(entityType, type -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    return subscriber;
+  }
+
+  public int subscriberCount(Class<?> entityType) {
+    return subscribers.getOrDefault(entityType, Set.of()).size();
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onEntityChanged(EntityChangedEvent event) {
+    Set<Subscriber> listening = subscribers.get(event.getEntityType());
+    if (listening == null || listening.isEmpty()) {
+      return;
+    }
+    ChangeNotice notice = ChangeNotice.of(event);
+    listening.forEach(subscriber -> subscriber.offer(notice));
+  }
+
+  // Drops every subscriber whose current send started more than
+  // SEND_TIMEOUT_MILLIS ago.
+  void dropStalled() {
+    long now = clock.getAsLong();
+    subscribers.values().forEach(listening -> listening.forEach(subscriber -> {
+      long since = subscriber.sendingSince;
+      if (since != NOT_SENDING && now - since > SEND_TIMEOUT_MILLIS) {
+        subscriber.stalled();
+      }
+    }));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (watchdog != null) {
+      watchdog.shutdownNow();
+    }
+    if (executor instanceof ExecutorService) {
+      ((ExecutorService) executor).shutdownNow();
+    }
+  }
+
+  public class Subscriber {
+    private final Class<?> entityType;
+    private final Sink sink;
+    private final Runnable onStall;
+    private final ArrayDeque<ChangeNotice> buffer = new ArrayDeque<>();
+    private long dropped = 0;
+    private boolean draining = false;
+    private volatile boolean cancelled = false;
+    private volatile long sendingSince = NOT_SENDING;
+    private Thread sender;
+
+    private Subscriber(Class<?> entityType, Sink sink, Runnable onStall) {
+      this.entityType = entityType;
+      this.sink = sink;
+      this.onStall = onStall;
+    }
+
+    public void cancel() {
+      cancelled = true;
+      Set<Subscriber> listening = subscribers.get(entityType);
+      if (listening != null) {
+        listening.remove(this);
+      }
+    }
+
+    private void stalled() {
+      log.debug("Dropping stalled {} subscriber", entityType.getSimpleName());
+      cancel();
+      synchronized (this) {
+        buffer.clear();
+        if (sender != null) {
+          sender.interrupt();
+        }
+      }
+      executor.execute(onStall);
+    }
+
+    private synchronized void offer(ChangeNotice notice) {
+      if (buffer.size() == BUFFER_SIZE) {
+        buffer.pollFirst();
+        dropped++;
+      }
+      buffer.addLast(notice);
+      if (!draining) {
+        draining = true;
+        executor.execute(this::drain);
+      }
+    }
+
+    // Runs on a sender thread until the buffer is empty; at most one drain per
+    // subscriber is running at a time, so notices go out in order.
+    private void drain() {
+      while (!cancelled) {
+        ChangeNotice next;
+        synchronized (this) {
+          if (dropped > 0) {
+            next = ChangeNotice.dropped(dropped);
+            dropped = 0;
+          } else {
+            next = buffer.pollFirst();
+          }
+          if (next == null) {
+            draining = false;
+            return;
+          }
+          sender = Thread.currentThread();
+          sendingSince = clock.getAsLong();
+        }
+        try {
+          sink.send(next);
+        } catch (IOException | RuntimeException e) {
+          if (!cancelled) {
+            log.debug("Dropping {} subscriber: {}", entityType.getSimpleName(), e.toString());
+            cancel();
+          }
+        } finally {
+          synchronized (this) {
+            sender = null;
+            sendingSince = NOT_SENDING;
+          }
+        }
+      }
+    }
+  }
+}
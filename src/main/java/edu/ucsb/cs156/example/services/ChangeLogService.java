@@ -0,0 +1,73 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.repositories.EntityChangeRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Records every write published by the controllers in the entitychanges table,
+// in the transaction that makes the write, so a change is logged exactly when it
+// commits. The entries of one transaction (a single write, or a whole bulk
+// chunk) are collected as they are published and appended with one batched
+// INSERT just before the transaction commits. Writes made outside a transaction
+// are appended straight away.
+//
+// seq is drawn from a database sequence as each entry is inserted, so numbers
+// are unique across instances. The append also locks a row that is held until
+// the transaction ends, so transactions draw their numbers in commit order and
+// a reader polling with since= never passes a seq that commits later. Appending
+// in beforeCommit keeps that lock to the last moment of the transaction.
+
+@Service
+public class ChangeLogService {
+
+  @Autowired
+  EntityChangeRepository entityChangeRepository;
+
+  @EventListener
+  public void onEntityChanged(EntityChangedEvent event) {
+    EntityChange change = EntityChange.builder()
+        .entityType(event.getEntityType().getSimpleName())
+        .entityId(String.valueOf(event.getId()))
+        .operation(event.getOperation())
+        .changedAt(Instant.now())
+        .build();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      pending().add(change);
+    } else {
+      entityChangeRepository.append(List.of(change));
+    }
+  }
+
+  // The entries waiting for the current transaction to commit.
+  @SuppressWarnings("unchecked")
+  private List<EntityChange> pending() {
+    List<EntityChange> pending = (List<EntityChange>) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      List<EntityChange> changes = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, changes);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          entityChangeRepository.append(changes);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(ChangeLogService.this);
+        }
+      });
+      pending = changes;
+    }
+    return pending;
+  }
+}
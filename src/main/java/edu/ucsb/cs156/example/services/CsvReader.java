@@ -0,0 +1,78 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads CSV (RFC 4180) one record at a time, so a file of any size is never held
+// in memory. Fields may be quoted, in which case they can contain commas, line
+// breaks and doubled quotes (""). Lines may end in LF or CRLF.
+
+public class CsvReader implements Closeable {
+
+  private final BufferedReader reader;
+  private long line = 1;
+
+  public CsvReader(Reader reader) {
+    this.reader = new BufferedReader(reader);
+  }
+
+  // The fields of the next record, or null at the end of the input.
+  public List<String> next() throws IOException {
+    int c = reader.read();
+    if (c == -1) {
+      return null;
+    }
+    long start = line;
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    while (true) {
+      if (quoted) {
+        if (c == -1) {
+          throw new BadRequestException("Unterminated quoted field starting on line %d".formatted(start));
+        } else if (c == '"') {
+          c = reader.read();
+          if (c != '"') {
+            quoted = false;
+            continue;
+          }
+          field.append('"');
+        } else {
+          if (c == '\n') {
+            line++;
+          }
+          field.append((char) c);
+        }
+      } else if (c == '"' && field.length() == 0) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else if (c == '\n' || c == -1) {
+        if (c == '\n') {
+          line++;
+        }
+        int last = field.length() - 1;
+        if (last >= 0 && field.charAt(last) == '\r') {
+          field.setLength(last);
+        }
+        fields.add(field.toString());
+        return fields;
+      } else {
+        field.append((char) c);
+      }
+      c = reader.read();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,217 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.Nearby;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.springframework.stereotype.Service;
+
+// Nearest-neighbour and bounding-box lookups over the dining commons locations.
+//
+// Each location is stored as a point on the unit sphere, bucketed into a uniform
+// grid of cubes CELL_METERS on a side. A nearest query walks outward one shell of
+// cubes at a time and stops as soon as no unvisited cube can hold anything closer
+// than the k-th best so far; straight-line (chord) distance orders points exactly
+// like great-circle distance, so the answer is exact and there is no trouble at
+// the poles or the antimeridian. Bounding boxes use a separate latitude-ordered map.
+
+@Service
+public class DiningCommonsSpatialIndex extends EntityIndex<UCSBDiningCommons, String> {
+
+  public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+  static final double CELL_METERS = 500;
+  private static final double CELL = CELL_METERS / EARTH_RADIUS_METERS;
+
+  private final UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  private final Map<String, Point> positions = new HashMap<>();
+  private final Map<Cell, List<Point>> cells = new HashMap<>();
+  private final TreeMap<Double, List<UCSBDiningCommons>> byLatitude = new TreeMap<>();
+
+  public DiningCommonsSpatialIndex(UCSBDiningCommonsRepository ucsbDiningCommonsRepository) {
+    super(UCSBDiningCommons.class, UCSBDiningCommons::getCode);
+    this.ucsbDiningCommonsRepository = ucsbDiningCommonsRepository;
+  }
+
+  public List<Nearby<UCSBDiningCommons>> nearest(double latitude, double longitude, int k) {
+    Point q = pointOf(null, checkLatitude(latitude), checkLongitude(longitude));
+    return read(() -> {
+      PriorityQueue<Nearby<UCSBDiningCommons>> best = new PriorityQueue<>(
+          Comparator.comparingDouble((Nearby<UCSBDiningCommons> n) -> n.getDistanceMeters()).reversed());
+      Cell center = cellOf(q);
+      int visited = 0;
+      for (int r = 0; visited < cells.size(); r++) {
+        if (best.size() == k && best.peek().getDistanceMeters() <= metersFromChord(Math.max(0, r - 1) * CELL)) {
+          break;
+        }
+        if (shellSize(r) > cells.size()) {
+          // the data is sparse around the query point: walking empty cubes would
+          // cost more than looking at every point
+          best.clear();
+          cells.values().forEach(points -> points.forEach(p -> offer(best, k, q, p)));
+          break;
+        }
+        for (Cell cell : shell(center, r)) {
+          List<Point> points = cells.get(cell);
+          if (points != null) {
+            visited++;
+            points.forEach(p -> offer(best, k, q, p));
+          }
+        }
+      }
+      List<Nearby<UCSBDiningCommons>> result = new ArrayList<>(best);
+      result.sort(Comparator.comparingDouble(Nearby::getDistanceMeters));
+      return result;
+    });
+  }
+
+  // A west bound greater than the east bound is a box that crosses the antimeridian.
+  public List<UCSBDiningCommons> within(double south, double west, double north, double east) {
+    checkLatitude(south);
+    checkLatitude(north);
+    checkLongitude(west);
+    checkLongitude(east);
+    if (south > north) {
+      throw new BadRequestException("south (%s) must not be greater than north (%s)".formatted(south, north));
+    }
+    return read(() -> {
+      List<UCSBDiningCommons> result = new ArrayList<>();
+      for (List<UCSBDiningCommons> row : byLatitude.subMap(south, true, north, true).values()) {
+        for (UCSBDiningCommons commons : row) {
+          double lon = positions.get(commons.getCode()).getLongitude();
+          if (west <= east ? lon >= west && lon <= east : lon >= west || lon <= east) {
+            result.add(commons);
+          }
+        }
+      }
+      return result;
+    });
+  }
+
+  @Override
+  protected Iterable<UCSBDiningCommons> loadAll() {
+    return ucsbDiningCommonsRepository.findAll();
+  }
+
+  @Override
+  protected void indexed(UCSBDiningCommons commons) {
+    if (commons.getLatitude() == null || commons.getLongitude() == null) {
+      return;
+    }
+    Point p = pointOf(commons, commons.getLatitude(), commons.getLongitude());
+    positions.put(commons.getCode(), p);
+    cells.computeIfAbsent(cellOf(p), c -> new ArrayList<>()).add(p);
+    byLatitude.computeIfAbsent(p.getLatitude(), lat -> new ArrayList<>()).add(commons);
+  }
+
+  // Goes by the position recorded when the commons was indexed: the entity itself
+  // may already have been edited in place.
+  @Override
+  protected void unindexed(UCSBDiningCommons commons) {
+    Point p = positions.remove(commons.getCode());
+    if (p == null) {
+      return;
+    }
+    Cell cell = cellOf(p);
+    List<Point> points = cells.get(cell);
+    points.remove(p);
+    if (points.isEmpty()) {
+      cells.remove(cell);
+    }
+    List<UCSBDiningCommons> row = byLatitude.get(p.getLatitude());
+    row.removeIf(c -> c == commons);
+    if (row.isEmpty()) {
+      byLatitude.remove(p.getLatitude());
+    }
+  }
+
+  private static void offer(PriorityQueue<Nearby<UCSBDiningCommons>> best, int k, Point q, Point p) {
+    double dx = p.getX() - q.getX();
+    double dy = p.getY() - q.getY();
+    double dz = p.getZ() - q.getZ();
+    double meters = metersFromChord(Math.sqrt(dx * dx + dy * dy + dz * dz));
+    if (best.size() < k) {
+      best.add(new Nearby<>(p.getCommons(), meters));
+    } else if (meters < best.peek().getDistanceMeters()) {
+      best.poll();
+      best.add(new Nearby<>(p.getCommons(), meters));
+    }
+  }
+
+  static double metersFromChord(double chord) {
+    return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, chord / 2));
+  }
+
+  private static long shellSize(int r) {
+    return r == 0 ? 1 : (long) Math.pow(2 * r + 1, 3) - (long) Math.pow(2 * r - 1, 3);
+  }
+
+  // The cubes at Chebyshev distance exactly r from the center cube.
+  private static List<Cell> shell(Cell center, int r) {
+    List<Cell> shell = new ArrayList<>();
+    for (int di = -r; di <= r; di++) {
+      for (int dj = -r; dj <= r; dj++) {
+        boolean onFace = Math.abs(di) == r || Math.abs(dj) == r;
+        for (int dk = -r; dk <= r; dk += onFace ? 1 : 2 * r) {
+          shell.add(new Cell(center.getI() + di, center.getJ() + dj, center.getK() + dk));
+        }
+      }
+    }
+    return shell;
+  }
+
+  private static Point pointOf(UCSBDiningCommons commons, double latitude, double longitude) {
+    double phi = Math.toRadians(latitude);
+    double lambda = Math.toRadians(longitude);
+    return new Point(commons, latitude, longitude,
+        Math.cos(phi) * Math.cos(lambda),
+        Math.cos(phi) * Math.sin(lambda),
+        Math.sin(phi));
+  }
+
+  private static Cell cellOf(Point p) {
+    return new Cell((long) Math.floor(p.getX() / CELL), (long) Math.floor(p.getY() / CELL),
+        (long) Math.floor(p.getZ() / CELL));
+  }
+
+  private static double checkLatitude(double latitude) {
+    if (!(latitude >= -90 && latitude <= 90)) {
+      throw new BadRequestException("latitude must be between -90 and 90, got %s".formatted(latitude));
+    }
+    return latitude;
+  }
+
+  private static double checkLongitude(double longitude) {
+    if (!(longitude >= -180 && longitude <= 180)) {
+      throw new BadRequestException("longitude must be between -180 and 180, got %s".formatted(longitude));
+    }
+    return longitude;
+  }
+
+  @Value
+  private static class Point {
+    UCSBDiningCommons commons;
+    double latitude;
+    double longitude;
+    double x;
+    double y;
+    double z;
+  }
+
+  @Value
+  private static class Cell {
+    long i;
+    long j;
+    long k;
+  }
+}
@@ -0,0 +1,126 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Base class for the in-memory indexes that answer the query endpoints without a
+// table scan. The index is filled from the repository on first use and from then
+// on kept in step by the EntityChangedEvents the controllers publish, so each
+// write only touches the entries for the row that changed.
+
+@Slf4j
+public abstract class EntityIndex<T, K> {
+
+  private final Class<T> entityType;
+  private final Function<T, K> keyOf;
+  private final Map<K, T> byKey = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean loaded = false;
+
+  protected EntityIndex(Class<T> entityType, Function<T, K> keyOf) {
+    this.entityType = entityType;
+    this.keyOf = keyOf;
+  }
+
+  protected abstract Iterable<T> loadAll();
+
+  // Called with the write lock held whenever an entity enters or leaves the index.
+  // The entity handed to unindexed may have been edited in place since it was
+  // indexed, so implementations should remember whatever they keyed it by.
+  protected abstract void indexed(T entity);
+
+  protected abstract void unindexed(T entity);
+
+  // Runs a query against the index with the read lock held.
+  protected <R> R read(Supplier<R> query) {
+    ensureLoaded();
+    lock.readLock().lock();
+    try {
+      return query.get();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // For use inside read(): the indexed entity with this key, or null.
+  protected T get(K key) {
+    return byKey.get(key);
+  }
+
+  public int size() {
+    return read(byKey::size);
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onEntityChanged(EntityChangedEvent event) {
+    if (event.getEntityType() != entityType) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        return; // the first read will load the current rows, this change included
+      }
+      T old = byKey.remove(event.getId());
+      if (old != null) {
+        unindexed(old);
+      }
+      if (event.getOperation() != EntityChangedEvent.Operation.DELETE && event.getEntity() != null) {
+        add(entityType.cast(event.getEntity()));
+      } else if (event.getChanges() != null && old != null) {
+        add(patched(old, event.getChanges()));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  // A copy of the indexed entity with a partial update (a merge patch) applied.
+  // Derived fields have no setter and are recomputed by the ones they come from.
+  private T patched(T old, Map<String, Object> changes) {
+    T copy = BeanUtils.instantiateClass(entityType);
+    BeanUtils.copyProperties(old, copy);
+    BeanWrapper wrapper = new BeanWrapperImpl(copy);
+    changes.forEach((name, value) -> {
+      if (wrapper.isWritableProperty(name)) {
+        wrapper.setPropertyValue(name, value);
+      }
+    });
+    return copy;
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        for (T entity : loadAll()) {
+          add(entity);
+        }
+        loaded = true;
+        log.info("Loaded {} {} rows into {}", byKey.size(), entityType.getSimpleName(), getClass().getSimpleName());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void add(T entity) {
+    byKey.put(keyOf.apply(entity), entity);
+    indexed(entity);
+  }
+}
@@ -0,0 +1,79 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.FacetCount;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Running per-value counts for a few columns of one table, adjusted by each write
+// instead of recomputed with a GROUP BY on every request. Rows with no value for
+// a facet are not counted under it.
+
+public abstract class FacetIndex<T, K> extends EntityIndex<T, K> {
+
+  private static final Comparator<FacetCount> ORDER = Comparator
+      .comparingLong(FacetCount::getCount).reversed()
+      .thenComparing(FacetCount::getValue);
+
+  private final Function<T, K> keyOf;
+  private final Map<String, Function<T, String>> facets;
+  private final Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+  private final Map<K, String[]> values = new HashMap<>();
+
+  // facets maps each facet name to the getter for its value, in the order the
+  // facets should be listed
+  protected FacetIndex(Class<T> entityType, Function<T, K> keyOf, Map<String, Function<T, String>> facets) {
+    super(entityType, keyOf);
+    this.keyOf = keyOf;
+    this.facets = new LinkedHashMap<>(facets);
+    this.facets.keySet().forEach(name -> counts.put(name, new HashMap<>()));
+  }
+
+  // Every facet's values with their counts, most common first.
+  public Map<String, List<FacetCount>> facets() {
+    return read(() -> {
+      Map<String, List<FacetCount>> result = new LinkedHashMap<>();
+      counts.forEach((name, byValue) -> {
+        List<FacetCount> list = new ArrayList<>(byValue.size());
+        byValue.forEach((value, count) -> list.add(new FacetCount(value, count)));
+        list.sort(ORDER);
+        result.put(name, list);
+      });
+      return result;
+    });
+  }
+
+  @Override
+  protected void indexed(T entity) {
+    String[] row = new String[facets.size()];
+    int i = 0;
+    for (Map.Entry<String, Function<T, String>> facet : facets.entrySet()) {
+      String value = facet.getValue().apply(entity);
+      row[i++] = value;
+      if (value != null) {
+        counts.get(facet.getKey()).merge(value, 1L, Long::sum);
+      }
+    }
+    values.put(keyOf.apply(entity), row);
+  }
+
+  @Override
+  protected void unindexed(T entity) {
+    String[] row = values.remove(keyOf.apply(entity));
+    if (row == null) {
+      return;
+    }
+    int i = 0;
+    for (String name : facets.keySet()) {
+      String value = row[i++];
+      if (value != null) {
+        counts.get(name).computeIfPresent(value, (v, count) -> count == 1 ? null : count - 1);
+      }
+    }
+  }
+}
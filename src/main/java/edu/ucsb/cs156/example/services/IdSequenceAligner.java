@@ -0,0 +1,71 @@
+package edu.ucsb.cs156.example.services;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.enhanced.DatabaseStructure;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Moves each id sequence past the ids already in its table. ddl-auto creates a
+// missing sequence starting at 1, so on a database whose rows were keyed some
+// other way (IDENTITY, before the switch to pooled sequences) the first inserts
+// would reuse existing ids. Runs once every bean is ready but before the web
+// server takes requests, so nothing can insert ahead of it.
+
+@Slf4j
+@Service
+public class IdSequenceAligner implements SmartInitializingSingleton {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    transactionTemplate.executeWithoutResult(status -> align());
+  }
+
+  void align() {
+    SessionFactoryImplementor sessionFactory = entityManager.getEntityManagerFactory()
+        .unwrap(SessionFactoryImplementor.class);
+    Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+    for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+      if (persister.getIdentifierGenerator() instanceof SequenceStyleGenerator generator
+          && persister instanceof AbstractEntityPersister table) {
+        align(dialect, generator.getDatabaseStructure(), table);
+      }
+    }
+  }
+
+  private void align(Dialect dialect, DatabaseStructure sequence, AbstractEntityPersister table) {
+    Number maxId = (Number) entityManager.createNativeQuery("select max(%s) from %s"
+        .formatted(table.getIdentifierColumnNames()[0], table.getTableName())).getSingleResult();
+    if (maxId == null) {
+      return;
+    }
+    String name = sequence.getPhysicalName().render();
+    // The pooled optimizer hands out the incrementSize ids up to each value it
+    // draws, so after this draw the lowest id it can give is next + 1.
+    long next = ((Number) entityManager.createNativeQuery(dialect.getSequenceNextValString(name))
+        .getSingleResult()).longValue();
+    if (next + 1 > maxId.longValue()) {
+      return;
+    }
+    long restart = maxId.longValue() + sequence.getIncrementSize();
+    entityManager.createNativeQuery("alter sequence %s restart with %d".formatted(name, restart))
+        .executeUpdate();
+    log.info("Moved {} to {}, past the ids already in {}", name, restart, table.getTableName());
+  }
+}
@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.repositories.MovieRepository;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public class MovieSuggestions extends PrefixIndex<Movie, String> {
+
+  private final MovieRepository movierepository;
+
+  public MovieSuggestions(MovieRepository movierepository) {
+    super(Movie.class, Movie::getId, List.of(Movie::getTitle));
+    this.movierepository = movierepository;
+  }
+
+  @Override
+  protected Iterable<Movie> loadAll() {
+    return movierepository.findAll();
+  }
+}
@@ -0,0 +1,185 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.MovieYear;
+import edu.ucsb.cs156.example.repositories.MovieRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Movie ids sorted by release year (then id) in two parallel arrays, so a year
+// range is two binary searches and a walk over the matches; the matching rows
+// are then read with findAllById. Only (year, id) is held, never the Movie
+// itself, which is why this is not an EntityIndex. The initial load sorts all
+// the pairs once; later writes shift the tail of the arrays, which for a table
+// this size is a short memory copy.
+
+@Slf4j
+@Service
+public class MovieYearIndex {
+
+  // ids per findAllById, so that its IN list stays a reasonable size
+  static final int FETCH_SIZE = 1000;
+
+  private final MovieRepository movierepository;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private volatile boolean loaded = false;
+
+  private long[] years = new long[16];
+  private String[] ids = new String[16];
+  private int size = 0;
+  // the year each id is filed under, to find its entry again once the row changed
+  private final Map<String, Long> indexedYears = new HashMap<>();
+
+  public MovieYearIndex(MovieRepository movierepository) {
+    this.movierepository = movierepository;
+  }
+
+  // Movies released from fromYear to toYear inclusive, oldest first, optionally
+  // only those by one director (case-insensitive).
+  public List<Movie> range(long fromYear, long toYear, String director) {
+    if (fromYear > toYear) {
+      throw new BadRequestException("fromYear (%d) must not be after toYear (%d)".formatted(fromYear, toYear));
+    }
+    List<String> matches = new ArrayList<>();
+    ensureLoaded();
+    lock.readLock().lock();
+    try {
+      for (int i = firstAtOrAfter(fromYear, null); i < size && years[i] <= toYear; i++) {
+        matches.add(ids[i]);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    // a row written since the seek may be gone or have moved out of the range
+    List<Movie> result = new ArrayList<>();
+    for (int from = 0; from < matches.size(); from += FETCH_SIZE) {
+      List<String> page = matches.subList(from, Math.min(from + FETCH_SIZE, matches.size()));
+      Map<String, Movie> rows = new HashMap<>();
+      movierepository.findAllById(page).forEach(movie -> rows.put(movie.getId(), movie));
+      for (String id : page) {
+        Movie movie = rows.get(id);
+        if (movie != null && movie.getRelease_year() >= fromYear && movie.getRelease_year() <= toYear
+            && (director == null || director.equalsIgnoreCase(movie.getDirector()))) {
+          result.add(movie);
+        }
+      }
+    }
+    return result;
+  }
+
+  public int size() {
+    ensureLoaded();
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onEntityChanged(EntityChangedEvent event) {
+    if (event.getEntityType() != Movie.class) {
+      return;
+    }
+    String id = (String) event.getId();
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        return; // the first read will load the current rows, this change included
+      }
+      if (event.getOperation() == EntityChangedEvent.Operation.DELETE) {
+        remove(id);
+      } else if (event.getEntity() != null) {
+        remove(id);
+        insert(((Movie) event.getEntity()).getRelease_year(), id);
+      } else if (event.getChanges() != null && event.getChanges().get("release_year") instanceof Number year) {
+        remove(id);
+        insert(year.longValue(), id);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void ensureLoaded() {
+    if (loaded) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (!loaded) {
+        List<MovieYear> sorted = new ArrayList<>(movierepository.findAllYears());
+        sorted.sort(Comparator.comparingLong(MovieYear::getYear).thenComparing(MovieYear::getId));
+        size = sorted.size();
+        years = new long[Math.max(16, size)];
+        ids = new String[years.length];
+        for (int i = 0; i < size; i++) {
+          years[i] = sorted.get(i).getYear();
+          ids[i] = sorted.get(i).getId();
+          indexedYears.put(ids[i], years[i]);
+        }
+        loaded = true;
+        log.info("Loaded {} Movie years into {}", size, getClass().getSimpleName());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void insert(long year, String id) {
+    int at = firstAtOrAfter(year, id);
+    if (size == years.length) {
+      years = Arrays.copyOf(years, size * 2);
+      ids = Arrays.copyOf(ids, size * 2);
+    }
+    System.arraycopy(years, at, years, at + 1, size - at);
+    System.arraycopy(ids, at, ids, at + 1, size - at);
+    years[at] = year;
+    ids[at] = id;
+    size++;
+    indexedYears.put(id, year);
+  }
+
+  private void remove(String id) {
+    Long year = indexedYears.remove(id);
+    if (year == null) {
+      return;
+    }
+    int at = firstAtOrAfter(year, id);
+    System.arraycopy(years, at + 1, years, at, size - at - 1);
+    System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+    size--;
+    ids[size] = null;
+  }
+
+  // Position of the first entry not before (year, id); a null id sorts before
+  // every id of that year.
+  private int firstAtOrAfter(long year, String id) {
+    int lo = 0;
+    int hi = size;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (years[mid] < year || (years[mid] == year && id != null && ids[mid].compareTo(id) < 0)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+}
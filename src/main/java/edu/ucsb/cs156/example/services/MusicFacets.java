@@ -0,0 +1,34 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public class MusicFacets extends FacetIndex<Music, Long> {
+
+  private final MusicRepository musicRepository;
+
+  public MusicFacets(MusicRepository musicRepository) {
+    super(Music.class, Music::getId, facetColumns());
+    this.musicRepository = musicRepository;
+  }
+
+  private static Map<String, Function<Music, String>> facetColumns() {
+    Map<String, Function<Music, String>> facets = new LinkedHashMap<>();
+    facets.put("genre", Music::getGenre);
+    facets.put("artist", Music::getArtist);
+    facets.put("album", Music::getAlbum);
+    return facets;
+  }
+
+  @Override
+  protected Iterable<Music> loadAll() {
+    return musicRepository.findAll();
+  }
+}
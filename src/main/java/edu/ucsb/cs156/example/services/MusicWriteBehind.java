@@ -0,0 +1,206 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.QueueFullException;
+import edu.ucsb.cs156.example.models.WriteTicket;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionSystemException;
+
+// Write-behind path for high-volume music inserts (POST /api/music/async). Rows
+// are answered with a ticket as soon as they are queued, and one flusher thread
+// commits the queue in groups of about groupSize rows, one transaction per group,
+// as soon as a full group is waiting or every flushMillis otherwise.
+//
+// Callers never wait on a lock: the queue is a ConcurrentLinkedQueue, bounded at
+// capacity rows by reserving room with a compare-and-set before enqueueing, and
+// rows that do not fit are refused (QueueFullException) rather than blocked. The
+// rows of one ticket are always committed together; if a group rolls back, each
+// of its tickets is retried on its own so that one bad ticket fails only itself.
+// A group whose commit fails is not retried, since it may have been stored.
+
+@Slf4j
+@Service
+public class MusicWriteBehind {
+
+  private final BulkWriter bulkWriter;
+  private final MusicRepository musicRepository;
+  private final Executor flusher;
+  private final int capacity;
+  private final int groupSize;
+  private final int retainedTickets;
+
+  private final Queue<Queued> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queuedRows = new AtomicInteger();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final AtomicLong lastTicket = new AtomicLong();
+  private final Map<Long, WriteTicket> tickets = new ConcurrentHashMap<>();
+
+  @Autowired
+  public MusicWriteBehind(BulkWriter bulkWriter, MusicRepository musicRepository,
+      @Value("${app.async.capacity:20000}") int capacity, @Value("${app.async.groupSize:1000}") int groupSize,
+      @Value("${app.async.flushMillis:50}") long flushMillis,
+      @Value("${app.async.retainedTickets:100000}") int retainedTickets) {
+    this(bulkWriter, musicRepository, Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "music-write-behind");
+      thread.setDaemon(true);
+      return thread;
+    }), capacity, groupSize, retainedTickets);
+    ((ScheduledExecutorService) flusher).scheduleWithFixedDelay(this::flush, flushMillis, flushMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  // The flusher must run one task at a time; tests pass one they drive by hand.
+  MusicWriteBehind(BulkWriter bulkWriter, MusicRepository musicRepository, Executor flusher, int capacity,
+      int groupSize, int retainedTickets) {
+    this.bulkWriter = bulkWriter;
+    this.musicRepository = musicRepository;
+    this.flusher = flusher;
+    this.capacity = capacity;
+    this.groupSize = groupSize;
+    this.retainedTickets = retainedTickets;
+  }
+
+  private static class Queued {
+    private final long ticket;
+    private final List<Music> rows;
+
+    private Queued(long ticket, List<Music> rows) {
+      this.ticket = ticket;
+      this.rows = rows;
+    }
+  }
+
+  public WriteTicket submit(List<Music> rows) {
+    int queued;
+    do {
+      queued = queuedRows.get();
+      if (queued + rows.size() > capacity) {
+        throw new QueueFullException("music write-behind", rows.size(), capacity);
+      }
+    } while (!queuedRows.compareAndSet(queued, queued + rows.size()));
+
+    long ticket = lastTicket.incrementAndGet();
+    WriteTicket status = WriteTicket.builder().ticket(ticket).status(WriteTicket.Status.QUEUED).rows(rows.size()).build();
+    record(status);
+    queue.offer(new Queued(ticket, new ArrayList<>(rows)));
+
+    if (queued + rows.size() >= groupSize && flushRequested.compareAndSet(false, true)) {
+      flusher.execute(this::flush);
+    }
+    return status;
+  }
+
+  // The latest status of a ticket; only the most recent retainedTickets are kept.
+  public WriteTicket status(long ticket) {
+    WriteTicket status = tickets.get(ticket);
+    if (status == null) {
+      throw new EntityNotFoundException(WriteTicket.class, ticket);
+    }
+    return status;
+  }
+
+  public int queuedRows() {
+    return queuedRows.get();
+  }
+
+  // Commits everything queued so far, groupSize rows (rounded up to whole tickets)
+  // per transaction.
+  synchronized void flush() {
+    flushRequested.set(false);
+    List<Queued> group = new ArrayList<>();
+    int rows = 0;
+    Queued next;
+    while ((next = queue.poll()) != null) {
+      group.add(next);
+      rows += next.rows.size();
+      if (rows >= groupSize) {
+        commit(group, rows);
+        group = new ArrayList<>();
+        rows = 0;
+      }
+    }
+    if (!group.isEmpty()) {
+      commit(group, rows);
+    }
+  }
+
+  private void commit(List<Queued> group, int rows) {
+    List<Music> musics = new ArrayList<>(rows);
+    group.forEach(queued -> musics.addAll(queued.rows));
+    try {
+      bulkWriter.saveChunk(Music.class, Music::getId, musics, musicRepository::saveAll);
+    } catch (TransactionSystemException e) {
+      // The commit itself failed, so the rows may or may not be stored; retrying
+      // could store them twice. Report the group as failed instead.
+      fail(group, e);
+      return;
+    } catch (RuntimeException e) {
+      // Anything else (a failed insert, or a listener that runs inside the
+      // transaction) was thrown before the commit, so the group rolled back.
+      if (group.size() > 1) {
+        for (Queued queued : group) {
+          queued.rows.forEach(music -> music.setId(0)); // drop ids handed out by the failed attempt
+          commit(List.of(queued), queued.rows.size());
+        }
+        return;
+      }
+      fail(group, e);
+      return;
+    }
+    // Listeners that run after the commit cannot fail the write: Spring logs
+    // their exceptions and saveChunk still returns.
+    for (Queued queued : group) {
+      List<Object> ids = new ArrayList<>(queued.rows.size());
+      queued.rows.forEach(music -> ids.add(music.getId()));
+      record(WriteTicket.builder().ticket(queued.ticket).status(WriteTicket.Status.COMMITTED)
+          .rows(queued.rows.size()).ids(ids).build());
+    }
+    queuedRows.addAndGet(-rows);
+  }
+
+  private void fail(List<Queued> group, RuntimeException e) {
+    for (Queued queued : group) {
+      log.warn("Music write-behind ticket {} failed: {}", queued.ticket, e.toString());
+      record(WriteTicket.builder().ticket(queued.ticket).status(WriteTicket.Status.FAILED)
+          .rows(queued.rows.size()).message(e.getMessage()).build());
+      queuedRows.addAndGet(-queued.rows.size());
+    }
+  }
+
+
+  private void record(WriteTicket status) {
+    tickets.put(status.getTicket(), status);
+    tickets.remove(status.getTicket() - retainedTickets);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (flusher instanceof ExecutorService) {
+      ((ExecutorService) flusher).shutdown();
+    }
+    flush();
+  }
+}
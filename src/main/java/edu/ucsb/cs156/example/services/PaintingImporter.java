@@ -0,0 +1,244 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.repositories.PaintingRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+// Imports paintings from a CSV file with a header row naming the columns (code,
+// name, artist, year, medium, period, in any order; code and name are required).
+//
+// The file is read one record at a time on the calling thread. Records are handed
+// to a worker pool chunkSize at a time to be turned into Paintings and checked,
+// and the calling thread saves each checked chunk with BulkWriter, in file order.
+// At most two chunks per worker are in flight, so memory use does not grow with
+// the size of the file. Rows that fail their checks are reported, not saved.
+// Paintings are inserted, never merged: as with /bulk, a row whose code is already
+// stored is reported rather than saved, and the rest of its chunk is saved.
+
+@Slf4j
+@Service
+public class PaintingImporter {
+
+  static final List<String> COLUMNS = List.of("code", "name", "artist", "year", "medium", "period");
+
+  private final BulkWriter bulkWriter;
+  private final PaintingRepository paintingRepository;
+  private final ExecutorService workers;
+  private final int maxInFlight;
+  private final int chunkSize;
+
+  @Autowired
+  public PaintingImporter(BulkWriter bulkWriter, PaintingRepository paintingRepository,
+      @Value("${app.import.threads:4}") int threads, @Value("${app.bulk.chunkSize:500}") int chunkSize) {
+    this(bulkWriter, paintingRepository, pool(threads), 2 * threads, chunkSize);
+  }
+
+  PaintingImporter(BulkWriter bulkWriter, PaintingRepository paintingRepository, ExecutorService workers,
+      int maxInFlight, int chunkSize) {
+    this.bulkWriter = bulkWriter;
+    this.paintingRepository = paintingRepository;
+    this.workers = workers;
+    this.maxInFlight = maxInFlight;
+    this.chunkSize = chunkSize;
+  }
+
+  private static ExecutorService pool(int threads) {
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "painting-import-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static class Checked {
+    private final long firstRow;
+    private final int rows;
+    private final List<Painting> paintings = new ArrayList<>();
+    private final List<Long> paintingRows = new ArrayList<>();
+    private final List<RowError> errors = new ArrayList<>();
+
+    private Checked(long firstRow, int rows) {
+      this.firstRow = firstRow;
+      this.rows = rows;
+    }
+  }
+
+  public BulkResult importCsv(InputStream csv) throws IOException {
+    List<RowError> errors = new ArrayList<>();
+    Deque<Future<Checked>> inFlight = new ArrayDeque<>();
+    long saved = 0;
+
+    try (CsvReader reader = new CsvReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+      Map<String, Integer> columns = columns(reader.next());
+      List<List<String>> chunk = new ArrayList<>(chunkSize);
+      long firstRow = 0;
+      long row = 0;
+      for (List<String> record = next(reader, saved); record != null; record = next(reader, saved)) {
+        if (record.size() == 1 && record.get(0).isBlank()) {
+          continue;
+        }
+        chunk.add(record);
+        row++;
+        if (chunk.size() == chunkSize) {
+          inFlight.add(submit(chunk, firstRow, columns));
+          chunk = new ArrayList<>(chunkSize);
+          firstRow = row;
+        }
+        if (inFlight.size() >= maxInFlight) {
+          saved += save(inFlight.poll(), errors, saved);
+        }
+      }
+      if (!chunk.isEmpty()) {
+        inFlight.add(submit(chunk, firstRow, columns));
+      }
+      while (!inFlight.isEmpty()) {
+        saved += save(inFlight.poll(), errors, saved);
+      }
+    } finally {
+      inFlight.forEach(future -> future.cancel(true));
+    }
+    return new BulkResult(saved, errors);
+  }
+
+  // The next record, or null at the end of the file. saved is the number of rows
+  // committed so far, for the message if the record is malformed.
+  private static List<String> next(CsvReader reader, long saved) throws IOException {
+    try {
+      return reader.next();
+    } catch (BadRequestException e) {
+      throw new BadRequestException("%s (%d rows before it were saved)".formatted(e.getMessage(), saved));
+    }
+  }
+
+  private Future<Checked> submit(List<List<String>> records, long firstRow, Map<String, Integer> columns) {
+    return workers.submit(() -> check(records, firstRow, columns));
+  }
+
+  // saved is the number of rows committed so far, for the message if this chunk fails.
+  private int save(Future<Checked> future, List<RowError> errors, long saved) throws IOException {
+    Checked checked;
+    try {
+      checked = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing paintings", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+    errors.addAll(checked.errors);
+    if (checked.paintings.isEmpty()) {
+      return 0;
+    }
+    try {
+      return insert(checked, errors);
+    } catch (DataIntegrityViolationException first) {
+      // a code stored by another writer after the lookup; looking up again finds it
+      try {
+        return insert(checked, errors);
+      } catch (DataIntegrityViolationException e) {
+        throw new BadRequestException("Rows %d to %d were not saved: %s (%d rows before them were saved)"
+            .formatted(checked.firstRow, checked.firstRow + checked.rows - 1, e.getMostSpecificCause().getMessage(), saved));
+      }
+    }
+  }
+
+  // Errors are only kept once the chunk commits, so a retried chunk reports its
+  // stored codes once.
+  private int insert(Checked checked, List<RowError> errors) {
+    List<RowError> stored = new ArrayList<>();
+    int inserted = bulkWriter.insertChunk(Painting.class, Painting::getCode, checked.paintings, checked.paintingRows,
+        paintingRepository::findExistingCodes, stored, paintingRepository::insertAll);
+    errors.addAll(stored);
+    return inserted;
+  }
+
+  // column name -> position, from the header row
+  static Map<String, Integer> columns(List<String> header) {
+    if (header == null) {
+      throw new BadRequestException("The CSV file is empty; expected a header row");
+    }
+    Map<String, Integer> columns = new HashMap<>();
+    for (int i = 0; i < header.size(); i++) {
+      String name = header.get(i).strip().toLowerCase(Locale.ROOT);
+      if (i == 0 && name.startsWith("\uFEFF")) {
+        name = name.substring(1);
+      }
+      if (COLUMNS.contains(name)) {
+        columns.putIfAbsent(name, i);
+      }
+    }
+    for (String required : List.of("code", "name")) {
+      if (!columns.containsKey(required)) {
+        throw new BadRequestException("The header row has no %s column; expected columns %s".formatted(required, COLUMNS));
+      }
+    }
+    return columns;
+  }
+
+  static Checked check(List<List<String>> records, long firstRow, Map<String, Integer> columns) {
+    Checked checked = new Checked(firstRow, records.size());
+    for (int i = 0; i < records.size(); i++) {
+      List<String> record = records.get(i);
+      long row = firstRow + i;
+      String code = field(record, columns, "code");
+      String name = field(record, columns, "name");
+      String year = field(record, columns, "year");
+      if (code.isEmpty()) {
+        checked.errors.add(new RowError(row, "code is required"));
+      } else if (name.isEmpty()) {
+        checked.errors.add(new RowError(row, "name is required"));
+      } else if (!year.isEmpty() && !year.matches("-?\\d{1,9}")) {
+        checked.errors.add(new RowError(row, "year must be a whole number, not '%s'".formatted(year)));
+      } else {
+        checked.paintings.add(Painting.builder()
+            .code(code)
+            .name(name)
+            .artist(field(record, columns, "artist"))
+            .year(year.isEmpty() ? 0 : Integer.parseInt(year))
+            .medium(field(record, columns, "medium"))
+            .period(field(record, columns, "period"))
+            .build());
+        checked.paintingRows.add(row);
+      }
+    }
+    return checked;
+  }
+
+  private static String field(List<String> record, Map<String, Integer> columns, String column) {
+    Integer position = columns.get(column);
+    return position == null || position >= record.size() ? "" : record.get(position).strip();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+}
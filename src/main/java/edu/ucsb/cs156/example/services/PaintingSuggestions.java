@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.repositories.PaintingRepository;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+@Service
+public class PaintingSuggestions extends PrefixIndex<Painting, String> {
+
+  private final PaintingRepository paintingRepository;
+
+  public PaintingSuggestions(PaintingRepository paintingRepository) {
+    super(Painting.class, Painting::getCode, List.of(Painting::getName, Painting::getArtist));
+    this.paintingRepository = paintingRepository;
+  }
+
+  @Override
+  protected Iterable<Painting> loadAll() {
+    return paintingRepository.findAll();
+  }
+}
@@ -0,0 +1,95 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+// Typeahead over one or more text fields: every field is indexed under each of
+// its word-start suffixes ("starry night" under "starry night" and "night"), so
+// a prefix can match the start of any word. Matches at the start of a field come
+// first, then matches further in, each group in alphabetical order.
+
+public abstract class PrefixIndex<T, K> extends EntityIndex<T, K> {
+
+  // separates the text from the key in the map keys, and sorts before any text
+  private static final char SEPARATOR = '\0';
+
+  private final Function<T, K> keyOf;
+  private final List<Function<T, String>> fields;
+  private final NavigableMap<String, K> starts = new TreeMap<>();
+  private final NavigableMap<String, K> inner = new TreeMap<>();
+  private final Map<K, List<String>> entries = new HashMap<>();
+
+  protected PrefixIndex(Class<T> entityType, Function<T, K> keyOf, List<Function<T, String>> fields) {
+    super(entityType, keyOf);
+    this.keyOf = keyOf;
+    this.fields = List.copyOf(fields);
+  }
+
+  // Up to limit distinct entities with a field or word starting with prefix
+  // (case-insensitive).
+  public List<T> suggest(String prefix, int limit) {
+    String p = normalize(prefix);
+    if (p.isEmpty()) {
+      return List.of();
+    }
+    return read(() -> {
+      Set<K> keys = new LinkedHashSet<>();
+      collect(starts, p, keys, limit);
+      collect(inner, p, keys, limit);
+      List<T> result = new ArrayList<>(keys.size());
+      keys.forEach(key -> result.add(get(key)));
+      return result;
+    });
+  }
+
+  static String normalize(String text) {
+    return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  @Override
+  protected void indexed(T entity) {
+    K key = keyOf.apply(entity);
+    List<String> added = new ArrayList<>();
+    for (Function<T, String> field : fields) {
+      String text = normalize(field.apply(entity));
+      int i = text.isEmpty() ? -1 : 0;
+      while (i >= 0) {
+        String entry = text.substring(i) + SEPARATOR + key;
+        (i == 0 ? starts : inner).put(entry, key);
+        added.add(entry);
+        int space = text.indexOf(' ', i);
+        i = space < 0 ? -1 : space + 1;
+      }
+    }
+    entries.put(key, added);
+  }
+
+  @Override
+  protected void unindexed(T entity) {
+    List<String> added = entries.remove(keyOf.apply(entity));
+    if (added == null) {
+      return;
+    }
+    for (String entry : added) {
+      starts.remove(entry);
+      inner.remove(entry);
+    }
+  }
+
+  private static <K> void collect(NavigableMap<String, K> map, String prefix, Set<K> keys, int limit) {
+    for (K key : map.tailMap(prefix, true).headMap(prefix + Character.MAX_VALUE, false).values()) {
+      if (keys.size() >= limit) {
+        return;
+      }
+      keys.add(key);
+    }
+  }
+}
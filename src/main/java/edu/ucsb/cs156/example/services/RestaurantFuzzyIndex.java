@@ -0,0 +1,296 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.springframework.stereotype.Service;
+
+// Typo-tolerant search over Restaurant name and descript using character
+// trigrams. Text is folded to a 37-symbol alphabet (a-z, 0-9 and a word
+// boundary), so each trigram is a small int below 37^3 and the postings are
+// plain int arrays of document numbers indexed by trigram, with no boxing.
+//
+// A name scores by trigram Jaccard similarity to the query; a description, being
+// much longer than a query, scores by how many of the query's trigrams it
+// contains, at half weight. Documents that cannot reach minSimilarity on either
+// field are never scored.
+
+@Service
+public class RestaurantFuzzyIndex extends EntityIndex<Restaurant, String> {
+
+  static final int SYMBOLS = 37;
+  static final int TRIGRAMS = SYMBOLS * SYMBOLS * SYMBOLS;
+  static final double DESCRIPT_WEIGHT = 0.5;
+
+  private static final int BOUNDARY = 0;
+  private static final int[] NO_GRAMS = new int[0];
+
+  private final RestaurantRepository restaurantRepository;
+
+  private final Field names = new Field();
+  private final Field descripts = new Field();
+  private final Map<String, Integer> docs = new HashMap<>();
+  private String[] codes = new String[16];
+  private int[] freeDocs = new int[16];
+  private int freeCount = 0;
+  private int docLimit = 0;
+
+  public RestaurantFuzzyIndex(RestaurantRepository restaurantRepository) {
+    super(Restaurant.class, Restaurant::getCode);
+    this.restaurantRepository = restaurantRepository;
+  }
+
+  public List<SearchHit<Restaurant>> search(String query, double minSimilarity, int limit) {
+    if (!(minSimilarity > 0 && minSimilarity <= 1)) {
+      throw new BadRequestException("minSimilarity must be greater than 0 and at most 1, got %s".formatted(minSimilarity));
+    }
+    int[] q = trigrams(query);
+    if (q.length == 0) {
+      return List.of();
+    }
+    return read(() -> {
+      SharedCounts nameShared = names.countShared(q);
+      SharedCounts descriptShared = descripts.countShared(q);
+
+      // a name needs at least this many trigrams in common to reach minSimilarity,
+      // since Jaccard similarity is at most shared / |q|; likewise for descriptions
+      int minNameShared = (int) Math.ceil(minSimilarity * q.length);
+      int minDescriptShared = (int) Math.ceil(minSimilarity / DESCRIPT_WEIGHT * q.length);
+
+      // only documents that share a trigram with the query can score at all; each
+      // is visited once, names first, then descriptions of the unnamed rest
+      Comparator<SearchHit<Restaurant>> worstFirst = Comparator
+          .comparingDouble((SearchHit<Restaurant> hit) -> hit.getScore())
+          .thenComparing(hit -> hit.getItem().getCode(), Comparator.reverseOrder());
+      PriorityQueue<SearchHit<Restaurant>> best = new PriorityQueue<>(worstFirst);
+      for (int i = 0; i < nameShared.size + descriptShared.size; i++) {
+        int doc;
+        if (i < nameShared.size) {
+          doc = nameShared.docs[i];
+        } else {
+          doc = descriptShared.docs[i - nameShared.size];
+          if (nameShared.get(doc) > 0) {
+            continue;
+          }
+        }
+        double score = 0;
+        int shared = nameShared.get(doc);
+        if (shared >= minNameShared) {
+          score = (double) shared / (q.length + names.gramsOf[doc].length - shared);
+        }
+        shared = descriptShared.get(doc);
+        if (shared >= minDescriptShared) {
+          score = Math.max(score, DESCRIPT_WEIGHT * shared / q.length);
+        }
+        if (score < minSimilarity) {
+          continue;
+        }
+        SearchHit<Restaurant> hit = new SearchHit<>(get(codes[doc]), score);
+        if (best.size() < limit) {
+          best.add(hit);
+        } else if (worstFirst.compare(hit, best.peek()) > 0) {
+          best.poll();
+          best.add(hit);
+        }
+      }
+      List<SearchHit<Restaurant>> hits = new ArrayList<>(best);
+      hits.sort(worstFirst.reversed());
+      return hits;
+    });
+  }
+
+  // The distinct trigrams of the text, sorted, with each word padded by a
+  // boundary on either side ("soba" -> " so", "sob", "oba", "ba ").
+  static int[] trigrams(String text) {
+    if (text == null) {
+      return NO_GRAMS;
+    }
+    int[] symbols = new int[text.length() + 2];
+    int n = 0;
+    symbols[n++] = BOUNDARY;
+    for (int i = 0; i < text.length(); i++) {
+      int s = symbol(text.charAt(i));
+      if (s != BOUNDARY || symbols[n - 1] != BOUNDARY) {
+        symbols[n++] = s;
+      }
+    }
+    if (symbols[n - 1] != BOUNDARY) {
+      symbols[n++] = BOUNDARY;
+    }
+
+    int[] grams = new int[Math.max(0, n - 2)];
+    int count = 0;
+    for (int i = 0; i + 2 < n; i++) {
+      if (symbols[i + 1] != BOUNDARY) {
+        grams[count++] = (symbols[i] * SYMBOLS + symbols[i + 1]) * SYMBOLS + symbols[i + 2];
+      }
+    }
+    int[] sorted = Arrays.copyOf(grams, count);
+    Arrays.sort(sorted);
+    int distinct = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[distinct++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, distinct);
+  }
+
+  private static int symbol(char c) {
+    char lower = Character.toLowerCase(c);
+    if (lower >= 'a' && lower <= 'z') {
+      return 1 + lower - 'a';
+    }
+    if (lower >= '0' && lower <= '9') {
+      return 27 + lower - '0';
+    }
+    return BOUNDARY;
+  }
+
+  @Override
+  protected Iterable<Restaurant> loadAll() {
+    return restaurantRepository.findAll();
+  }
+
+  @Override
+  protected void indexed(Restaurant restaurant) {
+    int doc;
+    if (freeCount > 0) {
+      doc = freeDocs[--freeCount];
+    } else {
+      doc = docLimit++;
+      if (doc == codes.length) {
+        codes = Arrays.copyOf(codes, doc * 2);
+      }
+    }
+    codes[doc] = restaurant.getCode();
+    docs.put(restaurant.getCode(), doc);
+    names.add(doc, trigrams(restaurant.getName()));
+    descripts.add(doc, trigrams(restaurant.getDescript()));
+  }
+
+  @Override
+  protected void unindexed(Restaurant restaurant) {
+    Integer doc = docs.remove(restaurant.getCode());
+    if (doc == null) {
+      return;
+    }
+    names.remove(doc);
+    descripts.remove(doc);
+    codes[doc] = null;
+    if (freeCount == freeDocs.length) {
+      freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+    }
+    freeDocs[freeCount++] = doc;
+  }
+
+  // Postings for one text field: for each trigram, the documents containing it
+  // (unordered, packed at the front of the array), and for each document, its
+  // trigrams, so it can be removed again.
+  private static class Field {
+    private final int[][] postings = new int[TRIGRAMS][];
+    private final int[] sizes = new int[TRIGRAMS];
+    private int[][] gramsOf = new int[16][];
+
+    void add(int doc, int[] grams) {
+      if (doc >= gramsOf.length) {
+        gramsOf = Arrays.copyOf(gramsOf, Math.max(doc + 1, gramsOf.length * 2));
+      }
+      gramsOf[doc] = grams;
+      for (int gram : grams) {
+        int[] posting = postings[gram];
+        if (posting == null) {
+          posting = postings[gram] = new int[4];
+        } else if (sizes[gram] == posting.length) {
+          posting = postings[gram] = Arrays.copyOf(posting, posting.length * 2);
+        }
+        posting[sizes[gram]++] = doc;
+      }
+    }
+
+    void remove(int doc) {
+      for (int gram : gramsOf[doc]) {
+        int[] posting = postings[gram];
+        int last = --sizes[gram];
+        for (int i = 0; i <= last; i++) {
+          if (posting[i] == doc) {
+            posting[i] = posting[last];
+            break;
+          }
+        }
+        if (last == 0) {
+          postings[gram] = null;
+        }
+      }
+      gramsOf[doc] = NO_GRAMS;
+    }
+
+    SharedCounts countShared(int[] grams) {
+      int postingsLength = 0;
+      for (int gram : grams) {
+        postingsLength += sizes[gram];
+      }
+      SharedCounts shared = new SharedCounts(postingsLength);
+      for (int gram : grams) {
+        int[] posting = postings[gram];
+        for (int i = 0; i < sizes[gram]; i++) {
+          shared.increment(posting[i]);
+        }
+      }
+      return shared;
+    }
+  }
+
+  // How many of the query's trigrams each document shares, for just the documents
+  // sharing any: an open-addressing table from document to count, and the list of
+  // documents it holds, both sized by the postings walked rather than by docLimit.
+  private static class SharedCounts {
+    private final int[] keys;
+    private final int[] counts;
+    private final int[] docs;
+    private int size = 0;
+
+    SharedCounts(int postingsLength) {
+      // a power of two at least twice the most documents there can be
+      int capacity = Integer.highestOneBit(Math.max(2, postingsLength * 2) - 1) << 1;
+      keys = new int[capacity];
+      counts = new int[capacity];
+      docs = new int[postingsLength];
+    }
+
+    void increment(int doc) {
+      int slot = slot(doc);
+      if (keys[slot] == 0) {
+        keys[slot] = doc + 1;
+        docs[size++] = doc;
+      }
+      counts[slot]++;
+    }
+
+    int get(int doc) {
+      return counts[slot(doc)];
+    }
+
+    // The slot holding doc, or the empty slot where it would go; keys are stored
+    // as doc + 1 so that 0 marks an empty slot.
+    private int slot(int doc) {
+      int mask = keys.length - 1;
+      int hash = doc * 0x9E3779B9;
+      int slot = (hash ^ hash >>> 16) & mask;
+      while (keys[slot] != 0 && keys[slot] != doc + 1) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Backfill;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.repositories.BackfillRepository;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// Fills in Restaurant.rating for rows written before the column existed (ddl-auto
+// adds it as null). New and edited rows get it from Restaurant.setYelp_rating, so
+// this only has to run once: it is recorded in the backfills table when it is
+// done. Rows whose yelp_rating holds no rating stay null and are not retried.
+
+@Slf4j
+@Service
+public class RestaurantRatingBackfill {
+
+  static final String NAME = "restaurant-rating";
+
+  @Autowired
+  RestaurantRepository restaurantRepository;
+
+  @Autowired
+  BackfillRepository backfillRepository;
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional
+  public void backfill() {
+    if (backfillRepository.existsById(NAME)) {
+      return;
+    }
+    List<Restaurant> unrated = restaurantRepository.findUnrated();
+    List<Restaurant> rated = new ArrayList<>();
+    for (Restaurant restaurant : unrated) {
+      restaurant.setYelp_rating(restaurant.getYelp_rating());
+      if (restaurant.getRating() != null) {
+        rated.add(restaurant);
+      }
+    }
+    restaurantRepository.saveAll(rated);
+    backfillRepository.save(new Backfill(NAME, Instant.now()));
+    log.info("Backfilled rating for {} restaurants; {} have no rating in yelp_rating", rated.size(),
+        unrated.size() - rated.size());
+  }
+}
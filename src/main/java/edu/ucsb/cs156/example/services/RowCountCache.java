@@ -0,0 +1,52 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Row counts per table for the X-Total-Count header. A count is recomputed at
+// most once per TTL, so list requests do not each run a SELECT COUNT(*); in
+// between, each create or delete moves the cached count by one and updates leave
+// it alone. A count taken while a write was committing can count that write
+// twice, so the header is approximate until the TTL runs out.
+
+@Service
+public class RowCountCache {
+
+  private final long ttlNanos;
+  private final Map<Class<?>, long[]> counts = new ConcurrentHashMap<>();
+
+  public RowCountCache(@Value("${app.rowCountTtlSeconds:60}") long ttlSeconds) {
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+  }
+
+  public long rowCount(Class<?> entityType, LongSupplier count) {
+    long now = System.nanoTime();
+    long[] cached = counts.get(entityType); // { count, nanoTime when counted }
+    if (cached != null && now - cached[1] < ttlNanos) {
+      return cached[0];
+    }
+    long rows = count.getAsLong();
+    counts.put(entityType, new long[] { rows, now });
+    return rows;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onEntityChanged(EntityChangedEvent event) {
+    long delta = switch (event.getOperation()) {
+      case CREATE -> 1;
+      case DELETE -> -1;
+      default -> 0;
+    };
+    if (delta != 0) {
+      counts.computeIfPresent(event.getEntityType(), (type, cached) -> new long[] { cached[0] + delta, cached[1] });
+    }
+  }
+}
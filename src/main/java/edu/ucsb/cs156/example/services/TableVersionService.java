@@ -0,0 +1,45 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.TableVersion;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Keeps a modification counter per entity table, bumped on every write that goes
+// through the controllers. The counters live in memory, so the ETag also carries
+// the time this instance started: tags issued before a restart never match again.
+
+@Slf4j
+@Service("tableVersions")
+public class TableVersionService {
+
+  private final long startedAt = System.currentTimeMillis();
+  private final String epoch = Long.toString(startedAt, 36);
+  private final Map<Class<?>, TableVersion> versions = new ConcurrentHashMap<>();
+
+  public TableVersion getVersion(Class<?> entityType) {
+    return versions.getOrDefault(entityType, versionOf(entityType, 0, startedAt));
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onEntityChanged(EntityChangedEvent event) {
+    long now = System.currentTimeMillis();
+    TableVersion v = versions.compute(event.getEntityType(),
+        (type, current) -> versionOf(type, current == null ? 1 : current.getVersion() + 1, now));
+    log.debug("{} is now at version {}", event.getEntityType().getSimpleName(), v.getVersion());
+  }
+
+  private TableVersion versionOf(Class<?> entityType, long version, long lastModified) {
+    String etag = "\"%s-%s-%d\"".formatted(entityType.getSimpleName().toLowerCase(), epoch, version);
+    return TableVersion.builder()
+        .etag(etag)
+        .version(version)
+        .lastModified(lastModified)
+        .build();
+  }
+}
@@ -0,0 +1,167 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.springframework.stereotype.Service;
+
+// Dates ordered by localDateTime, once across all quarters and once per
+// quarterYYYYQ, so that a range or "next N" lookup is a tree search plus a walk
+// over the matching entries rather than a scan of the table.
+
+@Service
+public class UCSBDateIndex extends EntityIndex<UCSBDate, Long> {
+
+  private final UCSBDateRepository ucsbDateRepository;
+
+  private final NavigableMap<Slot, UCSBDate> timeline = new TreeMap<>();
+  private final Map<String, NavigableMap<Slot, UCSBDate>> byQuarter = new HashMap<>();
+  private final Map<Long, Slot> slots = new HashMap<>();
+
+  public UCSBDateIndex(UCSBDateRepository ucsbDateRepository) {
+    super(UCSBDate.class, UCSBDate::getId);
+    this.ucsbDateRepository = ucsbDateRepository;
+  }
+
+  // The first limit dates with from <= localDateTime < to, in time order,
+  // starting after the cursor after when that is given (the last date of the
+  // previous page). The cursor is a position, not a row, so the page continues in
+  // the same place even if that date was since deleted or moved. from, to and the
+  // quarter may be null to leave them open.
+  public List<UCSBDate> range(String quarterYYYYQ, LocalDateTime from, LocalDateTime to, Cursor after, int limit) {
+    if (from != null && to != null && from.isAfter(to)) {
+      throw new BadRequestException("from (%s) must not be after to (%s)".formatted(from, to));
+    }
+    return read(() -> {
+      NavigableMap<Slot, UCSBDate> dates = partition(quarterYYYYQ);
+      if (from != null) {
+        dates = dates.tailMap(Slot.first(from), true);
+      }
+      if (to != null) {
+        dates = dates.headMap(Slot.first(to), false);
+      }
+      if (after != null) {
+        dates = dates.tailMap(new Slot(after.getLocalDateTime(), after.getId(), null), false);
+      }
+      List<UCSBDate> result = new ArrayList<>();
+      for (UCSBDate date : dates.values()) {
+        if (result.size() == limit) {
+          break;
+        }
+        result.add(date);
+      }
+      return result;
+    });
+  }
+
+  // The first count dates at or after from, in time order.
+  public List<UCSBDate> upcoming(String quarterYYYYQ, LocalDateTime from, int count) {
+    return read(() -> {
+      List<UCSBDate> result = new ArrayList<>(count);
+      for (UCSBDate date : partition(quarterYYYYQ).tailMap(Slot.first(from), true).values()) {
+        if (result.size() == count) {
+          break;
+        }
+        result.add(date);
+      }
+      return result;
+    });
+  }
+
+  @Override
+  protected Iterable<UCSBDate> loadAll() {
+    return ucsbDateRepository.findAll();
+  }
+
+  @Override
+  protected void indexed(UCSBDate date) {
+    if (date.getLocalDateTime() == null) {
+      return;
+    }
+    Slot slot = new Slot(date.getLocalDateTime(), date.getId(), date.getQuarterYYYYQ());
+    slots.put(date.getId(), slot);
+    timeline.put(slot, date);
+    if (slot.getQuarterYYYYQ() != null) {
+      byQuarter.computeIfAbsent(slot.getQuarterYYYYQ(), q -> new TreeMap<>()).put(slot, date);
+    }
+  }
+
+  @Override
+  protected void unindexed(UCSBDate date) {
+    Slot slot = slots.remove(date.getId());
+    if (slot == null) {
+      return;
+    }
+    timeline.remove(slot);
+    if (slot.getQuarterYYYYQ() != null) {
+      NavigableMap<Slot, UCSBDate> quarter = byQuarter.get(slot.getQuarterYYYYQ());
+      quarter.remove(slot);
+      if (quarter.isEmpty()) {
+        byQuarter.remove(slot.getQuarterYYYYQ());
+      }
+    }
+  }
+
+  private NavigableMap<Slot, UCSBDate> partition(String quarterYYYYQ) {
+    if (quarterYYYYQ == null) {
+      return timeline;
+    }
+    return byQuarter.getOrDefault(quarterYYYYQ, new TreeMap<>());
+  }
+
+  // Where a page of range ends, sent to clients as "<localDateTime>,<id>".
+  @Value
+  public static class Cursor {
+    LocalDateTime localDateTime;
+    long id;
+
+    public static Cursor of(UCSBDate date) {
+      return new Cursor(date.getLocalDateTime(), date.getId());
+    }
+
+    public static Cursor parse(String cursor) {
+      int comma = cursor.lastIndexOf(',');
+      try {
+        return new Cursor(LocalDateTime.parse(cursor.substring(0, comma)), Long.parseLong(cursor.substring(comma + 1)));
+      } catch (RuntimeException e) {
+        throw new BadRequestException("after must be the X-Next-Cursor of a previous page, not '%s'".formatted(cursor));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "%s,%d".formatted(localDateTime, id);
+    }
+  }
+
+  // Where a date sits in the index: ordered by time, with the id breaking ties.
+  @Value
+  private static class Slot implements Comparable<Slot> {
+    private static final Comparator<Slot> ORDER = Comparator.comparing(Slot::getLocalDateTime)
+        .thenComparingLong(Slot::getId);
+
+    LocalDateTime localDateTime;
+    long id;
+    String quarterYYYYQ;
+
+    static Slot first(LocalDateTime localDateTime) {
+      return new Slot(localDateTime, Long.MIN_VALUE, null);
+    }
+
+    @Override
+    public int compareTo(Slot other) {
+      return ORDER.compare(this, other);
+    }
+  }
+}
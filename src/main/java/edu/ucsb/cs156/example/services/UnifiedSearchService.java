@@ -0,0 +1,161 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.models.SourcedHit;
+import edu.ucsb.cs156.example.models.UnifiedSearchResults;
+import edu.ucsb.cs156.example.repositories.ApartmentRepository;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+// One search across every table. Each table is queried on a shared, bounded pool
+// at the same time, so the answer takes as long as the slowest table rather than
+// the sum of them; a table that has not answered within the timeout (or fails,
+// or finds the pool saturated) is left out and named in the incomplete list.
+// A table that times out has its search cancelled, which interrupts its thread;
+// the database-backed tables also pass the timeout to the database as a query
+// timeout, since an interrupt does not stop a running JDBC statement.
+//
+// Tables rank their own results in different ways (BM25, trigram similarity,
+// prefix order, plain key order), so the scores cannot be compared directly.
+// The lists are merged by reciprocal rank fusion instead: an item at rank r
+// (from 1) in its table's list scores 1 / (RRF_K + r).
+
+@Slf4j
+@Service
+public class UnifiedSearchService {
+
+  static final int RRF_K = 60;
+  static final double RESTAURANT_MIN_SIMILARITY = 0.3;
+  private static final int QUEUE_CAPACITY = 64;
+
+  public interface Source {
+    List<?> search(String query, int limit);
+  }
+
+  private final Map<String, Source> sources;
+  private final ExecutorService executor;
+  private final long timeoutMillis;
+
+  @Autowired
+  public UnifiedSearchService(BookSearchIndex bookSearchIndex, RestaurantFuzzyIndex restaurantFuzzyIndex,
+      MovieSuggestions movieSuggestions, PaintingSuggestions paintingSuggestions,
+      MusicRepository musicRepository, ApartmentRepository apartmentRepository,
+      UCSBDiningCommonsRepository ucsbDiningCommonsRepository,
+      @Value("${app.search.threads:8}") int threads,
+      @Value("${app.search.timeoutMillis:500}") long timeoutMillis) {
+    this(sources(bookSearchIndex, restaurantFuzzyIndex, movieSuggestions, paintingSuggestions,
+        musicRepository, apartmentRepository, ucsbDiningCommonsRepository), boundedPool(threads), timeoutMillis);
+  }
+
+  UnifiedSearchService(Map<String, Source> sources, ExecutorService executor, long timeoutMillis) {
+    this.sources = sources;
+    this.executor = executor;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  // Keyed by the same names as the CRUD paths; the order breaks ties in the merge.
+  private static Map<String, Source> sources(BookSearchIndex bookSearchIndex,
+      RestaurantFuzzyIndex restaurantFuzzyIndex, MovieSuggestions movieSuggestions,
+      PaintingSuggestions paintingSuggestions, MusicRepository musicRepository,
+      ApartmentRepository apartmentRepository, UCSBDiningCommonsRepository ucsbDiningCommonsRepository) {
+    Map<String, Source> sources = new LinkedHashMap<>();
+    sources.put("books", (q, limit) -> items(bookSearchIndex.search(q, limit)));
+    sources.put("restaurant", (q, limit) -> items(restaurantFuzzyIndex.search(q, RESTAURANT_MIN_SIMILARITY, limit)));
+    sources.put("movies", movieSuggestions::suggest);
+    sources.put("painting", paintingSuggestions::suggest);
+    sources.put("music", (q, limit) -> musicRepository
+        .findByTitleContainingIgnoreCaseOrArtistContainingIgnoreCaseOrderByIdAsc(q, q, PageRequest.of(0, limit)));
+    sources.put("apartment", (q, limit) -> apartmentRepository
+        .findByNameContainingIgnoreCaseOrCityContainingIgnoreCaseOrderByCodeAsc(q, q, PageRequest.of(0, limit)));
+    sources.put("ucsbdiningcommons", (q, limit) -> ucsbDiningCommonsRepository
+        .findByNameContainingIgnoreCaseOrderByCodeAsc(q, PageRequest.of(0, limit)));
+    return sources;
+  }
+
+  private static List<?> items(List<? extends SearchHit<?>> hits) {
+    return hits.stream().map(SearchHit::getItem).collect(Collectors.toList());
+  }
+
+  private static ExecutorService boundedPool(int threads) {
+    AtomicInteger count = new AtomicInteger();
+    return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+          Thread thread = new Thread(runnable, "unified-search-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  // The best limit hits from all tables together, best first.
+  public UnifiedSearchResults search(String query, int limit) {
+    Map<String, Future<List<?>>> pending = new LinkedHashMap<>();
+    List<String> incomplete = new ArrayList<>();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    sources.forEach((name, source) -> {
+      try {
+        pending.put(name, executor.submit(() -> source.search(query, limit)));
+      } catch (RejectedExecutionException e) {
+        log.warn("Search pool is full; skipping {}", name);
+        incomplete.add(name);
+      }
+    });
+
+    List<SourcedHit> hits = new ArrayList<>();
+    pending.forEach((name, future) -> {
+      List<?> items;
+      try {
+        items = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        log.warn("Search of {} timed out", name);
+        future.cancel(true);
+        incomplete.add(name);
+        return;
+      } catch (ExecutionException e) {
+        log.warn("Search of {} failed: {}", name, e.getCause().toString());
+        incomplete.add(name);
+        return;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        future.cancel(true);
+        incomplete.add(name);
+        return;
+      }
+      for (int rank = 0; rank < items.size(); rank++) {
+        hits.add(new SourcedHit(name, 1.0 / (RRF_K + rank + 1), items.get(rank)));
+      }
+    });
+
+    // List.sort is stable, so equal scores stay in table order.
+    hits.sort(Comparator.comparingDouble(SourcedHit::getScore).reversed());
+    return new UnifiedSearchResults(new ArrayList<>(hits.subList(0, Math.min(limit, hits.size()))), incomplete);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+}
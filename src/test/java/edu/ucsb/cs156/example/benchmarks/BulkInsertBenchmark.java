@@ -0,0 +1,77 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.IntFunction;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import edu.ucsb.cs156.example.entities.Book;
+import lombok.extern.slf4j.Slf4j;
+
+// Inserts the same rows through Book (pooled sequence) and IdentityBook (IDENTITY)
+// with the batch settings from application.properties, and reports statements
+// and rows per second for each. Opt-in, since it takes a while:
+//
+//   mvn test -Dtest=BulkInsertBenchmark -Dbenchmark=true
+
+@Slf4j
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+    "spring.jpa.properties.hibernate.order_inserts=true",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BulkInsertBenchmark {
+
+  private static final int ROWS = 20_000;
+  private static final int FLUSH_EVERY = 500;
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private long[] insert(IntFunction<Object> row) {
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+    long start = System.nanoTime();
+    for (int i = 0; i < ROWS; i++) {
+      entityManager.persist(row.apply(i));
+      if ((i + 1) % FLUSH_EVERY == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+    long elapsedNanos = System.nanoTime() - start;
+    return new long[] { statistics.getPrepareStatementCount(), ROWS * 1_000_000_000L / elapsedNanos };
+  }
+
+  @Test
+  void pooled_sequence_ids_batch_inserts_and_identity_ids_do_not() {
+    // warm up both mappings first, so neither pays for class loading and JIT
+    insert(i -> new IdentityBook(0, "warm up " + i, "author", "description", "genre"));
+    insert(i -> new Book(0, "warm up " + i, "author", "description", "genre"));
+
+    long[] identity = insert(i -> new IdentityBook(0, "title " + i, "author", "description", "genre"));
+    long[] pooled = insert(i -> new Book(0, "title " + i, "author", "description", "genre"));
+
+    log.info("IDENTITY: {} statements, {} rows/s", identity[0], identity[1]);
+    log.info("pooled sequence: {} statements, {} rows/s", pooled[0], pooled[1]);
+
+    // one insert per row, versus one nextval and one batch per 50 rows
+    assertTrue(identity[0] >= ROWS);
+    assertTrue(pooled[0] <= 2 * ROWS / 50 + 2 * ROWS / FLUSH_EVERY);
+  }
+}
@@ -0,0 +1,27 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Book as it was mapped before it moved to a pooled sequence; only used as the
+// baseline in BulkInsertBenchmark.
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity(name = "identitybooks")
+public class IdentityBook {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long id;
+
+  private String title;
+  private String author;
+  private String description;
+  private String genre;
+}
@@ -1,5 +1,6 @@
 package edu.ucsb.cs156.example.controllers;
 
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
@@ -22,6 +23,20 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Pageable;
+import edu.ucsb.cs156.example.models.BatchItem;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Collectors;
+import edu.ucsb.cs156.example.services.ApartmentCityCache;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,6 +44,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.isNull;
 
 @WebMvcTest(controllers = ApartmentController.class)
 @Import(TestConfig.class)
@@ -37,6 +53,12 @@ public class ApartmentControllerTests extends ControllerTestCase {
         @MockBean
         ApartmentRepository apartmentRepository;
 
+        @MockBean
+        ApartmentCityCache apartmentCityCache;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -207,17 +229,7 @@ public class ApartmentControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                Apartment sierraMadreVillages = Apartment.builder()
-                                .name("Sierra Madre Villages")
-                                .code("sierra-madre-villages")
-                                .address("555 Storke Road")
-                                .city("Goleta")
-                                .state("CA")
-                                .rooms(109)
-                                .description("Nice and New")
-                                .build();
-
-                when(apartmentRepository.findById(eq("sierra-madre-villages"))).thenReturn(Optional.of(sierraMadreVillages));
+                when(apartmentRepository.deleteRow(eq("sierra-madre-villages"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -226,8 +238,8 @@ public class ApartmentControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(apartmentRepository, times(1)).findById("sierra-madre-villages");
-                verify(apartmentRepository, times(1)).delete(any());
+                verify(apartmentRepository, times(1)).deleteRow("sierra-madre-villages");
+                verify(apartmentRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Apartment with id sierra-madre-villages deleted", json.get("message"));
@@ -239,7 +251,7 @@ public class ApartmentControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(apartmentRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(apartmentRepository.deleteRow(eq("munger-hall"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -248,7 +260,7 @@ public class ApartmentControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(apartmentRepository, times(1)).findById("munger-hall");
+                verify(apartmentRepository, times(1)).deleteRow("munger-hall");
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Apartment with id munger-hall not found", json.get("message"));
         }
@@ -332,4 +344,501 @@ public class ApartmentControllerTests extends ControllerTestCase {
                 assertEquals("Apartment with id munger-hall not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_apartments() throws Exception {
+
+                // arrange
+
+                Apartment first = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                Apartment second = Apartment.builder()
+                                .name("Sierra Madre Villages")
+                                .code("sierra-madre-villages")
+                                .address("555 Storke Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(109)
+                                .description("Nice and New")
+                                .build();
+
+                when(apartmentRepository.findAllByOrderByCodeAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(apartmentRepository.findByCodeGreaterThanOrderByCodeAsc(eq("sierra-madre-villages"), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/apartment/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "sierra-madre-villages"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/apartment/all?after=sierra-madre-villages&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_apartments_as_ndjson() throws Exception {
+
+                // arrange
+
+                Apartment first = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                Apartment second = Apartment.builder()
+                                .name("Sierra Madre Villages")
+                                .code("sierra-madre-villages")
+                                .address("555 Storke Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(109)
+                                .description("Nice and New")
+                                .build();
+
+                when(apartmentRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/apartment/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(0)).findAll();
+                verify(apartmentRepository, times(1)).detach(first);
+                verify(apartmentRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_apartments_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/apartment/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/apartment/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/apartment?code=el-dorado").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(apartmentRepository, times(1)).findAll();
+                verify(apartmentRepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_only_some_fields_of_the_apartments() throws Exception {
+
+                // arrange
+
+                List<Map<String, Object>> rows = List.of(
+                                Map.of("code", "el-dorado", "city", "Goleta", "rooms", 50),
+                                Map.of("code", "sierra-madre-villages", "city", "Goleta", "rooms", 109));
+
+                when(apartmentRepository.findFields(eq(Apartment.class), eq(List.of("city", "rooms")), isNull(), eq(Pageable.unpaged())))
+                                .thenReturn(rows);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/apartment/all?fields=city,rooms"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(0)).findAll();
+                List<?> json = mapper.readValue(response.getResponse().getContentAsString(), List.class);
+                assertEquals(rows, json);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_batch_of_apartments_in_request_order() throws Exception {
+
+                // arrange
+
+                Apartment first = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                Apartment second = Apartment.builder()
+                                .name("Sierra Madre Villages")
+                                .code("sierra-madre-villages")
+                                .address("555 Storke Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(109)
+                                .description("Nice and New")
+                                .build();
+
+                when(apartmentRepository.findAllById(eq(Set.of("sierra-madre-villages", "missing", "el-dorado")))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/apartment/batch?code=sierra-madre-villages&code=missing&code=el-dorado&code=sierra-madre-villages"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(1)).findAllById(eq(Set.of("sierra-madre-villages", "missing", "el-dorado")));
+                List<BatchItem<Apartment>> expected = List.of(
+                                BatchItem.<Apartment>builder().key("sierra-madre-villages").found(true).item(second).build(),
+                                BatchItem.<Apartment>builder().key("missing").found(false).message("Apartment with id missing not found").build(),
+                                BatchItem.<Apartment>builder().key("el-dorado").found(true).item(first).build(),
+                                BatchItem.<Apartment>builder().key("sierra-madre-villages").found(true).item(second).build());
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void batch_of_more_than_the_page_limit_is_rejected() throws Exception {
+
+                // arrange
+
+                String query = IntStream.rangeClosed(0, ApiController.MAX_PAGE_SIZE)
+                                .mapToObj(i -> "code=apt-" + i)
+                                .collect(Collectors.joining("&"));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/apartment/batch?" + query))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(0)).findAllById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("BadRequestException", json.get("type"));
+                assertEquals("At most 1000 keys may be requested at once", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void apartment_search_by_city_filters_the_cached_city_bucket() throws Exception {
+
+                // arrange
+
+                Apartment elDorado = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                Apartment sierraMadre = Apartment.builder()
+                                .name("Sierra Madre Villages")
+                                .code("sierra-madre-villages")
+                                .address("555 Storke Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(109)
+                                .description("Nice and New")
+                                .build();
+
+                when(apartmentCityCache.apartmentsIn(eq("Goleta"))).thenReturn(List.of(elDorado, sierraMadre));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/apartment/search?city=Goleta&state=CA&minRooms=100"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentCityCache, times(1)).apartmentsIn(eq("Goleta"));
+                verify(apartmentRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(sierraMadre)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void apartment_search_without_a_city_uses_the_indexed_queries() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/apartment/search?state=CA&maxRooms=60"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(get("/api/apartment/search?minRooms=2"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(apartmentRepository, times(1)).findByStateAndRoomsBetweenOrderByCodeAsc(eq("CA"), eq(0), eq(60));
+                verify(apartmentRepository, times(1)).findByRoomsBetweenOrderByCodeAsc(eq(2), eq(Integer.MAX_VALUE));
+                verify(apartmentCityCache, times(0)).apartmentsIn(any());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_apartments() throws Exception {
+                mockMvc.perform(get("/api/apartment/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_apartments() throws Exception {
+
+                // arrange
+
+                when(apartmentRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/apartment/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(1)).count();
+                verify(apartmentRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_apartments_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(apartmentRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/apartment/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(apartmentRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/apartment/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/apartment/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_apartments() throws Exception {
+
+                // arrange
+
+                Apartment row = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.insert(any(), eq(Apartment.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/apartment/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Apartment, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).insert(any(), eq(Apartment.class), any(), problem.capture(), any(), any());
+                assertEquals(null, problem.getValue().apply(row));
+                assertEquals("code is required", problem.getValue().apply(new Apartment())); // rows must carry their own key
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/apartment/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"el-dorado\", \"sierra-madre-villages\", \"el-dorado\"]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_apartments_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(apartmentRepository.findExistingCodes(eq(List.of("el-dorado", "sierra-madre-villages")))).thenReturn(List.of("sierra-madre-villages"));
+                when(apartmentRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/apartment/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[\"el-dorado\", \"sierra-madre-villages\", \"el-dorado\"]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(1)).deleteRows(eq(List.of("sierra-madre-villages"))); // only the key that exists
+                verify(apartmentRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/apartment?code=sierra-madre-villages").with(csrf()).contentType("application/merge-patch+json").content("{\"city\": \"Santa Barbara\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("city", "Santa Barbara");
+                when(apartmentRepository.patchChanges(eq(Apartment.class), any())).thenReturn(changes);
+                when(apartmentRepository.updateColumns(eq(Apartment.class), eq("sierra-madre-villages"), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/apartment?code=sierra-madre-villages")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"city\": \"Santa Barbara\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(apartmentRepository, times(1)).updateColumns(eq(Apartment.class), eq("sierra-madre-villages"), eq(changes));
+                verify(apartmentRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Apartment with id sierra-madre-villages updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_apartment_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(apartmentRepository.patchChanges(eq(Apartment.class), any())).thenReturn(Map.of("city", "Santa Barbara"));
+                when(apartmentRepository.updateColumns(eq(Apartment.class), eq("sierra-madre-villages"), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/apartment?code=sierra-madre-villages")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"city\": \"Santa Barbara\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Apartment with id sierra-madre-villages not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_upsert_apartments() throws Exception {
+
+                // arrange
+
+                Apartment first = Apartment.builder()
+                                .name("El Dorado")
+                                .code("el-dorado")
+                                .address("6667 El Colegio Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(50)
+                                .description("Tropicana but Nicer")
+                                .build();
+
+                Apartment second = Apartment.builder()
+                                .name("Sierra Madre Villages")
+                                .code("sierra-madre-villages")
+                                .address("555 Storke Road")
+                                .city("Goleta")
+                                .state("CA")
+                                .rooms(109)
+                                .description("Nice and New")
+                                .build();
+
+                BulkResult result = new BulkResult(2, List.of());
+                when(bulkWriter.upsert(any(), eq(Apartment.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/apartment/bulk?upsert=true")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(first, second))))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bulkWriter, times(1)).upsert(any(), eq(Apartment.class), any(), any(), any(), eq(apartmentRepository));
+                verify(bulkWriter, times(0)).insert(any(), any(), any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
 }
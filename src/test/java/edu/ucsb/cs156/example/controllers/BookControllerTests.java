@@ -22,6 +22,18 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.services.BookSearchIndex;
+import edu.ucsb.cs156.example.models.FacetCount;
+import edu.ucsb.cs156.example.services.BookFacets;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +49,15 @@ public class BookControllerTests extends ControllerTestCase {
     @MockBean
     BookRepository bookRepository;
 
+    @MockBean
+    BulkWriter bulkWriter;
+
+    @MockBean
+    BookSearchIndex bookSearchIndex;
+
+    @MockBean
+    BookFacets bookFacets;
+
     @MockBean
     UserRepository userRepository;
 
@@ -267,14 +288,7 @@ public class BookControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_book() throws Exception {
                 // arrange
 
-                Book book1 = Book.builder()
-                                .title("hi")
-                                .author("me")
-                                .description("nothing")
-                                .genre("action")
-                                .build();
-
-                when(bookRepository.findById(eq(15L))).thenReturn(Optional.of(book1));
+                when(bookRepository.deleteRow(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -283,8 +297,8 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(15L);
-                verify(bookRepository, times(1)).delete(any());
+                verify(bookRepository, times(1)).deleteRow(15L);
+                verify(bookRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 deleted", json.get("message"));
@@ -296,7 +310,7 @@ public class BookControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(bookRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(bookRepository.deleteRow(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -305,8 +319,423 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(bookRepository, times(1)).findById(15L);
+                verify(bookRepository, times(1)).deleteRow(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 not found", json.get("message"));
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_books() throws Exception {
+
+                // arrange
+
+                Book first = Book.builder()
+                                .id(1L)
+                                .title("Animal Farm")
+                                .author("George Orwell")
+                                .description("A story about a group of farm animals who rebel against their human farmer")
+                                .genre("Fable")
+                                .build();
+
+                Book second = Book.builder()
+                                .id(2L)
+                                .title("Fahrenheit 451")
+                                .author("Ray Bradbury")
+                                .description("A story set in a dystopian society that burns books")
+                                .genre("Dystopian fiction")
+                                .build();
+
+                when(bookRepository.findAllByOrderByIdAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(bookRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/books/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "2"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/books/all?after=2&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(bookRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_books_as_ndjson() throws Exception {
+
+                // arrange
+
+                Book first = Book.builder()
+                                .id(1L)
+                                .title("Animal Farm")
+                                .author("George Orwell")
+                                .description("A story about a group of farm animals who rebel against their human farmer")
+                                .genre("Fable")
+                                .build();
+
+                Book second = Book.builder()
+                                .id(2L)
+                                .title("Fahrenheit 451")
+                                .author("Ray Bradbury")
+                                .description("A story set in a dystopian society that burns books")
+                                .genre("Dystopian fiction")
+                                .build();
+
+                when(bookRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/books/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(bookRepository, times(0)).findAll();
+                verify(bookRepository, times(1)).detach(first);
+                verify(bookRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_books_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/books/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/books/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/books?id=7").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(bookRepository, times(1)).findAll();
+                verify(bookRepository, times(0)).findById(any());
+        }
+
+        @Test
+        public void logged_out_users_cannot_search_books() throws Exception {
+                mockMvc.perform(get("/api/books/search?q=orwell"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_books() throws Exception {
+
+                // arrange
+
+                Book animalFarm = Book.builder()
+                                .id(1L)
+                                .title("Animal Farm")
+                                .author("George Orwell")
+                                .description("A story about a group of farm animals who rebel against their human farmer")
+                                .genre("Fable")
+                                .build();
+
+                List<SearchHit<Book>> hits = List.of(new SearchHit<>(animalFarm, 2.5));
+                when(bookSearchIndex.search(eq("orwell farm"), eq(5))).thenReturn(hits);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/books/search?q=orwell farm&limit=5"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookSearchIndex, times(1)).search(eq("orwell farm"), eq(5));
+                verify(bookRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(hits), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void book_search_defaults_to_twenty_results() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/books/search?q=orwell"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(bookSearchIndex, times(1)).search(eq("orwell"), eq(20));
+        }
+
+        @Test
+        public void logged_out_users_cannot_get_book_facets() throws Exception {
+                mockMvc.perform(get("/api/books/facets"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_book_facets_without_a_table_scan() throws Exception {
+
+                // arrange
+
+                Map<String, List<FacetCount>> facets = Map.of(
+                                "genre", List.of(new FacetCount("Dystopian fiction", 2), new FacetCount("Fable", 1)),
+                                "author", List.of(new FacetCount("George Orwell", 2), new FacetCount("Ray Bradbury", 1)));
+                when(bookFacets.facets()).thenReturn(facets);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/books/facets"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookFacets, times(1)).facets();
+                verify(bookRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(facets), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_books() throws Exception {
+                mockMvc.perform(get("/api/books/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_books() throws Exception {
+
+                // arrange
+
+                when(bookRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/books/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(1)).count();
+                verify(bookRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_books_skips_the_total_count_unless_asked() throws Exception {
+
+                // arrange
+
+                when(bookRepository.findAllByOrderByIdAsc(any())).thenReturn(List.of());
+
+                // act
+
+                mockMvc.perform(get("/api/books/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Total-Count"));
+
+                // assert
+
+                verify(bookRepository, times(0)).count();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_books_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(bookRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/books/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(bookRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/books/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/books/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_books() throws Exception {
+
+                // arrange
+
+                Book row = Book.builder()
+                                .id(1L)
+                                .title("Animal Farm")
+                                .author("George Orwell")
+                                .description("A story about a group of farm animals who rebel against their human farmer")
+                                .genre("Fable")
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.create(any(), eq(Book.class), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/books/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Book, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).create(any(), eq(Book.class), any(), problem.capture(), any());
+                assertEquals("id is assigned by the server and must be left out", problem.getValue().apply(row));
+                assertEquals(null, problem.getValue().apply(new Book())); // generated ids must be left unset
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/books/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[1, 2, 1]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_books_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(bookRepository.findExistingIds(eq(List.of(1L, 2L)))).thenReturn(List.of(2L));
+                when(bookRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/books/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[1, 2, 1]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(1)).deleteRows(eq(List.of(2L))); // only the key that exists
+                verify(bookRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void bulk_delete_of_missing_books_deletes_nothing() throws Exception {
+
+                // arrange
+
+                when(bookRepository.findExistingIds(any())).thenReturn(List.of());
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/books/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[7, 8]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(0)).deleteRows(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(0, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/books?id=2").with(csrf()).contentType("application/merge-patch+json").content("{\"genre\": \"Science fiction\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("genre", "Science fiction");
+                when(bookRepository.patchChanges(eq(Book.class), any())).thenReturn(changes);
+                when(bookRepository.updateColumns(eq(Book.class), eq(2L), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/books?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"genre\": \"Science fiction\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bookRepository, times(1)).updateColumns(eq(Book.class), eq(2L), eq(changes));
+                verify(bookRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Book with id 2 updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_book_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(bookRepository.patchChanges(eq(Book.class), any())).thenReturn(Map.of("genre", "Science fiction"));
+                when(bookRepository.updateColumns(eq(Book.class), eq(2L), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/books?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"genre\": \"Science fiction\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Book with id 2 not found", json.get("message"));
+        }
 }
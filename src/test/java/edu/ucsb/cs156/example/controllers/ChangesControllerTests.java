@@ -0,0 +1,95 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.repositories.EntityChangeRepository;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = ChangesController.class)
+public class ChangesControllerTests extends ControllerTestCase {
+
+        @MockBean
+        EntityChangeRepository entityChangeRepository;
+
+        @MockBean
+        UserRepository userRepository;
+
+        @Test
+        public void logged_out_users_cannot_read_the_change_feed() throws Exception {
+                mockMvc.perform(get("/api/changes"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_read_changes_after_a_sequence_number() throws Exception {
+
+                // arrange
+
+                EntityChange created = EntityChange.builder()
+                                .seq(11)
+                                .entityType("Book")
+                                .entityId("7")
+                                .operation(Operation.CREATE)
+                                .changedAt(Instant.parse("2023-05-01T12:00:00Z"))
+                                .build();
+
+                EntityChange deleted = EntityChange.builder()
+                                .seq(12)
+                                .entityType("Restaurant")
+                                .entityId("mokkoji")
+                                .operation(Operation.DELETE)
+                                .changedAt(Instant.parse("2023-05-01T12:00:01Z"))
+                                .build();
+
+                when(entityChangeRepository.findBySeqGreaterThanOrderBySeqAsc(eq(10L), eq(PageRequest.of(0, 2))))
+                                .thenReturn(List.of(created, deleted));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/changes?since=10&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "12"))
+                                .andReturn();
+
+                // assert
+
+                verify(entityChangeRepository, times(1)).findBySeqGreaterThanOrderBySeqAsc(eq(10L), eq(PageRequest.of(0, 2)));
+                assertEquals(mapper.writeValueAsString(List.of(created, deleted)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void change_feed_starts_from_the_beginning_by_default() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/changes"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+                // assert
+
+                verify(entityChangeRepository, times(1))
+                                .findBySeqGreaterThanOrderBySeqAsc(eq(0L), eq(PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE)));
+        }
+}
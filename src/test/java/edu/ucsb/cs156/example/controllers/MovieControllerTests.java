@@ -22,6 +22,18 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.models.BatchItem;
+import java.util.Set;
+import edu.ucsb.cs156.example.services.MovieYearIndex;
+import edu.ucsb.cs156.example.services.MovieSuggestions;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +49,15 @@ public class MovieControllerTests extends ControllerTestCase {
         @MockBean
         MovieRepository movierepository;
 
+        @MockBean
+        MovieYearIndex movieYearIndex;
+
+        @MockBean
+        MovieSuggestions movieSuggestions;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -195,14 +216,7 @@ public class MovieControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_movie() throws Exception {
                 // arrange
 
-                Movie goodnurse = Movie.builder()
-                                .title("The Good Nurse")
-                                .id("4273800")
-                                .director("Tobias Lindholm")
-                                .release_year(2022)
-                                .build();
-
-                when(movierepository.findById(eq("4273800"))).thenReturn(Optional.of(goodnurse));
+                when(movierepository.deleteRow(eq("4273800"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -211,8 +225,8 @@ public class MovieControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(movierepository, times(1)).findById("4273800");
-                verify(movierepository, times(1)).delete(any());
+                verify(movierepository, times(1)).deleteRow("4273800");
+                verify(movierepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Movie with id 4273800 deleted", json.get("message"));
@@ -224,7 +238,7 @@ public class MovieControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(movierepository.findById(eq("0000000"))).thenReturn(Optional.empty());
+                when(movierepository.deleteRow(eq("0000000"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -233,7 +247,7 @@ public class MovieControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(movierepository, times(1)).findById("0000000");
+                verify(movierepository, times(1)).deleteRow("0000000");
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Movie with id 0000000 not found", json.get("message"));
         }
@@ -309,4 +323,430 @@ public class MovieControllerTests extends ControllerTestCase {
                 assertEquals("Movie with id 0000000 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_movies() throws Exception {
+
+                // arrange
+
+                Movie first = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                Movie second = Movie.builder()
+                                .title("Parasite")
+                                .id("6751668")
+                                .director("Bong Joon Ho")
+                                .release_year(2019)
+                                .build();
+
+                when(movierepository.findAllByOrderByIdAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(movierepository.findByIdGreaterThanOrderByIdAsc(eq("6751668"), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/movies/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "6751668"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/movies/all?after=6751668&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(movierepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_movies_as_ndjson() throws Exception {
+
+                // arrange
+
+                Movie first = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                Movie second = Movie.builder()
+                                .title("Parasite")
+                                .id("6751668")
+                                .director("Bong Joon Ho")
+                                .release_year(2019)
+                                .build();
+
+                when(movierepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/movies/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(movierepository, times(0)).findAll();
+                verify(movierepository, times(1)).detach(first);
+                verify(movierepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_movies_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/movies/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/movies/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/movies?id=1375666").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(movierepository, times(1)).findAll();
+                verify(movierepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_batch_of_movies_in_request_order() throws Exception {
+
+                // arrange
+
+                Movie first = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                Movie second = Movie.builder()
+                                .title("Parasite")
+                                .id("6751668")
+                                .director("Bong Joon Ho")
+                                .release_year(2019)
+                                .build();
+
+                when(movierepository.findAllById(eq(Set.of("6751668", "missing", "1375666")))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/movies/batch?id=6751668&id=missing&id=1375666&id=6751668"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movierepository, times(1)).findAllById(eq(Set.of("6751668", "missing", "1375666")));
+                List<BatchItem<Movie>> expected = List.of(
+                                BatchItem.<Movie>builder().key("6751668").found(true).item(second).build(),
+                                BatchItem.<Movie>builder().key("missing").found(false).message("Movie with id missing not found").build(),
+                                BatchItem.<Movie>builder().key("1375666").found(true).item(first).build(),
+                                BatchItem.<Movie>builder().key("6751668").found(true).item(second).build());
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_movies_by_release_year() throws Exception {
+
+                // arrange
+
+                Movie inception = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                when(movieYearIndex.range(eq(2010L), eq(2019L), eq("Christopher Nolan"))).thenReturn(List.of(inception));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/movies/range?fromYear=2010&toYear=2019&director=Christopher Nolan"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movieYearIndex, times(1)).range(eq(2010L), eq(2019L), eq("Christopher Nolan"));
+                verify(movierepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(inception)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void movie_year_range_requires_both_bounds() throws Exception {
+                mockMvc.perform(get("/api/movies/range?fromYear=2010"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_movie_suggestions_for_a_prefix() throws Exception {
+
+                // arrange
+
+                Movie suggestion = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                when(movieSuggestions.suggest(eq("inc"), eq(10))).thenReturn(List.of(suggestion));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/movies/suggest?prefix=inc"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movieSuggestions, times(1)).suggest(eq("inc"), eq(10));
+                verify(movierepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(suggestion)), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_movies() throws Exception {
+                mockMvc.perform(get("/api/movies/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_movies() throws Exception {
+
+                // arrange
+
+                when(movierepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/movies/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movierepository, times(1)).count();
+                verify(movierepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_movies_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(movierepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/movies/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(movierepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/movies/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/movies/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_movies() throws Exception {
+
+                // arrange
+
+                Movie row = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.insert(any(), eq(Movie.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/movies/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Movie, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).insert(any(), eq(Movie.class), any(), problem.capture(), any(), any());
+                assertEquals(null, problem.getValue().apply(row));
+                assertEquals("id is required", problem.getValue().apply(new Movie())); // rows must carry their own key
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/movies/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"1375666\", \"6751668\", \"1375666\"]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_movies_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(movierepository.findExistingIds(eq(List.of("1375666", "6751668")))).thenReturn(List.of("6751668"));
+                when(movierepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/movies/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[\"1375666\", \"6751668\", \"1375666\"]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movierepository, times(1)).deleteRows(eq(List.of("6751668"))); // only the key that exists
+                verify(movierepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/movies?id=6751668").with(csrf()).contentType("application/merge-patch+json").content("{\"director\": \"Bong Joon-ho\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("director", "Bong Joon-ho");
+                when(movierepository.patchChanges(eq(Movie.class), any())).thenReturn(changes);
+                when(movierepository.updateColumns(eq(Movie.class), eq("6751668"), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/movies?id=6751668")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"director\": \"Bong Joon-ho\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(movierepository, times(1)).updateColumns(eq(Movie.class), eq("6751668"), eq(changes));
+                verify(movierepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Movie with id 6751668 updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_movie_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(movierepository.patchChanges(eq(Movie.class), any())).thenReturn(Map.of("director", "Bong Joon-ho"));
+                when(movierepository.updateColumns(eq(Movie.class), eq("6751668"), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/movies?id=6751668")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"director\": \"Bong Joon-ho\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Movie with id 6751668 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_upsert_movies() throws Exception {
+
+                // arrange
+
+                Movie first = Movie.builder()
+                                .title("Inception")
+                                .id("1375666")
+                                .director("Christopher Nolan")
+                                .release_year(2010)
+                                .build();
+
+                Movie second = Movie.builder()
+                                .title("Parasite")
+                                .id("6751668")
+                                .director("Bong Joon Ho")
+                                .release_year(2019)
+                                .build();
+
+                BulkResult result = new BulkResult(2, List.of());
+                when(bulkWriter.upsert(any(), eq(Movie.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/movies/bulk?upsert=true")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(first, second))))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bulkWriter, times(1)).upsert(any(), eq(Movie.class), any(), any(), any(), eq(movierepository));
+                verify(bulkWriter, times(0)).insert(any(), any(), any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
 }
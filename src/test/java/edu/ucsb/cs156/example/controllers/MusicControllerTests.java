@@ -22,6 +22,20 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.models.FacetCount;
+import edu.ucsb.cs156.example.services.MusicFacets;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
+import edu.ucsb.cs156.example.models.WriteTicket;
+import edu.ucsb.cs156.example.services.MusicWriteBehind;
+import edu.ucsb.cs156.example.errors.QueueFullException;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +51,15 @@ public class MusicControllerTests extends ControllerTestCase {
         @MockBean
         MusicRepository musicRepository;
 
+        @MockBean
+        MusicFacets musicFacets;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
+        @MockBean
+        MusicWriteBehind musicWriteBehind;
+
         @MockBean
         UserRepository userRepository;
 
@@ -195,14 +218,7 @@ public class MusicControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                Music ILLENIUM = Music.builder()
-                                .title("Lifeline")
-                                .album("ILLENIUM")
-                                .artist("Illenium")
-                                .genre("EDM")
-                                .build();
-
-                when(musicRepository.findById(eq(3L))).thenReturn(Optional.of(ILLENIUM));
+                when(musicRepository.deleteRow(eq(3L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -211,8 +227,8 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(musicRepository, times(1)).findById(3L);
-                verify(musicRepository, times(1)).delete(any());
+                verify(musicRepository, times(1)).deleteRow(3L);
+                verify(musicRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Music with id 3 deleted", json.get("message"));
@@ -224,7 +240,7 @@ public class MusicControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(musicRepository.findById(eq(4L))).thenReturn(Optional.empty());
+                when(musicRepository.deleteRow(eq(4L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -233,7 +249,7 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(musicRepository, times(1)).findById(4L);
+                verify(musicRepository, times(1)).deleteRow(4L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Music with id 4 not found", json.get("message"));
         }
@@ -308,4 +324,455 @@ public class MusicControllerTests extends ControllerTestCase {
                 assertEquals("Music with id 6 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_musics() throws Exception {
+
+                // arrange
+
+                Music first = Music.builder()
+                                .id(1L)
+                                .title("Bibo No Aozora")
+                                .album("1996")
+                                .artist("Ryuichi Sakamoto")
+                                .genre("Classical")
+                                .build();
+
+                Music second = Music.builder()
+                                .id(2L)
+                                .title("No Return")
+                                .album("Unforgiven")
+                                .artist("Lesserafim")
+                                .genre("K-Pop")
+                                .build();
+
+                when(musicRepository.findAllByOrderByIdAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(musicRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/music/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "2"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/music/all?after=2&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(musicRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_musics_as_ndjson() throws Exception {
+
+                // arrange
+
+                Music first = Music.builder()
+                                .id(1L)
+                                .title("Bibo No Aozora")
+                                .album("1996")
+                                .artist("Ryuichi Sakamoto")
+                                .genre("Classical")
+                                .build();
+
+                Music second = Music.builder()
+                                .id(2L)
+                                .title("No Return")
+                                .album("Unforgiven")
+                                .artist("Lesserafim")
+                                .genre("K-Pop")
+                                .build();
+
+                when(musicRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/music/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(musicRepository, times(0)).findAll();
+                verify(musicRepository, times(1)).detach(first);
+                verify(musicRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_musics_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/music/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/music/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/music?id=7").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(musicRepository, times(1)).findAll();
+                verify(musicRepository, times(0)).findById(any());
+        }
+
+        @Test
+        public void logged_out_users_cannot_get_music_facets() throws Exception {
+                mockMvc.perform(get("/api/music/facets"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_music_facets_without_a_table_scan() throws Exception {
+
+                // arrange
+
+                Map<String, List<FacetCount>> facets = Map.of(
+                                "genre", List.of(new FacetCount("K-Pop", 2), new FacetCount("Classical", 1)),
+                                "artist", List.of(new FacetCount("Lesserafim", 2), new FacetCount("Ryuichi Sakamoto", 1)),
+                                "album", List.of(new FacetCount("1996", 1), new FacetCount("Unforgiven", 2)));
+                when(musicFacets.facets()).thenReturn(facets);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/music/facets"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(musicFacets, times(1)).facets();
+                verify(musicRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(facets), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_musics() throws Exception {
+                mockMvc.perform(get("/api/music/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_musics() throws Exception {
+
+                // arrange
+
+                when(musicRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/music/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(musicRepository, times(1)).count();
+                verify(musicRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_musics_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(musicRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/music/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(musicRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/music/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/music/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_musics() throws Exception {
+
+                // arrange
+
+                Music row = Music.builder()
+                                .id(1L)
+                                .title("Bibo No Aozora")
+                                .album("1996")
+                                .artist("Ryuichi Sakamoto")
+                                .genre("Classical")
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.create(any(), eq(Music.class), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/music/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Music, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).create(any(), eq(Music.class), any(), problem.capture(), any());
+                assertEquals("id is assigned by the server and must be left out", problem.getValue().apply(row));
+                assertEquals(null, problem.getValue().apply(new Music())); // generated ids must be left unset
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/music/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[1, 2, 1]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_musics_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(musicRepository.findExistingIds(eq(List.of(1L, 2L)))).thenReturn(List.of(2L));
+                when(musicRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/music/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[1, 2, 1]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(musicRepository, times(1)).deleteRows(eq(List.of(2L))); // only the key that exists
+                verify(musicRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/music?id=2").with(csrf()).contentType("application/merge-patch+json").content("{\"album\": \"Revolver\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("album", "Revolver");
+                when(musicRepository.patchChanges(eq(Music.class), any())).thenReturn(changes);
+                when(musicRepository.updateColumns(eq(Music.class), eq(2L), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/music?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"album\": \"Revolver\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(musicRepository, times(1)).updateColumns(eq(Music.class), eq(2L), eq(changes));
+                verify(musicRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Music with id 2 updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_music_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(musicRepository.patchChanges(eq(Music.class), any())).thenReturn(Map.of("album", "Revolver"));
+                when(musicRepository.updateColumns(eq(Music.class), eq(2L), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/music?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"album\": \"Revolver\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Music with id 2 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_async() throws Exception {
+                mockMvc.perform(post("/api/music/async").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_queue_musics_and_gets_a_ticket_at_once() throws Exception {
+
+                // arrange
+
+                Music row = Music.builder()
+                                .title("Bibo No Aozora")
+                                .album("1996")
+                                .artist("Ryuichi Sakamoto")
+                                .genre("Classical")
+                                .build();
+
+                WriteTicket ticket = WriteTicket.builder().ticket(7).status(WriteTicket.Status.QUEUED).rows(1).build();
+                when(musicWriteBehind.submit(any())).thenReturn(ticket);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/music/async")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(row))))
+                                .andExpect(status().isAccepted()).andReturn();
+
+                // assert
+
+                verify(musicWriteBehind, times(1)).submit(eq(List.of(row)));
+                verify(musicRepository, times(0)).save(any());
+                assertEquals(mapper.writeValueAsString(ticket), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void queued_musics_must_leave_the_id_unset() throws Exception {
+
+                // arrange
+
+                Music row = Music.builder()
+                                .id(1L)
+                                .title("Bibo No Aozora")
+                                .build();
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/music/async")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(new Music(), row))))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+
+                verify(musicWriteBehind, times(0)).submit(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Row 1: id is assigned by the server and must be left out", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_full_queue_answers_service_unavailable() throws Exception {
+
+                // arrange
+
+                when(musicWriteBehind.submit(any())).thenThrow(new QueueFullException("music write-behind", 1, 20000));
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/music/async")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[{\"title\": \"Energy Flow\"}]"))
+                                .andExpect(status().isServiceUnavailable()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("QueueFullException", json.get("type"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_see_whether_a_ticket_was_committed() throws Exception {
+
+                // arrange
+
+                WriteTicket ticket = WriteTicket.builder().ticket(7).status(WriteTicket.Status.COMMITTED).rows(2)
+                                .ids(List.of(11L, 12L)).build();
+                when(musicWriteBehind.status(eq(7L))).thenReturn(ticket);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/music/async?ticket=7"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                assertEquals(mapper.writeValueAsString(ticket), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_gets_404_for_an_unknown_ticket() throws Exception {
+
+                // arrange
+
+                when(musicWriteBehind.status(eq(8L))).thenThrow(new EntityNotFoundException(WriteTicket.class, 8L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/music/async?ticket=8"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("WriteTicket with id 8 not found", json.get("message"));
+        }
 }
@@ -1,5 +1,6 @@
 package edu.ucsb.cs156.example.controllers;
 
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
@@ -22,6 +23,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.models.BatchItem;
+import java.util.Set;
+import edu.ucsb.cs156.example.services.PaintingSuggestions;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
+import edu.ucsb.cs156.example.services.PaintingImporter;
+import org.springframework.mock.web.MockMultipartFile;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +51,15 @@ public class PaintingControllerTests extends ControllerTestCase {
         @MockBean
         PaintingRepository paintingRepository;
 
+        @MockBean
+        PaintingSuggestions paintingSuggestions;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
+        @MockBean
+        PaintingImporter paintingImporter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -203,16 +226,7 @@ public class PaintingControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                Painting pearl = Painting.builder()
-                                .name("Girl with a Pearl Earring")
-                                .code("pearl")
-                                .artist("Johannes Vermeer")
-                                .year(1665)
-                                .medium("Oil")
-                                .period("Dutch Golden Age")
-                                .build();
-
-                when(paintingRepository.findById(eq("pearl"))).thenReturn(Optional.of(pearl));
+                when(paintingRepository.deleteRow(eq("pearl"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -221,8 +235,8 @@ public class PaintingControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(paintingRepository, times(1)).findById("pearl");
-                verify(paintingRepository, times(1)).delete(any());
+                verify(paintingRepository, times(1)).deleteRow("pearl");
+                verify(paintingRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Painting with id pearl deleted", json.get("message"));
@@ -234,7 +248,7 @@ public class PaintingControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(paintingRepository.findById(eq("venus"))).thenReturn(Optional.empty());
+                when(paintingRepository.deleteRow(eq("venus"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -243,7 +257,7 @@ public class PaintingControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(paintingRepository, times(1)).findById("venus");
+                verify(paintingRepository, times(1)).deleteRow("venus");
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Painting with id venus not found", json.get("message"));
         }
@@ -324,4 +338,470 @@ public class PaintingControllerTests extends ControllerTestCase {
                 assertEquals("Painting with id venus not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_paintings() throws Exception {
+
+                // arrange
+
+                Painting first = Painting.builder()
+                                .name("Mona Lisa")
+                                .code("mona-lisa")
+                                .artist("Leonardo da Vinci")
+                                .year(1517)
+                                .medium("Oil")
+                                .period("Renaissance")
+                                .build();
+
+                Painting second = Painting.builder()
+                                .name("Starry Night")
+                                .code("starry-night")
+                                .artist("Vincent van Gogh")
+                                .year(1889)
+                                .medium("Oil")
+                                .period("Post-Impressionism")
+                                .build();
+
+                when(paintingRepository.findAllByOrderByCodeAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(paintingRepository.findByCodeGreaterThanOrderByCodeAsc(eq("starry-night"), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/painting/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "starry-night"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/painting/all?after=starry-night&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_paintings_as_ndjson() throws Exception {
+
+                // arrange
+
+                Painting first = Painting.builder()
+                                .name("Mona Lisa")
+                                .code("mona-lisa")
+                                .artist("Leonardo da Vinci")
+                                .year(1517)
+                                .medium("Oil")
+                                .period("Renaissance")
+                                .build();
+
+                Painting second = Painting.builder()
+                                .name("Starry Night")
+                                .code("starry-night")
+                                .artist("Vincent van Gogh")
+                                .year(1889)
+                                .medium("Oil")
+                                .period("Post-Impressionism")
+                                .build();
+
+                when(paintingRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/painting/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(0)).findAll();
+                verify(paintingRepository, times(1)).detach(first);
+                verify(paintingRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_paintings_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/painting/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/painting/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/painting?code=mona-lisa").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(paintingRepository, times(1)).findAll();
+                verify(paintingRepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_batch_of_paintings_in_request_order() throws Exception {
+
+                // arrange
+
+                Painting first = Painting.builder()
+                                .name("Mona Lisa")
+                                .code("mona-lisa")
+                                .artist("Leonardo da Vinci")
+                                .year(1517)
+                                .medium("Oil")
+                                .period("Renaissance")
+                                .build();
+
+                Painting second = Painting.builder()
+                                .name("Starry Night")
+                                .code("starry-night")
+                                .artist("Vincent van Gogh")
+                                .year(1889)
+                                .medium("Oil")
+                                .period("Post-Impressionism")
+                                .build();
+
+                when(paintingRepository.findAllById(eq(Set.of("starry-night", "missing", "mona-lisa")))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/painting/batch?code=starry-night&code=missing&code=mona-lisa&code=starry-night"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(1)).findAllById(eq(Set.of("starry-night", "missing", "mona-lisa")));
+                List<BatchItem<Painting>> expected = List.of(
+                                BatchItem.<Painting>builder().key("starry-night").found(true).item(second).build(),
+                                BatchItem.<Painting>builder().key("missing").found(false).message("Painting with id missing not found").build(),
+                                BatchItem.<Painting>builder().key("mona-lisa").found(true).item(first).build(),
+                                BatchItem.<Painting>builder().key("starry-night").found(true).item(second).build());
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_painting_suggestions_for_a_prefix() throws Exception {
+
+                // arrange
+
+                Painting suggestion = Painting.builder()
+                                .name("Starry Night")
+                                .code("starry-night")
+                                .artist("Vincent van Gogh")
+                                .year(1889)
+                                .medium("Oil")
+                                .period("Post-Impressionism")
+                                .build();
+
+                when(paintingSuggestions.suggest(eq("van g"), eq(10))).thenReturn(List.of(suggestion));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/painting/suggest?prefix=van g"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingSuggestions, times(1)).suggest(eq("van g"), eq(10));
+                verify(paintingRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(suggestion)), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_paintings() throws Exception {
+                mockMvc.perform(get("/api/painting/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_paintings() throws Exception {
+
+                // arrange
+
+                when(paintingRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/painting/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(1)).count();
+                verify(paintingRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_paintings_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(paintingRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/painting/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(paintingRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/painting/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/painting/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_paintings() throws Exception {
+
+                // arrange
+
+                Painting row = Painting.builder()
+                                .name("Mona Lisa")
+                                .code("mona-lisa")
+                                .artist("Leonardo da Vinci")
+                                .year(1517)
+                                .medium("Oil")
+                                .period("Renaissance")
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.insert(any(), eq(Painting.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/painting/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Painting, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).insert(any(), eq(Painting.class), any(), problem.capture(), any(), any());
+                assertEquals(null, problem.getValue().apply(row));
+                assertEquals("code is required", problem.getValue().apply(new Painting())); // rows must carry their own key
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_import() throws Exception {
+                mockMvc.perform(multipart("/api/painting/import"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_import() throws Exception {
+                MockMultipartFile file = new MockMultipartFile("file", "paintings.csv", "text/csv", "code,name\n".getBytes());
+                mockMvc.perform(multipart("/api/painting/import").file(file).with(csrf()))
+                                .andExpect(status().is(403)); // only admins can import
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_import_paintings_from_csv() throws Exception {
+
+                // arrange
+
+                String csv = "code,name,artist,year,medium,period\nmona-lisa,Mona Lisa,Leonardo da Vinci,1517,Oil,Renaissance\n,No Code,,,,\n";
+                MockMultipartFile file = new MockMultipartFile("file", "paintings.csv", "text/csv", csv.getBytes());
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "code is required")));
+                when(paintingImporter.importCsv(any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(multipart("/api/painting/import").file(file).with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingImporter, times(1)).importCsv(any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_broken_csv_file_is_a_bad_request() throws Exception {
+
+                // arrange
+
+                MockMultipartFile file = new MockMultipartFile("file", "paintings.csv", "text/csv", "code\n".getBytes());
+                when(paintingImporter.importCsv(any()))
+                                .thenThrow(new BadRequestException("The header row has no name column"));
+
+                // act
+
+                mockMvc.perform(multipart("/api/painting/import").file(file).with(csrf()))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.message").value("The header row has no name column"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/painting/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"mona-lisa\", \"starry-night\", \"mona-lisa\"]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_paintings_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(paintingRepository.findExistingCodes(eq(List.of("mona-lisa", "starry-night")))).thenReturn(List.of("starry-night"));
+                when(paintingRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/painting/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[\"mona-lisa\", \"starry-night\", \"mona-lisa\"]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(1)).deleteRows(eq(List.of("starry-night"))); // only the key that exists
+                verify(paintingRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/painting?code=starry-night").with(csrf()).contentType("application/merge-patch+json").content("{\"period\": \"Post-Impressionism\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("period", "Post-Impressionism");
+                when(paintingRepository.patchChanges(eq(Painting.class), any())).thenReturn(changes);
+                when(paintingRepository.updateColumns(eq(Painting.class), eq("starry-night"), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/painting?code=starry-night")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"period\": \"Post-Impressionism\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(paintingRepository, times(1)).updateColumns(eq(Painting.class), eq("starry-night"), eq(changes));
+                verify(paintingRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Painting with id starry-night updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_painting_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(paintingRepository.patchChanges(eq(Painting.class), any())).thenReturn(Map.of("period", "Post-Impressionism"));
+                when(paintingRepository.updateColumns(eq(Painting.class), eq("starry-night"), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/painting?code=starry-night")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"period\": \"Post-Impressionism\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Painting with id starry-night not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_upsert_paintings() throws Exception {
+
+                // arrange
+
+                Painting first = Painting.builder()
+                                .name("Mona Lisa")
+                                .code("mona-lisa")
+                                .artist("Leonardo da Vinci")
+                                .year(1517)
+                                .medium("Oil")
+                                .period("Renaissance")
+                                .build();
+
+                Painting second = Painting.builder()
+                                .name("Starry Night")
+                                .code("starry-night")
+                                .artist("Vincent van Gogh")
+                                .year(1889)
+                                .medium("Oil")
+                                .period("Post-Impressionism")
+                                .build();
+
+                BulkResult result = new BulkResult(2, List.of());
+                when(bulkWriter.upsert(any(), eq(Painting.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/painting/bulk?upsert=true")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(first, second))))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bulkWriter, times(1)).upsert(any(), eq(Painting.class), any(), any(), any(), eq(paintingRepository));
+                verify(bulkWriter, times(0)).insert(any(), any(), any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
 }
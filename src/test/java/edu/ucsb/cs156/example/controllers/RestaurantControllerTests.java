@@ -22,6 +22,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.models.BatchItem;
+import java.util.Set;
+import org.mockito.ArgumentCaptor;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.services.RestaurantFuzzyIndex;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import java.util.function.Function;
+import java.util.HashMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +50,12 @@ public class RestaurantControllerTests extends ControllerTestCase {
         @MockBean
         RestaurantRepository RestaurantRepository;
 
+        @MockBean
+        RestaurantFuzzyIndex restaurantFuzzyIndex;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -195,14 +214,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                Restaurant hironori = Restaurant.builder()
-                                .name("Hironori")
-                                .code("hironori")
-                                .descript("Fresh cut noodles, hand made broth and sauce with lots of passion and technique from the 2 best Japanese ramen chefs")
-                                .yelp_rating("4.5 stars")
-                                .build();
-
-                when(RestaurantRepository.findById(eq("hironori"))).thenReturn(Optional.of(hironori));
+                when(RestaurantRepository.deleteRow(eq("hironori"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -211,8 +223,8 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(RestaurantRepository, times(1)).findById("hironori");
-                verify(RestaurantRepository, times(1)).delete(any());
+                verify(RestaurantRepository, times(1)).deleteRow("hironori");
+                verify(RestaurantRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Restaurant with id hironori deleted", json.get("message"));
@@ -224,7 +236,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(RestaurantRepository.findById(eq("orangetheory"))).thenReturn(Optional.empty());
+                when(RestaurantRepository.deleteRow(eq("orangetheory"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -233,7 +245,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(RestaurantRepository, times(1)).findById("orangetheory");
+                verify(RestaurantRepository, times(1)).deleteRow("orangetheory");
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Restaurant with id orangetheory not found", json.get("message"));
         }
@@ -308,4 +320,549 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 assertEquals("Restaurant with id orangetheory not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_restaurants() throws Exception {
+
+                // arrange
+
+                Restaurant first = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Trendy, contemporary eatery focusing on shabu-shabu hot pot and other Japanese specialties")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                Restaurant second = Restaurant.builder()
+                                .name("Ohshima")
+                                .code("ohshima")
+                                .descript("Simple nook known for its fresh seafood and omakase, plus other creative Japanese fare, beer and wine")
+                                .yelp_rating("4.5 stars")
+                                .build();
+
+                when(RestaurantRepository.findAllByOrderByCodeAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(RestaurantRepository.findByCodeGreaterThanOrderByCodeAsc(eq("ohshima"), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/restaurant/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "ohshima"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/restaurant/all?after=ohshima&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_restaurants_as_ndjson() throws Exception {
+
+                // arrange
+
+                Restaurant first = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Trendy, contemporary eatery focusing on shabu-shabu hot pot and other Japanese specialties")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                Restaurant second = Restaurant.builder()
+                                .name("Ohshima")
+                                .code("ohshima")
+                                .descript("Simple nook known for its fresh seafood and omakase, plus other creative Japanese fare, beer and wine")
+                                .yelp_rating("4.5 stars")
+                                .build();
+
+                when(RestaurantRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(0)).findAll();
+                verify(RestaurantRepository, times(1)).detach(first);
+                verify(RestaurantRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_restaurants_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/restaurant/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/restaurant/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/restaurant?code=mokkoji").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).findAll();
+                verify(RestaurantRepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_batch_of_restaurants_in_request_order() throws Exception {
+
+                // arrange
+
+                Restaurant first = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Trendy, contemporary eatery focusing on shabu-shabu hot pot and other Japanese specialties")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                Restaurant second = Restaurant.builder()
+                                .name("Ohshima")
+                                .code("ohshima")
+                                .descript("Simple nook known for its fresh seafood and omakase, plus other creative Japanese fare, beer and wine")
+                                .yelp_rating("4.5 stars")
+                                .build();
+
+                when(RestaurantRepository.findAllById(eq(Set.of("ohshima", "missing", "mokkoji")))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/restaurant/batch?code=ohshima&code=missing&code=mokkoji&code=ohshima"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).findAllById(eq(Set.of("ohshima", "missing", "mokkoji")));
+                List<BatchItem<Restaurant>> expected = List.of(
+                                BatchItem.<Restaurant>builder().key("ohshima").found(true).item(second).build(),
+                                BatchItem.<Restaurant>builder().key("missing").found(false).message("Restaurant with id missing not found").build(),
+                                BatchItem.<Restaurant>builder().key("mokkoji").found(true).item(first).build(),
+                                BatchItem.<Restaurant>builder().key("ohshima").found(true).item(second).build());
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_the_top_rated_restaurants() throws Exception {
+
+                // arrange
+
+                Restaurant mokkoji = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Korean comfort food")
+                                .yelp_rating("4.5 stars")
+                                .build();
+
+                when(RestaurantRepository.findByRatingGreaterThanEqualOrderByRatingDescCodeAsc(eq(4.0), eq(PageRequest.of(0, 3))))
+                                .thenReturn(List.of(mokkoji));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/restaurant/top?n=3&minRating=4"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).findByRatingGreaterThanEqualOrderByRatingDescCodeAsc(eq(4.0), eq(PageRequest.of(0, 3)));
+                assertEquals(mapper.writeValueAsString(List.of(mokkoji)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void top_restaurants_defaults_to_ten_of_any_rating() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/restaurant/top"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).findByRatingGreaterThanEqualOrderByRatingDescCodeAsc(eq(0.0), eq(PageRequest.of(0, 10)));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void posting_a_restaurant_stores_its_numeric_rating() throws Exception {
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/restaurant/post?name=Tanakaya&code=tanakaya&descript=Soba&yelp_rating=4.5 stars")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Restaurant> saved = ArgumentCaptor.forClass(Restaurant.class);
+                verify(RestaurantRepository, times(1)).save(saved.capture());
+                assertEquals(4.5, saved.getValue().getRating());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_rating_in_the_request_body_is_ignored_in_favor_of_yelp_rating() throws Exception {
+
+                // arrange
+
+                Restaurant mokkoji = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Korean comfort food")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                when(RestaurantRepository.findById(eq("mokkoji"))).thenReturn(Optional.of(mokkoji));
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                put("/api/restaurant?code=mokkoji")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .characterEncoding("utf-8")
+                                                .content("{\"name\":\"Mokkoji\",\"descript\":\"Korean comfort food\",\"yelp_rating\":\"3.5 stars\",\"rating\":5.0}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                assertEquals(3.5, mokkoji.getRating());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_fuzzy_search_restaurants() throws Exception {
+
+                // arrange
+
+                Restaurant tanakaya = Restaurant.builder()
+                                .name("Tanakaya")
+                                .code("tanakaya")
+                                .descript("Japanese soba and udon noodles")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                List<SearchHit<Restaurant>> hits = List.of(new SearchHit<>(tanakaya, 0.5));
+                when(restaurantFuzzyIndex.search(eq("tanakya"), eq(0.3), eq(10))).thenReturn(hits);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/restaurant/fuzzy?q=tanakya"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(restaurantFuzzyIndex, times(1)).search(eq("tanakya"), eq(0.3), eq(10));
+                verify(RestaurantRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(hits), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void fuzzy_search_passes_on_similarity_and_limit() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/restaurant/fuzzy?q=soba&minSimilarity=0.6&limit=3"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(restaurantFuzzyIndex, times(1)).search(eq("soba"), eq(0.6), eq(3));
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_restaurants() throws Exception {
+                mockMvc.perform(get("/api/restaurant/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_restaurants() throws Exception {
+
+                // arrange
+
+                when(RestaurantRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/restaurant/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).count();
+                verify(RestaurantRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_restaurants_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(RestaurantRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/restaurant/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/restaurant/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/restaurant/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_restaurants() throws Exception {
+
+                // arrange
+
+                Restaurant row = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Trendy, contemporary eatery focusing on shabu-shabu hot pot and other Japanese specialties")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.insert(any(), eq(Restaurant.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/restaurant/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<Restaurant, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).insert(any(), eq(Restaurant.class), any(), problem.capture(), any(), any());
+                assertEquals(null, problem.getValue().apply(row));
+                assertEquals("code is required", problem.getValue().apply(new Restaurant())); // rows must carry their own key
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/restaurant/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"mokkoji\", \"ohshima\", \"mokkoji\"]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_restaurants_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(RestaurantRepository.findExistingCodes(eq(List.of("mokkoji", "ohshima")))).thenReturn(List.of("ohshima"));
+                when(RestaurantRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/restaurant/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[\"mokkoji\", \"ohshima\", \"mokkoji\"]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).deleteRows(eq(List.of("ohshima"))); // only the key that exists
+                verify(RestaurantRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/restaurant?code=ohshima").with(csrf()).contentType("application/merge-patch+json").content("{\"descript\": \"Sushi and ramen\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("descript", "Sushi and ramen");
+                when(RestaurantRepository.patchChanges(eq(Restaurant.class), any())).thenReturn(changes);
+                when(RestaurantRepository.updateColumns(eq(Restaurant.class), eq("ohshima"), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/restaurant?code=ohshima")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"descript\": \"Sushi and ramen\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).updateColumns(eq(Restaurant.class), eq("ohshima"), eq(changes));
+                verify(RestaurantRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Restaurant with id ohshima updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_restaurant_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(RestaurantRepository.patchChanges(eq(Restaurant.class), any())).thenReturn(Map.of("descript", "Sushi and ramen"));
+                when(RestaurantRepository.updateColumns(eq(Restaurant.class), eq("ohshima"), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/restaurant?code=ohshima")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"descript\": \"Sushi and ramen\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Restaurant with id ohshima not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void patching_yelp_rating_also_updates_the_numeric_rating() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = new HashMap<>(Map.of("yelp_rating", "4.5 stars"));
+                when(RestaurantRepository.patchChanges(eq(Restaurant.class), any())).thenReturn(changes);
+                when(RestaurantRepository.updateColumns(eq(Restaurant.class), eq("ohshima"), any())).thenReturn(1);
+
+                // act
+
+                mockMvc.perform(
+                                patch("/api/restaurant?code=ohshima")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"yelp_rating\": \"4.5 stars\"}"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(RestaurantRepository, times(1)).updateColumns(eq(Restaurant.class), eq("ohshima"),
+                                eq(Map.of("yelp_rating", "4.5 stars", "rating", 4.5)));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_the_derived_rating() throws Exception {
+
+                // arrange
+
+                when(RestaurantRepository.patchChanges(eq(Restaurant.class), any())).thenReturn(new HashMap<>(Map.of("rating", 5.0)));
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/restaurant?code=ohshima")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\": 5.0}"))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+
+                verify(RestaurantRepository, times(0)).updateColumns(any(), any(), any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("rating cannot be changed; it is derived from yelp_rating", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_upsert_restaurants() throws Exception {
+
+                // arrange
+
+                Restaurant first = Restaurant.builder()
+                                .name("Mokkoji")
+                                .code("mokkoji")
+                                .descript("Trendy, contemporary eatery focusing on shabu-shabu hot pot and other Japanese specialties")
+                                .yelp_rating("4 stars")
+                                .build();
+
+                Restaurant second = Restaurant.builder()
+                                .name("Ohshima")
+                                .code("ohshima")
+                                .descript("Simple nook known for its fresh seafood and omakase, plus other creative Japanese fare, beer and wine")
+                                .yelp_rating("4.5 stars")
+                                .build();
+
+                BulkResult result = new BulkResult(2, List.of());
+                when(bulkWriter.upsert(any(), eq(Restaurant.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/restaurant/bulk?upsert=true")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(first, second))))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bulkWriter, times(1)).upsert(any(), eq(Restaurant.class), any(), any(), any(), eq(RestaurantRepository));
+                verify(bulkWriter, times(0)).insert(any(), any(), any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
 }
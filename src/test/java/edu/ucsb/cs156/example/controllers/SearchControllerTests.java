@@ -0,0 +1,110 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.models.SourcedHit;
+import edu.ucsb.cs156.example.models.UnifiedSearchResults;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.UnifiedSearchService;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = SearchController.class)
+public class SearchControllerTests extends ControllerTestCase {
+
+        @MockBean
+        UnifiedSearchService unifiedSearchService;
+
+        @MockBean
+        UserRepository userRepository;
+
+        @Test
+        public void logged_out_users_cannot_search() throws Exception {
+                mockMvc.perform(get("/api/search?q=dune"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_all_tables() throws Exception {
+
+                // arrange
+
+                Book dune = Book.builder()
+                                .id(1L)
+                                .title("Dune")
+                                .author("Frank Herbert")
+                                .genre("Science Fiction")
+                                .description("Spice")
+                                .build();
+
+                UnifiedSearchResults results = new UnifiedSearchResults(
+                                List.of(new SourcedHit("books", 1.0 / 61, dune)), List.of("music"));
+
+                when(unifiedSearchService.search(eq("dune"), eq(5))).thenReturn(results);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/search").param("q", " dune ").param("limit", "5"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.hits[0].source").value("books"))
+                                .andExpect(jsonPath("$.incomplete[0]").value("music"))
+                                .andReturn();
+
+                // assert
+
+                verify(unifiedSearchService, times(1)).search(eq("dune"), eq(5));
+                assertEquals(mapper.writeValueAsString(results), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void limit_is_capped() throws Exception {
+
+                // arrange
+
+                when(unifiedSearchService.search(eq("dune"), eq(1000)))
+                                .thenReturn(new UnifiedSearchResults(List.of(), List.of()));
+
+                // act
+
+                mockMvc.perform(get("/api/search?q=dune&limit=50000"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(unifiedSearchService, times(1)).search(eq("dune"), eq(1000));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void blank_query_is_a_bad_request() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/search").param("q", " "))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.message").value("q must not be blank"));
+
+                // assert
+
+                verify(unifiedSearchService, never()).search(anyString(), anyInt());
+        }
+}
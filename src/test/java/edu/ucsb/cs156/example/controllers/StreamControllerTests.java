@@ -0,0 +1,90 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.ChangeBroadcaster;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = StreamController.class)
+public class StreamControllerTests extends ControllerTestCase {
+
+        @MockBean
+        ChangeBroadcaster changeBroadcaster;
+
+        @MockBean
+        UserRepository userRepository;
+
+        @Test
+        public void logged_out_users_cannot_subscribe() throws Exception {
+                mockMvc.perform(get("/api/stream/books"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_subscribe_to_a_table() throws Exception {
+
+                // arrange
+
+                when(changeBroadcaster.subscribe(eq(Book.class))).thenReturn(new SseEmitter());
+
+                // act
+
+                mockMvc.perform(get("/api/stream/books"))
+                                .andExpect(request().asyncStarted());
+
+                // assert
+
+                verify(changeBroadcaster, times(1)).subscribe(eq(Book.class));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void stream_names_match_the_crud_paths() throws Exception {
+
+                // arrange
+
+                when(changeBroadcaster.subscribe(eq(UCSBDiningCommons.class))).thenReturn(new SseEmitter());
+
+                // act
+
+                mockMvc.perform(get("/api/stream/ucsbdiningcommons"))
+                                .andExpect(request().asyncStarted());
+
+                // assert
+
+                verify(changeBroadcaster, times(1)).subscribe(eq(UCSBDiningCommons.class));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unknown_stream_is_a_bad_request() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/stream/spaceships"))
+                                .andExpect(status().isBadRequest())
+                                .andExpect(jsonPath("$.type").value("BadRequestException"));
+
+                // assert
+
+                verify(changeBroadcaster, never()).subscribe(any(Class.class));
+        }
+}
@@ -1,5 +1,6 @@
 package edu.ucsb.cs156.example.controllers;
 
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
@@ -24,13 +25,27 @@ import static org.springframework.security.test.web.servlet.request.SecurityMock
 import java.time.LocalDateTime;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import edu.ucsb.cs156.example.services.UCSBDateIndex;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import org.mockito.ArgumentCaptor;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @WebMvcTest(controllers = UCSBDatesController.class)
 @Import(TestConfig.class)
@@ -39,6 +54,12 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
         @MockBean
         UCSBDateRepository ucsbDateRepository;
 
+        @MockBean
+        UCSBDateIndex ucsbDateIndex;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -201,13 +222,8 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 LocalDateTime ldt1 = LocalDateTime.parse("2022-01-03T00:00:00");
 
-                UCSBDate ucsbDate1 = UCSBDate.builder()
-                                .name("firstDayOfClasses")
-                                .quarterYYYYQ("20222")
-                                .localDateTime(ldt1)
-                                .build();
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.of(ucsbDate1));
+                when(ucsbDateRepository.deleteRow(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -216,8 +232,8 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
-                verify(ucsbDateRepository, times(1)).delete(any());
+                verify(ucsbDateRepository, times(1)).deleteRow(15L);
+                verify(ucsbDateRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 deleted", json.get("message"));
@@ -229,7 +245,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(ucsbDateRepository.deleteRow(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -238,7 +254,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
+                verify(ucsbDateRepository, times(1)).deleteRow(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 not found", json.get("message"));
         }
@@ -315,4 +331,477 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 assertEquals("UCSBDate with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_dates() throws Exception {
+
+                // arrange
+
+                UCSBDate first = UCSBDate.builder()
+                                .id(1L)
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                UCSBDate second = UCSBDate.builder()
+                                .id(2L)
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-03-11T00:00:00"))
+                                .build();
+
+                when(ucsbDateRepository.findAllByOrderByIdAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(ucsbDateRepository.findByIdGreaterThanOrderByIdAsc(eq(2L), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/ucsbdates/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "2"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/ucsbdates/all?after=2&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_dates_as_ndjson() throws Exception {
+
+                // arrange
+
+                UCSBDate first = UCSBDate.builder()
+                                .id(1L)
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                UCSBDate second = UCSBDate.builder()
+                                .id(2L)
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-03-11T00:00:00"))
+                                .build();
+
+                when(ucsbDateRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(0)).findAll();
+                verify(ucsbDateRepository, times(1)).detach(first);
+                verify(ucsbDateRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_dates_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/ucsbdates/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdates/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/ucsbdates?id=7").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findAll();
+                verify(ucsbDateRepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void posting_a_date_invalidates_the_etag_of_the_list() throws Exception {
+                // arrange
+
+                UCSBDate ucsbDate1 = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                when(ucsbDateRepository.save(eq(ucsbDate1))).thenReturn(ucsbDate1);
+
+                String etag = mockMvc.perform(get("/api/ucsbdates/all"))
+                                .andExpect(status().isOk())
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(
+                                post("/api/ucsbdates/post?name=firstDayOfClasses&quarterYYYYQ=20222&localDateTime=2022-01-03T00:00:00")
+                                                .with(csrf()))
+                                .andExpect(status().isOk());
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/all").header("If-None-Match", etag))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(2)).findAll();
+                assertNotEquals(etag, response.getResponse().getHeader("ETag"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_the_dates_of_a_quarter_in_a_range() throws Exception {
+
+                // arrange
+
+                UCSBDate ucsbDate = UCSBDate.builder()
+                                .id(3L)
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-06-03T00:00:00"))
+                                .build();
+
+                LocalDateTime from = LocalDateTime.parse("2022-06-01T00:00:00");
+                LocalDateTime to = LocalDateTime.parse("2022-07-01T00:00:00");
+                when(ucsbDateIndex.range(eq("20222"), eq(from), eq(to), isNull(), eq(100))).thenReturn(List.of(ucsbDate));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?quarterYYYYQ=20222&from=2022-06-01T00:00:00&to=2022-07-01T00:00:00"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateIndex, times(1)).range(eq("20222"), eq(from), eq(to), isNull(), eq(100));
+                verify(ucsbDateRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(ucsbDate)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_bounds_and_quarter_are_optional() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdates/range?quarterYYYYQ=20222"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(ucsbDateIndex, times(1)).range(eq("20222"), isNull(), isNull(), isNull(), eq(100));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_is_capped_at_the_page_size_and_continues_from_a_cursor() throws Exception {
+
+                // arrange
+
+                UCSBDate first = UCSBDate.builder().id(7L).name("firstDayOfClasses").quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-03-28T00:00:00")).build();
+                UCSBDate second = UCSBDate.builder().id(8L).name("lastDayOfClasses").quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-06-03T00:00:00")).build();
+                UCSBDateIndex.Cursor cursor = new UCSBDateIndex.Cursor(LocalDateTime.parse("2022-01-03T00:00:00"), 5L);
+                when(ucsbDateIndex.range(isNull(), isNull(), isNull(), eq(cursor), eq(2))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?after=2022-01-03T00:00,5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "2022-06-03T00:00,8")).andReturn();
+
+                // assert
+
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), response.getResponse().getContentAsString());
+
+                mockMvc.perform(get("/api/ucsbdates/range?limit=5000")).andExpect(status().isOk());
+                verify(ucsbDateIndex, times(1)).range(isNull(), isNull(), isNull(), isNull(), eq(1000));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_continues_after_the_cursor_date_is_deleted() throws Exception {
+
+                // arrange
+
+                List<UCSBDate> dates = new ArrayList<>();
+                for (long id = 1; id <= 4; id++) {
+                        dates.add(UCSBDate.builder().id(id).name("day" + id).quarterYYYYQ("20222")
+                                        .localDateTime(LocalDateTime.parse("2022-04-01T00:00:00").plusDays(id)).build());
+                }
+                when(ucsbDateRepository.findAll()).thenReturn(dates);
+                UCSBDateIndex index = new UCSBDateIndex(ucsbDateRepository);
+                when(ucsbDateIndex.range(any(), any(), any(), any(), anyInt())).thenAnswer(invocation -> index.range(
+                                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2),
+                                invocation.getArgument(3), invocation.getArgument(4)));
+
+                // act
+
+                MvcResult firstPage = mockMvc.perform(get("/api/ucsbdates/range?limit=2"))
+                                .andExpect(status().isOk()).andReturn();
+                String cursor = firstPage.getResponse().getHeader("X-Next-Cursor");
+                index.onEntityChanged(new EntityChangedEvent(UCSBDate.class, 2L, EntityChangedEvent.Operation.DELETE, null));
+                MvcResult secondPage = mockMvc.perform(get("/api/ucsbdates/range").param("after", cursor).param("limit", "2"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                assertEquals("2022-04-03T00:00,2", cursor);
+                assertEquals(mapper.writeValueAsString(dates.subList(2, 4)), secondPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_with_a_malformed_cursor_is_a_bad_request() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/range?after=5"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_ending_before_it_starts_is_a_bad_request() throws Exception {
+
+                // arrange
+
+                when(ucsbDateIndex.range(any(), any(), any(), any(), anyInt()))
+                                .thenThrow(new BadRequestException("from (2022-07-01T00:00) must not be after to (2022-06-01T00:00)"));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?from=2022-07-01T00:00:00&to=2022-06-01T00:00:00"))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("BadRequestException", json.get("type"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_upcoming_dates() throws Exception {
+
+                // arrange
+
+                LocalDateTime before = LocalDateTime.now();
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdates/upcoming?count=2"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(get("/api/ucsbdates/upcoming?quarterYYYYQ=20231"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+                verify(ucsbDateIndex, times(1)).upcoming(isNull(), now.capture(), eq(2));
+                verify(ucsbDateIndex, times(1)).upcoming(eq("20231"), any(), eq(5));
+                assertTrue(!now.getValue().isBefore(before));
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_dates() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_dates() throws Exception {
+
+                // arrange
+
+                when(ucsbDateRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).count();
+                verify(ucsbDateRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_dates_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(ucsbDateRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdates/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/ucsbdates/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/ucsbdates/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_dates() throws Exception {
+
+                // arrange
+
+                UCSBDate row = UCSBDate.builder()
+                                .id(1L)
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.create(any(), eq(UCSBDate.class), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdates/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<UCSBDate, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).create(any(), eq(UCSBDate.class), any(), problem.capture(), any());
+                assertEquals("id is assigned by the server and must be left out", problem.getValue().apply(row));
+                assertEquals(null, problem.getValue().apply(new UCSBDate())); // generated ids must be left unset
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/ucsbdates/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[1, 2, 1]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_dates_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(ucsbDateRepository.findExistingIds(eq(List.of(1L, 2L)))).thenReturn(List.of(2L));
+                when(ucsbDateRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/ucsbdates/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[1, 2, 1]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).deleteRows(eq(List.of(2L))); // only the key that exists
+                verify(ucsbDateRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/ucsbdates?id=2").with(csrf()).contentType("application/merge-patch+json").content("{\"name\": \"finals week\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("name", "finals week");
+                when(ucsbDateRepository.patchChanges(eq(UCSBDate.class), any())).thenReturn(changes);
+                when(ucsbDateRepository.updateColumns(eq(UCSBDate.class), eq(2L), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdates?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\": \"finals week\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).updateColumns(eq(UCSBDate.class), eq(2L), eq(changes));
+                verify(ucsbDateRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDate with id 2 updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_ucsbdate_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(ucsbDateRepository.patchChanges(eq(UCSBDate.class), any())).thenReturn(Map.of("name", "finals week"));
+                when(ucsbDateRepository.updateColumns(eq(UCSBDate.class), eq(2L), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdates?id=2")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\": \"finals week\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDate with id 2 not found", json.get("message"));
+        }
 }
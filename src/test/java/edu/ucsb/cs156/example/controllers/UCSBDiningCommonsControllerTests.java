@@ -1,5 +1,6 @@
 package edu.ucsb.cs156.example.controllers;
 
+import edu.ucsb.cs156.example.errors.BadRequestException;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
@@ -22,6 +23,19 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 
 import java.util.Optional;
+import java.util.List;
+import org.springframework.data.domain.PageRequest;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Pageable;
+import edu.ucsb.cs156.example.models.BatchItem;
+import java.util.Set;
+import edu.ucsb.cs156.example.models.Nearby;
+import edu.ucsb.cs156.example.services.DiningCommonsSpatialIndex;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.services.BulkWriter;
+import org.mockito.ArgumentCaptor;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,6 +43,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.isNull;
 
 @WebMvcTest(controllers = UCSBDiningCommonsController.class)
 @Import(TestConfig.class)
@@ -37,6 +52,12 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         @MockBean
         UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
 
+        @MockBean
+        DiningCommonsSpatialIndex diningCommonsSpatialIndex;
+
+        @MockBean
+        BulkWriter bulkWriter;
+
         @MockBean
         UserRepository userRepository;
 
@@ -207,17 +228,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         public void admin_can_delete_a_date() throws Exception {
                 // arrange
 
-                UCSBDiningCommons portola = UCSBDiningCommons.builder()
-                                .name("Portola")
-                                .code("portola")
-                                .hasSackMeal(true)
-                                .hasTakeOutMeal(true)
-                                .hasDiningCam(true)
-                                .latitude(34.417723)
-                                .longitude(-119.867427)
-                                .build();
-
-                when(ucsbDiningCommonsRepository.findById(eq("portola"))).thenReturn(Optional.of(portola));
+                when(ucsbDiningCommonsRepository.deleteRow(eq("portola"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -226,8 +237,8 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("portola");
-                verify(ucsbDiningCommonsRepository, times(1)).delete(any());
+                verify(ucsbDiningCommonsRepository, times(1)).deleteRow("portola");
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id portola deleted", json.get("message"));
@@ -239,7 +250,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDiningCommonsRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(ucsbDiningCommonsRepository.deleteRow(eq("munger-hall"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -248,7 +259,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("munger-hall");
+                verify(ucsbDiningCommonsRepository, times(1)).deleteRow("munger-hall");
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
         }
@@ -332,4 +343,562 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_page_through_all_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                UCSBDiningCommons second = UCSBDiningCommons.builder()
+                                .name("De La Guerra")
+                                .code("de-la-guerra")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409811)
+                                .longitude(-119.845026)
+                                .build();
+
+                when(ucsbDiningCommonsRepository.findAllByOrderByCodeAsc(eq(PageRequest.of(0, 2)))).thenReturn(List.of(first, second));
+                when(ucsbDiningCommonsRepository.findByCodeGreaterThanOrderByCodeAsc(eq("de-la-guerra"), eq(PageRequest.of(0, 2)))).thenReturn(List.of());
+
+                // act
+                MvcResult firstPage = mockMvc.perform(get("/api/ucsbdiningcommons/all?limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "de-la-guerra"))
+                                .andReturn();
+
+                MvcResult lastPage = mockMvc.perform(get("/api/ucsbdiningcommons/all?after=de-la-guerra&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(first, second)), firstPage.getResponse().getContentAsString());
+                assertEquals("[]", lastPage.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_export_all_commons_as_ndjson() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                UCSBDiningCommons second = UCSBDiningCommons.builder()
+                                .name("De La Guerra")
+                                .code("de-la-guerra")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409811)
+                                .longitude(-119.845026)
+                                .build();
+
+                when(ucsbDiningCommonsRepository.streamAll()).thenReturn(Stream.of(first, second));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all").accept("application/x-ndjson"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("application/x-ndjson"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                verify(ucsbDiningCommonsRepository, times(1)).detach(first);
+                verify(ucsbDiningCommonsRepository, times(1)).detach(second);
+                String expected = mapper.writeValueAsString(first) + "\n" + mapper.writeValueAsString(second) + "\n";
+                assertEquals(expected, response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void unchanged_commons_are_answered_with_304_without_touching_the_repository() throws Exception {
+
+                // arrange
+
+                String etag = mockMvc.perform(get("/api/ucsbdiningcommons/all"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().exists("Last-Modified"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(content().string(""));
+
+                mockMvc.perform(get("/api/ucsbdiningcommons?code=carrillo").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified());
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).findAll();
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_only_some_fields_of_the_commons() throws Exception {
+
+                // arrange
+
+                List<Map<String, Object>> rows = List.of(
+                                Map.of("code", "carrillo", "name", "Carrillo"),
+                                Map.of("code", "de-la-guerra", "name", "De La Guerra"));
+
+                when(ucsbDiningCommonsRepository.findFields(eq(UCSBDiningCommons.class), eq(List.of("code", "name")), isNull(), eq(Pageable.unpaged())))
+                                .thenReturn(rows);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all?fields=code,name"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                List<?> json = mapper.readValue(response.getResponse().getContentAsString(), List.class);
+                assertEquals(rows, json);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void sparse_fields_are_paged_by_code() throws Exception {
+
+                // arrange
+
+                List<Map<String, Object>> rows = List.of(Map.of("code", "carrillo", "name", "Carrillo"));
+
+                when(ucsbDiningCommonsRepository.findFields(eq(UCSBDiningCommons.class), eq(List.of("name")), eq("de-la-guerra"), eq(PageRequest.of(0, 1))))
+                                .thenReturn(rows);
+
+                // act
+                mockMvc.perform(get("/api/ucsbdiningcommons/all?fields=name&after=de-la-guerra&limit=1"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Next-Cursor", "carrillo"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void asking_for_an_unknown_field_is_a_bad_request() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsRepository.findFields(eq(UCSBDiningCommons.class), eq(List.of("menu")), isNull(), eq(Pageable.unpaged())))
+                                .thenThrow(new BadRequestException("UCSBDiningCommons has no field named menu"));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all?fields=menu"))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("BadRequestException", json.get("type"));
+                assertEquals("UCSBDiningCommons has no field named menu", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_a_batch_of_commons_in_request_order() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                UCSBDiningCommons second = UCSBDiningCommons.builder()
+                                .name("De La Guerra")
+                                .code("de-la-guerra")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409811)
+                                .longitude(-119.845026)
+                                .build();
+
+                when(ucsbDiningCommonsRepository.findAllById(eq(Set.of("de-la-guerra", "missing", "carrillo")))).thenReturn(List.of(first, second));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/batch?code=de-la-guerra&code=missing&code=carrillo&code=de-la-guerra"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).findAllById(eq(Set.of("de-la-guerra", "missing", "carrillo")));
+                List<BatchItem<UCSBDiningCommons>> expected = List.of(
+                                BatchItem.<UCSBDiningCommons>builder().key("de-la-guerra").found(true).item(second).build(),
+                                BatchItem.<UCSBDiningCommons>builder().key("missing").found(false).message("UCSBDiningCommons with id missing not found").build(),
+                                BatchItem.<UCSBDiningCommons>builder().key("carrillo").found(true).item(first).build(),
+                                BatchItem.<UCSBDiningCommons>builder().key("de-la-guerra").found(true).item(second).build());
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_find_nearest_commons() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-119.85"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_find_the_nearest_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons ortega = UCSBDiningCommons.builder()
+                                .name("Ortega")
+                                .code("ortega")
+                                .hasSackMeal(true)
+                                .hasTakeOutMeal(true)
+                                .hasDiningCam(true)
+                                .latitude(34.410987)
+                                .longitude(-119.84709)
+                                .build();
+
+                List<Nearby<UCSBDiningCommons>> nearest = List.of(new Nearby<>(ortega, 233.1));
+                when(diningCommonsSpatialIndex.nearest(eq(34.412724), eq(-119.848513), eq(1))).thenReturn(nearest);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.412724&lon=-119.848513&k=1"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(diningCommonsSpatialIndex, times(1)).nearest(eq(34.412724), eq(-119.848513), eq(1));
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(nearest), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearest_defaults_to_three_commons_and_caps_k() throws Exception {
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-119.85"))
+                                .andExpect(status().isOk());
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-119.85&k=1000000"))
+                                .andExpect(status().isOk());
+
+                // assert
+
+                verify(diningCommonsSpatialIndex, times(1)).nearest(eq(34.41), eq(-119.85), eq(3));
+                verify(diningCommonsSpatialIndex, times(1)).nearest(eq(34.41), eq(-119.85), eq(ApiController.MAX_PAGE_SIZE));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearest_with_a_bad_location_is_a_bad_request() throws Exception {
+
+                // arrange
+
+                when(diningCommonsSpatialIndex.nearest(eq(91.0), eq(0.0), eq(3)))
+                                .thenThrow(new BadRequestException("latitude must be between -90 and 90, got 91.0"));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=91&lon=0"))
+                                .andExpect(status().isBadRequest()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("BadRequestException", json.get("type"));
+                assertEquals("latitude must be between -90 and 90, got 91.0", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_list_the_commons_in_a_viewport() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons carrillo = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                when(diningCommonsSpatialIndex.within(eq(34.409), eq(-119.853), eq(34.411), eq(-119.846))).thenReturn(List.of(carrillo));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/within?south=34.409&west=-119.853&north=34.411&east=-119.846"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(diningCommonsSpatialIndex, times(1)).within(eq(34.409), eq(-119.853), eq(34.411), eq(-119.846));
+                assertEquals(mapper.writeValueAsString(List.of(carrillo)), response.getResponse().getContentAsString());
+        }
+
+        @Test
+        public void logged_out_users_cannot_count_commons() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/count"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_count_commons() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsRepository.count()).thenReturn(42L);
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/count"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).count();
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                assertEquals("{\"count\":42}", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void list_of_commons_carries_the_total_count() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsRepository.count()).thenReturn(7L);
+
+                // act
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/all?limit=2&withCount=true"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("X-Total-Count", "7"));
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).count();
+        }
+
+        @Test
+        public void logged_out_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/ucsbdiningcommons/bulk"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_post() throws Exception {
+                mockMvc.perform(post("/api/ucsbdiningcommons/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[]"))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_post_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons row = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                BulkResult result = new BulkResult(1, List.of(new RowError(1, "Cannot deserialize")));
+                when(bulkWriter.insert(any(), eq(UCSBDiningCommons.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdiningcommons/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[" + mapper.writeValueAsString(row) + ", 17]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                ArgumentCaptor<Function<UCSBDiningCommons, String>> problem = ArgumentCaptor.forClass(Function.class);
+                verify(bulkWriter, times(1)).insert(any(), eq(UCSBDiningCommons.class), any(), problem.capture(), any(), any());
+                assertEquals(null, problem.getValue().apply(row));
+                assertEquals("code is required", problem.getValue().apply(new UCSBDiningCommons())); // rows must carry their own key
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_bulk_delete() throws Exception {
+                mockMvc.perform(delete("/api/ucsbdiningcommons/bulk").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"carrillo\", \"de-la-guerra\", \"carrillo\"]"))
+                                .andExpect(status().is(403)); // only admins can delete
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_bulk_delete_commons_with_one_statement() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsRepository.findExistingCodes(eq(List.of("carrillo", "de-la-guerra")))).thenReturn(List.of("de-la-guerra"));
+                when(ucsbDiningCommonsRepository.deleteRows(any())).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                delete("/api/ucsbdiningcommons/bulk")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content("[\"carrillo\", \"de-la-guerra\", \"carrillo\"]"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).deleteRows(eq(List.of("de-la-guerra"))); // only the key that exists
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals(2, json.get("requested"));
+                assertEquals(1, json.get("deleted"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/ucsbdiningcommons?code=de-la-guerra").with(csrf()).contentType("application/merge-patch+json").content("{\"name\": \"De La Guerra Dining Commons\"}"))
+                                .andExpect(status().is(403)); // only admins can patch
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_changed_fields_with_one_update() throws Exception {
+
+                // arrange
+
+                Map<String, Object> changes = Map.of("name", "De La Guerra Dining Commons");
+                when(ucsbDiningCommonsRepository.patchChanges(eq(UCSBDiningCommons.class), any())).thenReturn(changes);
+                when(ucsbDiningCommonsRepository.updateColumns(eq(UCSBDiningCommons.class), eq("de-la-guerra"), eq(changes))).thenReturn(1);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdiningcommons?code=de-la-guerra")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\": \"De La Guerra Dining Commons\"}"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(1)).updateColumns(eq(UCSBDiningCommons.class), eq("de-la-guerra"), eq(changes));
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDiningCommons with id de-la-guerra updated", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_ucsbdiningcommons_that_does_not_exist() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsRepository.patchChanges(eq(UCSBDiningCommons.class), any())).thenReturn(Map.of("name", "De La Guerra Dining Commons"));
+                when(ucsbDiningCommonsRepository.updateColumns(eq(UCSBDiningCommons.class), eq("de-la-guerra"), any())).thenReturn(0);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdiningcommons?code=de-la-guerra")
+                                                .with(csrf())
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\": \"De La Guerra Dining Commons\"}"))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDiningCommons with id de-la-guerra not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_bulk_upsert_commons() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder()
+                                .name("Carrillo")
+                                .code("carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                UCSBDiningCommons second = UCSBDiningCommons.builder()
+                                .name("De La Guerra")
+                                .code("de-la-guerra")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409811)
+                                .longitude(-119.845026)
+                                .build();
+
+                BulkResult result = new BulkResult(2, List.of());
+                when(bulkWriter.upsert(any(), eq(UCSBDiningCommons.class), any(), any(), any(), any())).thenReturn(result);
+
+                // act
+
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdiningcommons/bulk?upsert=true")
+                                                .with(csrf())
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(List.of(first, second))))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(bulkWriter, times(1)).upsert(any(), eq(UCSBDiningCommons.class), any(), any(), any(), eq(ucsbDiningCommonsRepository));
+                verify(bulkWriter, times(0)).insert(any(), any(), any(), any(), any(), any());
+                assertEquals(mapper.writeValueAsString(result), response.getResponse().getContentAsString());
+        }
 }
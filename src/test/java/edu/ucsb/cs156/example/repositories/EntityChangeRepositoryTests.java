@@ -0,0 +1,116 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+
+@DataJpaTest
+@AutoConfigureJson
+class EntityChangeRepositoryTests {
+
+  @Autowired
+  private EntityChangeRepository entityChangeRepository;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private static EntityChange change(String entityId, Operation operation) {
+    return EntityChange.builder()
+        .entityType("Restaurant")
+        .entityId(entityId)
+        .operation(operation)
+        .changedAt(Instant.parse("2022-04-20T12:00:00Z"))
+        .build();
+  }
+
+  @Test
+  void test_appended_changes_are_numbered_by_the_database_in_order() {
+    entityChangeRepository.append(List.of(change("mokkoji", Operation.CREATE), change("ohshima", Operation.UPDATE)));
+    entityChangeRepository.append(List.of(change("mokkoji", Operation.DELETE)));
+
+    List<EntityChange> changes = entityChangeRepository.findBySeqGreaterThanOrderBySeqAsc(0, Pageable.unpaged());
+
+    assertEquals(List.of("mokkoji", "ohshima", "mokkoji"), changes.stream().map(EntityChange::getEntityId).toList());
+    assertEquals(List.of(Operation.CREATE, Operation.UPDATE, Operation.DELETE),
+        changes.stream().map(EntityChange::getOperation).toList());
+    assertTrue(changes.get(0).getSeq() > 0);
+    assertTrue(changes.get(0).getSeq() < changes.get(1).getSeq());
+    assertTrue(changes.get(1).getSeq() < changes.get(2).getSeq());
+    assertEquals(Instant.parse("2022-04-20T12:00:00Z"), changes.get(2).getChangedAt());
+  }
+
+  // What a consumer of /api/changes does: read everything after since, and move
+  // since to the last seq read.
+  private long poll(long since, List<EntityChange> read) {
+    List<EntityChange> changes = entityChangeRepository.findBySeqGreaterThanOrderBySeqAsc(since, Pageable.unpaged());
+    read.addAll(changes);
+    return changes.isEmpty() ? since : changes.get(changes.size() - 1).getSeq();
+  }
+
+  @Test
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  void test_a_reader_misses_no_seq_when_two_transactions_interleave() throws Exception {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    CountDownLatch firstAppended = new CountDownLatch(1);
+    CountDownLatch firstMayCommit = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      // the first transaction draws its seq and stays open
+      Future<?> first = executor.submit(() -> transaction.executeWithoutResult(status -> {
+        entityChangeRepository.append(List.of(change("mokkoji", Operation.CREATE)));
+        firstAppended.countDown();
+        try {
+          firstMayCommit.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      assertTrue(firstAppended.await(10, TimeUnit.SECONDS));
+      // the second one starts after it and would otherwise commit first
+      Future<?> second = executor.submit(() -> transaction.executeWithoutResult(
+          status -> entityChangeRepository.append(List.of(change("ohshima", Operation.CREATE)))));
+
+      List<EntityChange> read = new ArrayList<>();
+      long since = poll(0, read);
+      Thread.sleep(200);
+      since = poll(since, read);
+      assertFalse(second.isDone());
+      assertEquals(List.of(), read);
+
+      firstMayCommit.countDown();
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+      poll(since, read);
+
+      assertEquals(List.of("mokkoji", "ohshima"), read.stream().map(EntityChange::getEntityId).toList());
+      assertTrue(read.get(0).getSeq() < read.get(1).getSeq());
+    } finally {
+      firstMayCommit.countDown();
+      executor.shutdown();
+      executor.awaitTermination(10, TimeUnit.SECONDS);
+      entityChangeRepository.deleteAll();
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import edu.ucsb.cs156.example.entities.Painting;
+
+@DataJpaTest
+@AutoConfigureJson
+class InsertRepositoryTests {
+
+  @Autowired
+  private PaintingRepository paintingRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  private static Painting painting(String code, String name) {
+    return Painting.builder().code(code).name(name).artist("Vincent van Gogh").year(1889).medium("Oil")
+        .period("Post-Impressionism").build();
+  }
+
+  @Test
+  void test_new_rows_are_inserted() {
+    paintingRepository.insertAll(List.of(painting("starry-night", "Starry Night"), painting("irises", "Irises")));
+    entityManager.clear();
+
+    assertEquals("Irises", paintingRepository.findById("irises").get().getName());
+    assertEquals(2, paintingRepository.count());
+  }
+
+  @Test
+  void test_a_row_whose_key_is_stored_fails_instead_of_overwriting_it() {
+    entityManager.persistAndFlush(painting("starry-night", "Starry Night"));
+    entityManager.clear();
+
+    assertThrows(DataIntegrityViolationException.class,
+        () -> paintingRepository.insertAll(List.of(painting("starry-night", "Not Starry Night"))));
+  }
+}
@@ -0,0 +1,111 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+@DataJpaTest
+@AutoConfigureJson
+class PatchRepositoryTests {
+
+  @Autowired
+  private PaintingRepository paintingRepository;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @Autowired
+  private ObjectMapper mapper;
+
+  @BeforeEach
+  void setUp() {
+    entityManager.persistAndFlush(Painting.builder().code("starry-night").name("Starry Night")
+        .artist("Vincent van Gogh").year(1889).medium("Oil").period("Post-Impressionism").build());
+    entityManager.clear();
+  }
+
+  private JsonNode json(String json) throws Exception {
+    return mapper.readTree(json);
+  }
+
+  private int patchPainting(String code, String patch) throws Exception {
+    Map<String, Object> changes = paintingRepository.patchChanges(Painting.class, json(patch));
+    int matched = paintingRepository.updateColumns(Painting.class, code, changes);
+    entityManager.clear();
+    return matched;
+  }
+
+  @Test
+  void test_only_the_named_columns_are_written() throws Exception {
+    assertEquals(1, patchPainting("starry-night", "{\"name\": \"The Starry Night\", \"year\": 1890}"));
+
+    Painting stored = paintingRepository.findById("starry-night").get();
+    assertEquals("The Starry Night", stored.getName());
+    assertEquals(1890, stored.getYear());
+    assertEquals("Vincent van Gogh", stored.getArtist());
+    assertEquals("Oil", stored.getMedium());
+  }
+
+  @Test
+  void test_null_clears_a_column() throws Exception {
+    assertEquals(1, patchPainting("starry-night", "{\"period\": null}"));
+
+    Painting stored = paintingRepository.findById("starry-night").get();
+    assertNull(stored.getPeriod());
+    assertEquals("Starry Night", stored.getName());
+  }
+
+  @Test
+  void test_a_missing_row_matches_nothing() throws Exception {
+    assertEquals(0, patchPainting("irises", "{\"name\": \"Irises\"}"));
+    assertEquals(0, patchPainting("irises", "{}"));
+    assertEquals(1, patchPainting("starry-night", "{}"));
+  }
+
+  @Test
+  void test_bad_fields_are_rejected_before_anything_is_written() {
+    assertThrows(BadRequestException.class, () -> patchPainting("starry-night", "{\"year\": null}"));
+    assertThrows(BadRequestException.class, () -> patchPainting("starry-night", "{\"price\": 100}"));
+    assertThrows(BadRequestException.class, () -> patchPainting("starry-night", "{\"code\": \"irises\"}"));
+    assertThrows(BadRequestException.class, () -> patchPainting("starry-night", "{\"year\": \"soon\"}"));
+    assertThrows(BadRequestException.class, () -> patchPainting("starry-night", "[]"));
+
+    assertEquals(1889, paintingRepository.findById("starry-night").get().getYear());
+  }
+
+  @Test
+  void test_a_derived_column_is_written_with_the_field_it_comes_from() throws Exception {
+    entityManager.persistAndFlush(Restaurant.builder().code("freebirds").name("Freebirds").descript("Burritos")
+        .yelp_rating("4.5 stars").build());
+    entityManager.clear();
+
+    Map<String, Object> changes = restaurantRepository.patchChanges(Restaurant.class, json("{\"yelp_rating\": \"3 stars\"}"));
+    changes.put("rating", Restaurant.parseRating((String) changes.get("yelp_rating")));
+    assertEquals(1, restaurantRepository.updateColumns(Restaurant.class, "freebirds", changes));
+    entityManager.clear();
+
+    Restaurant stored = restaurantRepository.findById("freebirds").get();
+    assertEquals("3 stars", stored.getYelp_rating());
+    assertEquals(3.0, stored.getRating());
+    assertEquals("Freebirds", stored.getName());
+  }
+}
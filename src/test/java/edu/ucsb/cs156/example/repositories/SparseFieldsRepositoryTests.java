@@ -0,0 +1,83 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+@DataJpaTest
+@AutoConfigureJson
+class SparseFieldsRepositoryTests {
+
+  @Autowired
+  private PaintingRepository paintingRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  @BeforeEach
+  void setUp() {
+    for (String code : List.of("sunflowers", "irises", "starry-night")) {
+      entityManager.persist(Painting.builder().code(code).name("Name of " + code).artist("Vincent van Gogh")
+          .year(1889).medium("Oil").period("Post-Impressionism").build());
+    }
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  private static Map<String, Object> row(Object... keysAndValues) {
+    Map<String, Object> row = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      row.put((String) keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return row;
+  }
+
+  @Test
+  void test_only_the_id_and_the_named_columns_are_selected_in_id_order() {
+    List<Map<String, Object>> rows = paintingRepository.findFields(Painting.class, List.of("name", " year "), null,
+        Pageable.unpaged());
+
+    assertEquals(List.of(
+        row("code", "irises", "name", "Name of irises", "year", 1889),
+        row("code", "starry-night", "name", "Name of starry-night", "year", 1889),
+        row("code", "sunflowers", "name", "Name of sunflowers", "year", 1889)), rows);
+    assertEquals(List.of("code", "name", "year"), List.copyOf(rows.get(0).keySet()));
+  }
+
+  @Test
+  void test_a_cursor_and_page_size_select_the_next_page() {
+    List<Map<String, Object>> rows = paintingRepository.findFields(Painting.class, List.of("artist"), "irises",
+        PageRequest.of(0, 1));
+
+    assertEquals(List.of(row("code", "starry-night", "artist", "Vincent van Gogh")), rows);
+  }
+
+  @Test
+  void test_blank_names_are_skipped_and_the_id_is_not_repeated() {
+    List<Map<String, Object>> rows = paintingRepository.findFields(Painting.class, List.of("", "code", " "), "starry-night",
+        Pageable.unpaged());
+
+    assertEquals(List.of(row("code", "sunflowers")), rows);
+  }
+
+  @Test
+  void test_unknown_fields_are_rejected() {
+    assertThrows(BadRequestException.class,
+        () -> paintingRepository.findFields(Painting.class, List.of("name", "price"), null, Pageable.unpaged()));
+  }
+}
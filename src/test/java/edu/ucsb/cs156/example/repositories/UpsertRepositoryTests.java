@@ -0,0 +1,102 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.entities.Restaurant;
+
+@DataJpaTest
+@AutoConfigureJson
+class UpsertRepositoryTests {
+
+  @Autowired
+  private PaintingRepository paintingRepository;
+
+  @Autowired
+  private RestaurantRepository restaurantRepository;
+
+  @Autowired
+  private TestEntityManager entityManager;
+
+  private static Painting painting(String code, String name, int year) {
+    return Painting.builder().code(code).name(name).artist("Vincent van Gogh").year(year).medium("Oil")
+        .period("Post-Impressionism").build();
+  }
+
+  @Test
+  void test_new_rows_are_inserted() {
+    int written = paintingRepository.upsertAll(Painting.class,
+        List.of(painting("starry-night", "Starry Night", 1889), painting("irises", "Irises", 1889)));
+    entityManager.clear();
+
+    assertEquals(2, written);
+    assertEquals(2, paintingRepository.count());
+    assertEquals(painting("irises", "Irises", 1889), paintingRepository.findById("irises").get());
+  }
+
+  @Test
+  void test_a_stored_row_is_replaced_column_by_column() {
+    entityManager.persistAndFlush(painting("starry-night", "Starry Night", 1889));
+    entityManager.clear();
+
+    Painting replacement = painting("starry-night", "The Starry Night", 1890);
+    replacement.setPeriod(null);
+    paintingRepository.upsertAll(Painting.class, List.of(replacement));
+    entityManager.clear();
+
+    assertEquals(1, paintingRepository.count());
+    Painting stored = paintingRepository.findById("starry-night").get();
+    assertEquals("The Starry Night", stored.getName());
+    assertEquals(1890, stored.getYear());
+    assertNull(stored.getPeriod());
+  }
+
+  @Test
+  void test_one_batch_can_insert_and_replace_and_repeat_a_key() {
+    entityManager.persistAndFlush(painting("starry-night", "Starry Night", 1889));
+    entityManager.persistAndFlush(painting("sunflowers", "Sunflowers", 1888));
+    entityManager.clear();
+
+    paintingRepository.upsertAll(Painting.class, List.of(
+        painting("irises", "Irises", 1889),
+        painting("starry-night", "The Starry Night", 1889),
+        painting("irises", "Irises (second version)", 1890)));
+    entityManager.clear();
+
+    assertEquals(3, paintingRepository.count());
+    assertEquals("The Starry Night", paintingRepository.findById("starry-night").get().getName());
+    assertEquals("Irises (second version)", paintingRepository.findById("irises").get().getName());
+    assertEquals("Sunflowers", paintingRepository.findById("sunflowers").get().getName());
+  }
+
+  @Test
+  void test_derived_columns_are_written_with_the_row() {
+    Restaurant restaurant = Restaurant.builder().code("freebirds").name("Freebirds").descript("Burritos")
+        .yelp_rating("4.5 stars").build();
+    restaurantRepository.upsertAll(Restaurant.class, List.of(restaurant));
+    entityManager.clear();
+    assertEquals(4.5, restaurantRepository.findById("freebirds").get().getRating());
+
+    restaurant.setYelp_rating("unrated");
+    restaurantRepository.upsertAll(Restaurant.class, List.of(restaurant));
+    entityManager.clear();
+
+    Restaurant stored = restaurantRepository.findById("freebirds").get();
+    assertEquals("unrated", stored.getYelp_rating());
+    assertNull(stored.getRating());
+  }
+
+  @Test
+  void test_an_empty_batch_writes_nothing() {
+    assertEquals(0, paintingRepository.upsertAll(Painting.class, List.of()));
+  }
+}
@@ -0,0 +1,89 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Apartment;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.repositories.ApartmentRepository;
+
+class ApartmentCityCacheTests {
+
+  private ApartmentRepository repository = mock(ApartmentRepository.class);
+  private ApartmentCityCache cache = new ApartmentCityCache(repository);
+
+  private Apartment elDorado = Apartment.builder().code("el-dorado").city("Goleta").state("CA").rooms(50).build();
+  private Apartment theLoop = Apartment.builder().code("the-loop").city("Isla Vista").state("CA").rooms(20).build();
+
+  @Test
+  void test_a_city_is_read_from_the_database_once() {
+    when(repository.findByCityOrderByCodeAsc("Goleta")).thenReturn(List.of(elDorado));
+
+    assertEquals(List.of(elDorado), cache.apartmentsIn("Goleta"));
+    assertEquals(List.of(elDorado), cache.apartmentsIn("Goleta"));
+
+    verify(repository, times(1)).findByCityOrderByCodeAsc("Goleta");
+  }
+
+  @Test
+  void test_least_recently_used_cities_are_dropped() {
+    cache.apartmentsIn("city-0");
+    for (int i = 1; i <= ApartmentCityCache.CAPACITY; i++) {
+      cache.apartmentsIn("city-" + i);
+    }
+    cache.apartmentsIn("city-0");
+    cache.apartmentsIn("city-" + ApartmentCityCache.CAPACITY);
+
+    verify(repository, times(2)).findByCityOrderByCodeAsc("city-0");
+    verify(repository, times(1)).findByCityOrderByCodeAsc("city-" + ApartmentCityCache.CAPACITY);
+  }
+
+  @Test
+  void test_a_write_drops_the_old_and_new_city_of_the_apartment() {
+    when(repository.findByCityOrderByCodeAsc("Goleta")).thenReturn(List.of(elDorado));
+    when(repository.findByCityOrderByCodeAsc("Isla Vista")).thenReturn(List.of(theLoop));
+    cache.apartmentsIn("Goleta");
+    cache.apartmentsIn("Isla Vista");
+
+    Apartment moved = Apartment.builder().code("el-dorado").city("Isla Vista").state("CA").rooms(50).build();
+    cache.onEntityChanged(new EntityChangedEvent(Apartment.class, "el-dorado", EntityChangedEvent.Operation.UPDATE, moved));
+    cache.apartmentsIn("Goleta");
+    cache.apartmentsIn("Isla Vista");
+
+    verify(repository, times(2)).findByCityOrderByCodeAsc("Goleta");
+    verify(repository, times(2)).findByCityOrderByCodeAsc("Isla Vista");
+  }
+
+  @Test
+  void test_a_delete_drops_only_the_city_the_apartment_was_cached_in() {
+    when(repository.findByCityOrderByCodeAsc("Goleta")).thenReturn(List.of(elDorado));
+    when(repository.findByCityOrderByCodeAsc("Isla Vista")).thenReturn(List.of(theLoop));
+    cache.apartmentsIn("Goleta");
+    cache.apartmentsIn("Isla Vista");
+
+    cache.onEntityChanged(new EntityChangedEvent(Apartment.class, "el-dorado", EntityChangedEvent.Operation.DELETE, null));
+    cache.apartmentsIn("Goleta");
+    cache.apartmentsIn("Isla Vista");
+
+    verify(repository, times(2)).findByCityOrderByCodeAsc("Goleta");
+    verify(repository, times(1)).findByCityOrderByCodeAsc("Isla Vista");
+  }
+
+  @Test
+  void test_writes_to_other_tables_keep_the_cache() {
+    when(repository.findByCityOrderByCodeAsc("Goleta")).thenReturn(List.of(elDorado));
+    cache.apartmentsIn("Goleta");
+
+    cache.onEntityChanged(new EntityChangedEvent(String.class, "el-dorado", EntityChangedEvent.Operation.DELETE, null));
+    cache.apartmentsIn("Goleta");
+
+    verify(repository, times(1)).findByCityOrderByCodeAsc("Goleta");
+  }
+}
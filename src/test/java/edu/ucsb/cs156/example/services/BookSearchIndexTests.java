@@ -0,0 +1,90 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+
+class BookSearchIndexTests {
+
+  private BookRepository repository = mock(BookRepository.class);
+  private BookSearchIndex index = new BookSearchIndex(repository);
+
+  private Book animalFarm = book(1, "Animal Farm", "George Orwell",
+      "A story about a group of farm animals who rebel against their human farmer", "Fable");
+  private Book nineteenEightyFour = book(2, "Nineteen Eighty-Four", "George Orwell",
+      "A dystopian novel about a totalitarian state", "Dystopian fiction");
+  private Book fahrenheit = book(3, "Fahrenheit 451", "Ray Bradbury",
+      "A story set in a dystopian society that burns books", "Dystopian fiction");
+  private Book charlottesWeb = book(4, "Charlotte's Web", "E. B. White",
+      "A pig on a farm is saved by his friend, a spider", "Children's fiction");
+
+  private static Book book(long id, String title, String author, String description, String genre) {
+    return Book.builder().id(id).title(title).author(author).description(description).genre(genre).build();
+  }
+
+  private static List<Long> ids(List<SearchHit<Book>> hits) {
+    return hits.stream().map(hit -> hit.getItem().getId()).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_tokenize_splits_on_punctuation_and_lower_cases() {
+    assertEquals(List.of("nineteen", "eighty", "four", "charlotte", "s", "451"),
+        BookSearchIndex.tokenize("Nineteen Eighty-Four; Charlotte's 451!"));
+    assertEquals(List.of(), BookSearchIndex.tokenize(null));
+  }
+
+  @Test
+  void test_title_matches_outrank_description_matches() {
+    when(repository.findAll()).thenReturn(List.of(animalFarm, nineteenEightyFour, fahrenheit, charlottesWeb));
+
+    List<SearchHit<Book>> hits = index.search("farm", 10);
+
+    assertEquals(List.of(1L, 4L), ids(hits));
+    assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+  }
+
+  @Test
+  void test_books_matching_more_terms_rank_higher_and_limit_applies() {
+    when(repository.findAll()).thenReturn(List.of(animalFarm, nineteenEightyFour, fahrenheit, charlottesWeb));
+
+    assertEquals(List.of(2L, 3L, 1L), ids(index.search("Orwell dystopian", 10)));
+    assertEquals(List.of(2L), ids(index.search("Orwell dystopian", 1)));
+  }
+
+  @Test
+  void test_queries_without_matches_return_nothing() {
+    when(repository.findAll()).thenReturn(List.of(animalFarm));
+
+    assertEquals(List.of(), index.search("tolkien", 10));
+    assertEquals(List.of(), index.search("  ", 10));
+  }
+
+  @Test
+  void test_writes_update_the_index_without_reloading() {
+    when(repository.findAll()).thenReturn(List.of(animalFarm, fahrenheit));
+    assertEquals(List.of(1L), ids(index.search("orwell", 10)));
+
+    animalFarm.setAuthor("Eric Blair");
+    index.onEntityChanged(new EntityChangedEvent(Book.class, 1L, EntityChangedEvent.Operation.UPDATE, animalFarm));
+    index.onEntityChanged(new EntityChangedEvent(Book.class, 2L, EntityChangedEvent.Operation.CREATE, nineteenEightyFour));
+    index.onEntityChanged(new EntityChangedEvent(Book.class, 3L, EntityChangedEvent.Operation.DELETE, null));
+
+    assertEquals(List.of(2L), ids(index.search("orwell", 10)));
+    assertEquals(List.of(1L), ids(index.search("blair", 10)));
+    assertEquals(List.of(2L), ids(index.search("dystopian", 10)));
+    verify(repository, times(1)).findAll();
+  }
+}
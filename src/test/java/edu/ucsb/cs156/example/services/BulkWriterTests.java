@@ -0,0 +1,136 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Apartment;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.repositories.UpsertRepository;
+
+class BulkWriterTests {
+
+  private PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+  private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+  private BulkWriter bulkWriter = new BulkWriter(new ObjectMapper(), new TransactionTemplate(transactionManager),
+      eventPublisher, 2);
+
+  private List<List<String>> chunks = new ArrayList<>();
+
+  private Iterable<Apartment> saveAll(List<Apartment> rows) {
+    List<String> codes = new ArrayList<>();
+    rows.forEach(apartment -> codes.add(apartment.getCode()));
+    chunks.add(codes);
+    return new ArrayList<>(rows);
+  }
+
+  private static final Function<Apartment, String> NEEDS_CODE =
+      apartment -> apartment.getCode() == null ? "code is required" : null;
+
+  private static InputStream json(String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private BulkResult create(String json) throws IOException {
+    return bulkWriter.create(json(json), Apartment.class, Apartment::getCode, NEEDS_CODE, this::saveAll);
+  }
+
+  @Test
+  void test_rows_are_saved_in_chunks_with_a_transaction_each() throws IOException {
+    BulkResult result = create("[{\"code\":\"a\"}, {\"code\":\"b\"}, {\"code\":\"c\"}]");
+
+    assertEquals(3, result.getSaved());
+    assertEquals(List.of(), result.getErrors());
+    assertEquals(List.of(List.of("a", "b"), List.of("c")), chunks);
+    verify(transactionManager, times(2)).commit(any());
+    verify(eventPublisher, times(3)).publishEvent(any(EntityChangedEvent.class));
+  }
+
+  @Test
+  void test_bad_rows_are_reported_and_skipped() throws IOException {
+    BulkResult result = create("[{\"code\":\"a\"}, {\"name\":\"no code\"}, {\"code\":\"b\", \"rooms\":\"many\"}, 7, {\"code\":\"c\"}]");
+
+    assertEquals(2, result.getSaved());
+    assertEquals(List.of(List.of("a", "c")), chunks);
+    assertEquals(List.of(1L, 2L, 3L), result.getErrors().stream().map(RowError::getRow).toList());
+    assertEquals("code is required", result.getErrors().get(0).getMessage());
+  }
+
+  @Test
+  void test_malformed_json_stops_the_upload_after_the_saved_chunks() {
+    BadRequestException e = assertThrows(BadRequestException.class,
+        () -> create("[{\"code\":\"a\"}, {\"code\":\"b\"}, {\"code\":\"c\"}, {\"code\": "));
+
+    assertEquals(List.of(List.of("a", "b")), chunks);
+    assertEquals(true, e.getMessage().startsWith("Malformed JSON at row 3 (2 rows before it were saved)"));
+  }
+
+  @Test
+  void test_body_must_be_an_array() {
+    assertThrows(BadRequestException.class, () -> create("{\"code\":\"a\"}"));
+    assertEquals(List.of(), chunks);
+  }
+
+  @Test
+  void test_inserted_rows_whose_key_is_taken_are_reported_not_saved() throws IOException {
+    List<Collection<String>> lookedUp = new ArrayList<>();
+    Function<Collection<String>, List<String>> existing = codes -> {
+      lookedUp.add(List.copyOf(codes));
+      return codes.contains("b") ? List.of("b") : List.of();
+    };
+
+    BulkResult result = bulkWriter.insert(json("[{\"code\":\"a\"}, {\"code\":\"b\"}, {\"code\":\"c\"}, {\"code\":\"c\"}]"),
+        Apartment.class, Apartment::getCode, NEEDS_CODE, existing, this::saveAll);
+
+    assertEquals(2, result.getSaved());
+    assertEquals(List.of(List.of("a", "b"), List.of("c", "c")), lookedUp);
+    assertEquals(List.of(List.of("a"), List.of("c")), chunks);
+    assertEquals(List.of(new RowError(1, "Apartment b already exists"), new RowError(3, "Apartment c already exists")),
+        result.getErrors());
+    verify(eventPublisher, times(2)).publishEvent(any(EntityChangedEvent.class));
+  }
+
+  @Test
+  void test_upserted_rows_are_written_natively_and_published_as_creates_or_updates() throws IOException {
+    UpsertRepository repository = mock(UpsertRepository.class);
+    Function<Collection<String>, List<String>> existing = codes -> codes.contains("b") ? List.of("b") : List.of();
+
+    BulkResult result = bulkWriter.upsert(
+        json("[{\"code\":\"a\"}, {\"name\":\"no code\"}, {\"code\":\"b\"}, {\"code\":\"c\"}, {\"code\":\"c\"}]"),
+        Apartment.class, Apartment::getCode, NEEDS_CODE, existing, repository);
+
+    assertEquals(4, result.getSaved());
+    assertEquals(List.of(1L), result.getErrors().stream().map(RowError::getRow).toList());
+    verify(repository, times(2)).upsertAll(eq(Apartment.class), any());
+    ArgumentCaptor<EntityChangedEvent> events = ArgumentCaptor.forClass(EntityChangedEvent.class);
+    verify(eventPublisher, times(4)).publishEvent(events.capture());
+    assertEquals(List.of("a", "b", "c", "c"), events.getAllValues().stream().map(EntityChangedEvent::getId).toList());
+    assertEquals(List.of(EntityChangedEvent.Operation.CREATE, EntityChangedEvent.Operation.UPDATE,
+        EntityChangedEvent.Operation.CREATE, EntityChangedEvent.Operation.UPDATE),
+        events.getAllValues().stream().map(EntityChangedEvent::getOperation).toList());
+  }
+}
@@ -0,0 +1,139 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.models.ChangeNotice;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+
+class ChangeBroadcasterTests {
+
+  // Sender tasks only run when the test says so, standing in for a slow client.
+  private Queue<Runnable> pending = new ArrayDeque<>();
+  private long now = 1_000_000;
+  private ChangeBroadcaster broadcaster = new ChangeBroadcaster(pending::add, () -> now);
+  private List<ChangeNotice> received = new ArrayList<>();
+
+  private void runPending() {
+    while (!pending.isEmpty()) {
+      pending.poll().run();
+    }
+  }
+
+  private void write(Class<?> type, long id, Operation operation) {
+    broadcaster.onEntityChanged(new EntityChangedEvent(type, id, operation, "entity " + id));
+  }
+
+  @Test
+  void test_subscribers_receive_writes_to_their_table_in_order() {
+    broadcaster.subscribe(Book.class, received::add);
+
+    write(Book.class, 1, Operation.CREATE);
+    write(Music.class, 2, Operation.CREATE);
+    write(Book.class, 1, Operation.DELETE);
+    runPending();
+
+    assertEquals(2, received.size());
+    assertEquals(Operation.CREATE, received.get(0).getOperation());
+    assertEquals("entity 1", received.get(0).getEntity());
+    assertEquals(Operation.DELETE, received.get(1).getOperation());
+    assertEquals(1L, received.get(1).getId());
+    assertNull(received.get(1).getEntity());
+  }
+
+  @Test
+  void test_a_slow_subscriber_loses_the_oldest_notices_and_is_told_how_many() {
+    broadcaster.subscribe(Book.class, received::add);
+
+    for (long id = 0; id < ChangeBroadcaster.BUFFER_SIZE + 3; id++) {
+      write(Book.class, id, Operation.UPDATE);
+    }
+    runPending();
+
+    assertEquals(ChangeBroadcaster.BUFFER_SIZE + 1, received.size());
+    assertEquals(3L, received.get(0).getDropped());
+    assertEquals(3L, received.get(1).getId());
+    assertEquals((long) ChangeBroadcaster.BUFFER_SIZE + 2, received.get(received.size() - 1).getId());
+  }
+
+  @Test
+  void test_publishing_hands_off_to_one_sender_task_per_subscriber() {
+    broadcaster.subscribe(Book.class, received::add);
+    broadcaster.subscribe(Book.class, received::add);
+
+    write(Book.class, 1, Operation.CREATE);
+    write(Book.class, 2, Operation.CREATE);
+
+    assertEquals(2, pending.size());
+    assertEquals(0, received.size());
+    runPending();
+    assertEquals(4, received.size());
+  }
+
+  @Test
+  void test_cancelled_and_failing_subscribers_are_removed() {
+    ChangeBroadcaster.Subscriber cancelled = broadcaster.subscribe(Book.class, received::add);
+    broadcaster.subscribe(Book.class, notice -> {
+      throw new IOException("client went away");
+    });
+    assertEquals(2, broadcaster.subscriberCount(Book.class));
+
+    cancelled.cancel();
+    write(Book.class, 1, Operation.CREATE);
+    runPending();
+
+    assertEquals(0, broadcaster.subscriberCount(Book.class));
+    assertEquals(0, received.size());
+  }
+
+  @Test
+  void test_a_subscriber_stuck_in_a_send_is_dropped_without_holding_up_the_others() {
+    List<ChangeNotice> other = new ArrayList<>();
+    List<String> stalls = new ArrayList<>();
+    broadcaster.subscribe(Book.class, notice -> {
+      now += ChangeBroadcaster.SEND_TIMEOUT_MILLIS + 1;
+      broadcaster.dropStalled(); // the watchdog fires while this send is still blocked
+      received.add(notice);
+    }, () -> stalls.add("closed"));
+    broadcaster.subscribe(Book.class, other::add);
+
+    write(Book.class, 1, Operation.CREATE);
+    write(Book.class, 2, Operation.CREATE);
+    runPending();
+
+    assertTrue(Thread.interrupted()); // the stalled sender was interrupted
+    assertEquals(1, broadcaster.subscriberCount(Book.class));
+    assertEquals(1, received.size());
+    assertEquals(List.of("closed"), stalls);
+    assertEquals(2, other.size());
+  }
+
+  @Test
+  void test_sends_within_the_timeout_and_idle_subscribers_are_kept() {
+    broadcaster.subscribe(Book.class, notice -> {
+      now += ChangeBroadcaster.SEND_TIMEOUT_MILLIS - 1;
+      broadcaster.dropStalled();
+      received.add(notice);
+    });
+
+    write(Book.class, 1, Operation.CREATE);
+    runPending();
+    now += 10 * ChangeBroadcaster.SEND_TIMEOUT_MILLIS;
+    broadcaster.dropStalled();
+
+    assertEquals(1, broadcaster.subscriberCount(Book.class));
+    assertEquals(1, received.size());
+  }
+}
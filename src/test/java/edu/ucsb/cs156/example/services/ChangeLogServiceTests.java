@@ -0,0 +1,97 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.EntityChange;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.EntityChangedEvent.Operation;
+import edu.ucsb.cs156.example.repositories.EntityChangeRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ChangeLogServiceTests {
+
+  @Mock
+  EntityChangeRepository entityChangeRepository;
+
+  @InjectMocks
+  ChangeLogService changeLogService;
+
+  @AfterEach
+  void endTransaction() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  // What the transaction manager does around a commit or a rollback.
+  private void complete(boolean commit) {
+    List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    if (commit) {
+      synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+    }
+    int status = commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK;
+    synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<EntityChange> appended() {
+    ArgumentCaptor<List<EntityChange>> appended = ArgumentCaptor.forClass(List.class);
+    verify(entityChangeRepository).append(appended.capture());
+    return appended.getValue();
+  }
+
+  @Test
+  void test_writes_outside_a_transaction_are_appended_at_once() {
+    changeLogService.onEntityChanged(new EntityChangedEvent(Book.class, 7L, Operation.CREATE, null));
+
+    List<EntityChange> changes = appended();
+    assertEquals(1, changes.size());
+    assertEquals("Book", changes.get(0).getEntityType());
+    assertEquals("7", changes.get(0).getEntityId());
+    assertEquals(Operation.CREATE, changes.get(0).getOperation());
+  }
+
+  @Test
+  void test_the_writes_of_a_transaction_are_appended_together_just_before_it_commits() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    changeLogService.onEntityChanged(new EntityChangedEvent(Book.class, 7L, Operation.CREATE, null));
+    changeLogService.onEntityChanged(new EntityChangedEvent(Restaurant.class, "mokkoji", Operation.DELETE, null));
+    verify(entityChangeRepository, times(0)).append(any());
+    complete(true);
+
+    List<EntityChange> changes = appended();
+    assertEquals(List.of("7", "mokkoji"), changes.stream().map(EntityChange::getEntityId).toList());
+    assertEquals(Operation.DELETE, changes.get(1).getOperation());
+    assertNull(TransactionSynchronizationManager.getResource(changeLogService));
+  }
+
+  @Test
+  void test_a_rolled_back_transaction_logs_nothing() {
+    TransactionSynchronizationManager.initSynchronization();
+
+    changeLogService.onEntityChanged(new EntityChangedEvent(Book.class, 7L, Operation.UPDATE, null));
+    complete(false);
+
+    verify(entityChangeRepository, times(0)).append(any());
+    assertNull(TransactionSynchronizationManager.getResource(changeLogService));
+  }
+}
@@ -0,0 +1,41 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.errors.BadRequestException;
+
+class CsvReaderTests {
+
+  @Test
+  void test_plain_records_with_lf_and_crlf() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("a,b,c\r\n1,,3\nx,y,z"));
+    assertEquals(List.of("a", "b", "c"), reader.next());
+    assertEquals(List.of("1", "", "3"), reader.next());
+    assertEquals(List.of("x", "y", "z"), reader.next());
+    assertNull(reader.next());
+  }
+
+  @Test
+  void test_quoted_fields_may_hold_commas_quotes_and_line_breaks() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("\"Vinci, Leonardo da\",\"The \"\"Mona\"\" Lisa\",\"two\nlines\"\n\"\",end\n"));
+    assertEquals(List.of("Vinci, Leonardo da", "The \"Mona\" Lisa", "two\nlines"), reader.next());
+    assertEquals(List.of("", "end"), reader.next());
+    assertNull(reader.next());
+  }
+
+  @Test
+  void test_unterminated_quote_names_the_line_it_started_on() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("a,b\n\"c,d\ne,f\n"));
+    reader.next();
+    BadRequestException e = assertThrows(BadRequestException.class, reader::next);
+    assertEquals("Unterminated quoted field starting on line 2", e.getMessage());
+  }
+}
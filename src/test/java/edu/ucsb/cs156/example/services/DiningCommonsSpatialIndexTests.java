@@ -0,0 +1,156 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.Nearby;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+
+class DiningCommonsSpatialIndexTests {
+
+  private UCSBDiningCommonsRepository repository = mock(UCSBDiningCommonsRepository.class);
+  private DiningCommonsSpatialIndex index = new DiningCommonsSpatialIndex(repository);
+
+  private UCSBDiningCommons carrillo = commons("carrillo", 34.409953, -119.85277);
+  private UCSBDiningCommons dlg = commons("de-la-guerra", 34.409811, -119.845026);
+  private UCSBDiningCommons ortega = commons("ortega", 34.410987, -119.84709);
+  private UCSBDiningCommons portola = commons("portola", 34.417723, -119.867427);
+
+  private static UCSBDiningCommons commons(String code, Double latitude, Double longitude) {
+    return UCSBDiningCommons.builder().code(code).name(code).latitude(latitude).longitude(longitude).build();
+  }
+
+  private static List<String> codes(List<Nearby<UCSBDiningCommons>> hits) {
+    return hits.stream().map(n -> n.getItem().getCode()).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_nearest_returns_the_k_closest_in_order() {
+    when(repository.findAll()).thenReturn(List.of(carrillo, dlg, ortega, portola));
+
+    // Storke Tower
+    List<Nearby<UCSBDiningCommons>> hits = index.nearest(34.412724, -119.848513, 2);
+
+    assertEquals(List.of("ortega", "de-la-guerra"), codes(hits));
+    assertTrue(hits.get(0).getDistanceMeters() > 200 && hits.get(0).getDistanceMeters() < 270);
+  }
+
+  @Test
+  void test_nearest_matches_a_brute_force_scan() {
+    Random random = new Random(156);
+    List<UCSBDiningCommons> all = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      all.add(commons("c" + i, 34.40 + random.nextDouble() * 0.05, -119.88 + random.nextDouble() * 0.05));
+    }
+    when(repository.findAll()).thenReturn(all);
+
+    for (int q = 0; q < 20; q++) {
+      double lat = 34.38 + random.nextDouble() * 0.09;
+      double lon = -119.90 + random.nextDouble() * 0.09;
+      List<String> expected = all.stream()
+          .sorted(Comparator.comparingDouble(c -> haversine(lat, lon, c.getLatitude(), c.getLongitude())))
+          .limit(5)
+          .map(UCSBDiningCommons::getCode)
+          .collect(Collectors.toList());
+      assertEquals(expected, codes(index.nearest(lat, lon, 5)));
+    }
+  }
+
+  @Test
+  void test_nearest_works_far_from_any_commons_and_skips_commons_without_a_location() {
+    when(repository.findAll()).thenReturn(List.of(carrillo, dlg, commons("nowhere", null, null)));
+
+    // Sydney
+    List<Nearby<UCSBDiningCommons>> hits = index.nearest(-33.8688, 151.2093, 10);
+
+    assertEquals(List.of("carrillo", "de-la-guerra"), codes(hits));
+    assertTrue(hits.get(0).getDistanceMeters() > 11_000_000);
+  }
+
+  @Test
+  void test_writes_update_the_index_without_reloading() {
+    when(repository.findAll()).thenReturn(List.of(carrillo, dlg));
+    assertEquals(List.of("carrillo"), codes(index.nearest(34.409953, -119.85277, 1)));
+
+    UCSBDiningCommons moved = commons("carrillo", 34.0, -118.0);
+    index.onEntityChanged(new EntityChangedEvent(UCSBDiningCommons.class, "carrillo", EntityChangedEvent.Operation.UPDATE, moved));
+    index.onEntityChanged(new EntityChangedEvent(UCSBDiningCommons.class, "ortega", EntityChangedEvent.Operation.CREATE, ortega));
+    index.onEntityChanged(new EntityChangedEvent(UCSBDiningCommons.class, "de-la-guerra", EntityChangedEvent.Operation.DELETE, null));
+
+    assertEquals(List.of("ortega", "carrillo"), codes(index.nearest(34.409953, -119.85277, 5)));
+    assertEquals(2, index.size());
+    verify(repository, times(1)).findAll();
+  }
+
+  @Test
+  void test_an_entity_edited_in_place_is_moved_correctly() {
+    when(repository.findAll()).thenReturn(List.of(carrillo, dlg));
+    index.size();
+
+    carrillo.setLatitude(34.0);
+    carrillo.setLongitude(-118.0);
+    index.onEntityChanged(new EntityChangedEvent(UCSBDiningCommons.class, "carrillo", EntityChangedEvent.Operation.UPDATE, carrillo));
+
+    assertEquals(List.of(), index.within(34.40, -119.86, 34.42, -119.85));
+    assertEquals(List.of(carrillo), index.within(33.9, -118.1, 34.1, -117.9));
+  }
+
+  @Test
+  void test_events_for_other_tables_are_ignored() {
+    when(repository.findAll()).thenReturn(List.of(carrillo));
+    index.size();
+
+    index.onEntityChanged(new EntityChangedEvent(String.class, "ortega", EntityChangedEvent.Operation.CREATE, "ortega"));
+
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void test_within_returns_the_commons_inside_the_box() {
+    when(repository.findAll()).thenReturn(List.of(carrillo, dlg, ortega, portola));
+
+    // ortega (34.410987) is north of this box, de-la-guerra (-119.845026) east of it
+    assertEquals(List.of(carrillo), index.within(34.409, -119.853, 34.4105, -119.846));
+    assertEquals(List.of(carrillo, ortega), index.within(34.409, -119.853, 34.411, -119.846));
+  }
+
+  @Test
+  void test_within_handles_boxes_across_the_antimeridian() {
+    UCSBDiningCommons east = commons("east", 0.0, 179.5);
+    UCSBDiningCommons west = commons("west", 0.5, -179.5);
+    when(repository.findAll()).thenReturn(List.of(east, west, carrillo));
+
+    assertEquals(List.of(east, west), index.within(-1, 179, 1, -179));
+  }
+
+  @Test
+  void test_out_of_range_coordinates_are_rejected() {
+    assertThrows(BadRequestException.class, () -> index.nearest(91, 0, 1));
+    assertThrows(BadRequestException.class, () -> index.nearest(0, -181, 1));
+    assertThrows(BadRequestException.class, () -> index.within(1, 0, 0, 1));
+  }
+
+  private static double haversine(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.pow(Math.sin(dLat / 2), 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+    return 2 * DiningCommonsSpatialIndex.EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+  }
+}
@@ -0,0 +1,54 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+@DataJpaTest
+@AutoConfigureJson
+@Import(IdSequenceAligner.class)
+class IdSequenceAlignerTests {
+
+  @Autowired
+  private EntityManager entityManager;
+
+  @Autowired
+  private IdSequenceAligner aligner;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Test
+  void test_new_rows_get_ids_past_the_rows_already_in_the_table() {
+    // rows keyed before the tables used sequences, as on an existing database
+    entityManager.createNativeQuery("insert into books (id, title) values (1, 'Animal Farm'), (120, 'Fahrenheit 451')")
+        .executeUpdate();
+    entityManager.createNativeQuery(
+        "insert into users (id, email, email_verified, admin) values (7, 'phtcon@ucsb.edu', true, true)")
+        .executeUpdate();
+
+    aligner.align();
+    Book book = bookRepository.save(Book.builder().title("Dune").build());
+    User user = userRepository.save(User.builder().email("cgaucho@ucsb.edu").build());
+    entityManager.flush();
+
+    assertTrue(book.getId() > 120, "book id " + book.getId());
+    assertTrue(user.getId() > 7, "user id " + user.getId());
+    assertEquals(3, bookRepository.count());
+  }
+}
@@ -0,0 +1,202 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.MovieYear;
+import edu.ucsb.cs156.example.repositories.MovieRepository;
+
+class MovieYearIndexTests {
+
+  private MovieRepository repository = mock(MovieRepository.class);
+  private MovieYearIndex index = new MovieYearIndex(repository);
+
+  // the rows in the table, which the index reads its years and page rows from
+  private Map<String, Movie> table = new HashMap<>();
+
+  private Movie inception = movie("1375666", "Inception", "Christopher Nolan", 2010);
+  private Movie parasite = movie("6751668", "Parasite", "Bong Joon Ho", 2019);
+  private Movie interstellar = movie("0816692", "Interstellar", "Christopher Nolan", 2014);
+  private Movie memento = movie("0209144", "Memento", "Christopher Nolan", 2000);
+
+  private static Movie movie(String id, String title, String director, long year) {
+    return Movie.builder().id(id).title(title).director(director).release_year(year).build();
+  }
+
+  private static List<String> ids(List<Movie> movies) {
+    return movies.stream().map(Movie::getId).collect(Collectors.toList());
+  }
+
+  @BeforeEach
+  void setUp() {
+    when(repository.findAllYears()).thenAnswer(invocation -> table.values().stream()
+        .map(movie -> new MovieYear(movie.getId(), movie.getRelease_year())).collect(Collectors.toList()));
+    when(repository.findAllById(any())).thenAnswer(invocation -> {
+      List<Movie> found = new ArrayList<>();
+      for (String id : invocation.<Iterable<String>>getArgument(0)) {
+        if (table.containsKey(id)) {
+          found.add(table.get(id));
+        }
+      }
+      return found;
+    });
+  }
+
+  private void store(Movie... movies) {
+    for (Movie movie : movies) {
+      table.put(movie.getId(), movie);
+    }
+  }
+
+  private void write(EntityChangedEvent.Operation operation, Movie movie) {
+    store(movie);
+    index.onEntityChanged(new EntityChangedEvent(Movie.class, movie.getId(), operation, movie));
+  }
+
+  private void delete(String id) {
+    table.remove(id);
+    index.onEntityChanged(new EntityChangedEvent(Movie.class, id, EntityChangedEvent.Operation.DELETE, null));
+  }
+
+  @Test
+  void test_range_is_inclusive_and_ordered_by_year() {
+    store(parasite, memento, interstellar, inception);
+
+    assertEquals(List.of("1375666", "0816692", "6751668"), ids(index.range(2010, 2019, null)));
+    assertEquals(List.of("0209144"), ids(index.range(1990, 2009, null)));
+    assertEquals(List.of(), ids(index.range(2020, 2029, null)));
+  }
+
+  @Test
+  void test_range_can_filter_by_director() {
+    store(parasite, memento, interstellar, inception);
+
+    assertEquals(List.of("0209144", "1375666", "0816692"), ids(index.range(1900, 2100, "christopher nolan")));
+  }
+
+  @Test
+  void test_backwards_range_is_rejected() {
+    assertThrows(BadRequestException.class, () -> index.range(2019, 2010, null));
+  }
+
+  @Test
+  void test_only_the_years_are_loaded_and_only_the_matching_rows_are_read() {
+    store(parasite, memento, interstellar, inception);
+
+    index.range(2010, 2014, null);
+
+    verify(repository, times(1)).findAllYears();
+    verify(repository, times(1)).findAllById(List.of("1375666", "0816692"));
+    verify(repository, never()).findAll();
+  }
+
+  @Test
+  void test_rows_are_read_in_batches_of_the_fetch_size() {
+    for (int i = 0; i < MovieYearIndex.FETCH_SIZE + 1; i++) {
+      store(movie("m%04d".formatted(i), "Movie " + i, "Director", 2000));
+    }
+
+    assertEquals(MovieYearIndex.FETCH_SIZE + 1, index.range(2000, 2000, null).size());
+    verify(repository, times(2)).findAllById(any());
+  }
+
+  @Test
+  void test_a_row_changed_after_the_seek_is_left_out() {
+    store(memento, inception);
+    index.size();
+    table.remove("0209144");
+    store(movie("1375666", "Inception", "Christopher Nolan", 2030));
+
+    assertEquals(List.of(), ids(index.range(1900, 2020, null)));
+  }
+
+  @Test
+  void test_many_writes_keep_the_arrays_sorted() {
+    index.size();
+    for (int i = 0; i < 100; i++) {
+      write(EntityChangedEvent.Operation.CREATE, movie("m%03d".formatted(i), "Movie " + i, "Director", 1950 + (i * 37) % 70));
+    }
+    for (int i = 0; i < 100; i += 2) {
+      delete("m%03d".formatted(i));
+    }
+
+    List<Movie> all = index.range(0, 3000, null);
+    assertEquals(50, all.size());
+    assertEquals(50, index.size());
+    for (int i = 1; i < all.size(); i++) {
+      Movie a = all.get(i - 1);
+      Movie b = all.get(i);
+      assertEquals(true, a.getRelease_year() < b.getRelease_year()
+          || (a.getRelease_year() == b.getRelease_year() && a.getId().compareTo(b.getId()) < 0));
+    }
+  }
+
+  @Test
+  void test_a_large_initial_load_is_sorted_and_accepts_later_writes() {
+    for (int i = 0; i < 100; i++) {
+      store(movie("m%03d".formatted(99 - i), "Movie " + i, "Director", 1950 + (i * 37) % 70));
+    }
+    index.size();
+    write(EntityChangedEvent.Operation.CREATE, memento);
+    delete("m050");
+
+    List<Movie> all = index.range(0, 3000, null);
+    assertEquals(100, all.size());
+    for (int i = 1; i < all.size(); i++) {
+      Movie a = all.get(i - 1);
+      Movie b = all.get(i);
+      assertEquals(true, a.getRelease_year() < b.getRelease_year()
+          || (a.getRelease_year() == b.getRelease_year() && a.getId().compareTo(b.getId()) < 0));
+    }
+    assertEquals(true, ids(index.range(2000, 2000, null)).contains("0209144"));
+  }
+
+  @Test
+  void test_writes_update_the_index_without_reloading() {
+    store(inception, parasite);
+    index.size();
+
+    write(EntityChangedEvent.Operation.UPDATE, movie("1375666", "Inception", "Christopher Nolan", 2020));
+    write(EntityChangedEvent.Operation.CREATE, memento);
+    delete("6751668");
+
+    assertEquals(List.of("0209144", "1375666"), ids(index.range(1900, 2100, null)));
+    assertEquals(List.of(), ids(index.range(2010, 2019, null)));
+    verify(repository, times(1)).findAllYears();
+  }
+
+  @Test
+  void test_a_merge_patch_moves_the_indexed_movie() {
+    store(inception, parasite);
+    index.size();
+
+    store(movie("1375666", "Inception", "Christopher Nolan", 2020));
+    index.onEntityChanged(new EntityChangedEvent(Movie.class, "1375666", EntityChangedEvent.Operation.UPDATE, null,
+        Map.of("release_year", 2020L)));
+    index.onEntityChanged(new EntityChangedEvent(Movie.class, "6751668", EntityChangedEvent.Operation.UPDATE, null,
+        Map.of("title", "Gisaengchung")));
+
+    List<Movie> moved = index.range(2020, 2029, null);
+    assertEquals(List.of("1375666"), ids(moved));
+    assertEquals("Inception", moved.get(0).getTitle());
+    assertEquals(List.of("6751668"), ids(index.range(2010, 2019, null)));
+  }
+}
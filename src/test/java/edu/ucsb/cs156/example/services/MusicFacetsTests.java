@@ -0,0 +1,68 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.FacetCount;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+
+class MusicFacetsTests {
+
+  private MusicRepository repository = mock(MusicRepository.class);
+  private MusicFacets musicFacets = new MusicFacets(repository);
+
+  private Music biboNoAozora = music(1, "Bibo No Aozora", "1996", "Ryuichi Sakamoto", "Classical");
+  private Music noReturn = music(2, "No Return", "Unforgiven", "Lesserafim", "K-Pop");
+  private Music unforgiven = music(3, "Unforgiven", "Unforgiven", "Lesserafim", "K-Pop");
+
+  private static Music music(long id, String title, String album, String artist, String genre) {
+    return Music.builder().id(id).title(title).album(album).artist(artist).genre(genre).build();
+  }
+
+  @Test
+  void test_facets_count_each_value_most_common_first() {
+    when(repository.findAll()).thenReturn(List.of(biboNoAozora, noReturn, unforgiven));
+
+    Map<String, List<FacetCount>> facets = musicFacets.facets();
+
+    assertEquals(List.of("genre", "artist", "album"), List.copyOf(facets.keySet()));
+    assertEquals(List.of(new FacetCount("K-Pop", 2), new FacetCount("Classical", 1)), facets.get("genre"));
+    assertEquals(List.of(new FacetCount("Unforgiven", 2), new FacetCount("1996", 1)), facets.get("album"));
+  }
+
+  @Test
+  void test_writes_adjust_the_counts_without_reloading() {
+    when(repository.findAll()).thenReturn(List.of(biboNoAozora, noReturn));
+    musicFacets.facets();
+
+    noReturn.setGenre("Pop");
+    musicFacets.onEntityChanged(new EntityChangedEvent(Music.class, 2L, EntityChangedEvent.Operation.UPDATE, noReturn));
+    musicFacets.onEntityChanged(new EntityChangedEvent(Music.class, 3L, EntityChangedEvent.Operation.CREATE, unforgiven));
+    musicFacets.onEntityChanged(new EntityChangedEvent(Music.class, 1L, EntityChangedEvent.Operation.DELETE, null));
+
+    Map<String, List<FacetCount>> facets = musicFacets.facets();
+    assertEquals(List.of(new FacetCount("K-Pop", 1), new FacetCount("Pop", 1)), facets.get("genre"));
+    assertEquals(List.of(new FacetCount("Lesserafim", 2)), facets.get("artist"));
+    verify(repository, times(1)).findAll();
+  }
+
+  @Test
+  void test_missing_values_are_not_counted() {
+    when(repository.findAll()).thenReturn(List.of(music(4, "Untitled", null, "Unknown", null)));
+
+    Map<String, List<FacetCount>> facets = musicFacets.facets();
+
+    assertEquals(List.of(), facets.get("genre"));
+    assertEquals(List.of(new FacetCount("Unknown", 1)), facets.get("artist"));
+  }
+}
@@ -0,0 +1,191 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.errors.QueueFullException;
+import edu.ucsb.cs156.example.models.WriteTicket;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+
+class MusicWriteBehindTests {
+
+  // Flush tasks only run when the test says so, standing in for the flusher thread.
+  private Queue<Runnable> pending = new ArrayDeque<>();
+  private BulkWriter bulkWriter = mock(BulkWriter.class);
+  private MusicWriteBehind writeBehind = new MusicWriteBehind(bulkWriter, mock(MusicRepository.class), pending::add,
+      5, 3, 2);
+
+  private List<Integer> commits = new ArrayList<>();
+  private long nextId = 1;
+
+  @BeforeEach
+  void saveChunkAssignsIds() {
+    when(bulkWriter.saveChunk(eq(Music.class), any(), any(), any())).thenAnswer(invocation -> {
+      List<Music> rows = invocation.getArgument(2);
+      if (rows.stream().anyMatch(music -> "bad".equals(music.getTitle()))) {
+        throw new IllegalStateException("value too long for title");
+      }
+      rows.forEach(music -> music.setId(nextId++));
+      commits.add(rows.size());
+      return rows.size();
+    });
+  }
+
+  private static List<Music> songs(String... titles) {
+    List<Music> songs = new ArrayList<>();
+    for (String title : titles) {
+      songs.add(Music.builder().title(title).artist("Ryuichi Sakamoto").build());
+    }
+    return songs;
+  }
+
+  private void runPending() {
+    while (!pending.isEmpty()) {
+      pending.poll().run();
+    }
+  }
+
+  @Test
+  void test_rows_are_acknowledged_at_once_and_committed_on_flush() {
+    WriteTicket ticket = writeBehind.submit(songs("Merry Christmas Mr. Lawrence", "Energy Flow"));
+
+    assertEquals(WriteTicket.Status.QUEUED, ticket.getStatus());
+    assertEquals(WriteTicket.Status.QUEUED, writeBehind.status(ticket.getTicket()).getStatus());
+    assertEquals(List.of(), commits);
+
+    writeBehind.flush();
+
+    WriteTicket committed = writeBehind.status(ticket.getTicket());
+    assertEquals(WriteTicket.Status.COMMITTED, committed.getStatus());
+    assertEquals(List.of(1L, 2L), committed.getIds());
+    assertEquals(0, writeBehind.queuedRows());
+  }
+
+  @Test
+  void test_a_full_group_schedules_one_flush_that_commits_in_groups() {
+    writeBehind.submit(songs("a", "b"));
+    assertEquals(0, pending.size());
+
+    writeBehind.submit(songs("c", "d"));
+    writeBehind.submit(songs("e"));
+    assertEquals(1, pending.size());
+
+    runPending();
+
+    assertEquals(List.of(4, 1), commits); // groups are rounded up to whole tickets
+  }
+
+  @Test
+  void test_rows_that_do_not_fit_are_refused_until_the_queue_drains() {
+    writeBehind.submit(songs("a", "b", "c", "d"));
+
+    assertThrows(QueueFullException.class, () -> writeBehind.submit(songs("e", "f")));
+    runPending();
+    writeBehind.submit(songs("e", "f"));
+
+    assertEquals(2, writeBehind.queuedRows());
+  }
+
+  @Test
+  void test_a_failing_ticket_does_not_fail_the_rest_of_its_group() {
+    WriteTicket good = writeBehind.submit(songs("a"));
+    WriteTicket bad = writeBehind.submit(songs("bad"));
+
+    writeBehind.flush();
+
+    assertEquals(WriteTicket.Status.COMMITTED, writeBehind.status(good.getTicket()).getStatus());
+    assertEquals(List.of(1L), writeBehind.status(good.getTicket()).getIds());
+    assertEquals(WriteTicket.Status.FAILED, writeBehind.status(bad.getTicket()).getStatus());
+    assertEquals("value too long for title", writeBehind.status(bad.getTicket()).getMessage());
+    assertEquals(0, writeBehind.queuedRows());
+  }
+
+  @Test
+  void test_only_the_most_recent_tickets_are_kept() {
+    WriteTicket first = writeBehind.submit(songs("a"));
+    writeBehind.submit(songs("b"));
+    writeBehind.submit(songs("c"));
+
+    assertThrows(EntityNotFoundException.class, () -> writeBehind.status(first.getTicket()));
+    assertThrows(EntityNotFoundException.class, () -> writeBehind.status(99));
+  }
+
+  // The tests below go through a real BulkWriter, so the transaction and the
+  // listeners around saveAll behave as they do in the application.
+
+  private PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+  private ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+  private MusicRepository musicRepository = mock(MusicRepository.class);
+  private MusicWriteBehind transactional = new MusicWriteBehind(
+      new BulkWriter(new ObjectMapper(), new TransactionTemplate(transactionManager), eventPublisher, 500),
+      musicRepository, pending::add, 5, 3, 2);
+
+  @BeforeEach
+  void saveAllAssignsIds() {
+    when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+    when(musicRepository.saveAll(any())).thenAnswer(invocation -> {
+      List<Music> rows = invocation.getArgument(0);
+      rows.forEach(music -> music.setId(nextId++));
+      return rows;
+    });
+  }
+
+  @Test
+  void test_a_listener_that_throws_rolls_back_the_group_and_each_ticket_is_retried_once() {
+    doThrow(new IllegalStateException("change log unavailable")).doNothing()
+        .when(eventPublisher).publishEvent(any(Object.class));
+    WriteTicket first = transactional.submit(songs("a"));
+    WriteTicket second = transactional.submit(songs("b"));
+
+    transactional.flush();
+
+    verify(transactionManager).rollback(any());
+    verify(transactionManager, times(2)).commit(any());
+    verify(musicRepository, times(3)).saveAll(any());
+    assertEquals(WriteTicket.Status.COMMITTED, transactional.status(first.getTicket()).getStatus());
+    assertEquals(List.of(3L), transactional.status(first.getTicket()).getIds());
+    assertEquals(WriteTicket.Status.COMMITTED, transactional.status(second.getTicket()).getStatus());
+    assertEquals(List.of(4L), transactional.status(second.getTicket()).getIds());
+    assertEquals(0, transactional.queuedRows());
+  }
+
+  @Test
+  void test_a_group_whose_commit_fails_is_not_retried() {
+    doThrow(new TransactionSystemException("connection lost during commit"))
+        .when(transactionManager).commit(any());
+    WriteTicket first = transactional.submit(songs("a"));
+    WriteTicket second = transactional.submit(songs("b"));
+
+    transactional.flush();
+
+    verify(musicRepository, times(1)).saveAll(any());
+    assertEquals(WriteTicket.Status.FAILED, transactional.status(first.getTicket()).getStatus());
+    assertEquals(WriteTicket.Status.FAILED, transactional.status(second.getTicket()).getStatus());
+    assertEquals("connection lost during commit", transactional.status(second.getTicket()).getMessage());
+    assertEquals(0, transactional.queuedRows());
+  }
+}
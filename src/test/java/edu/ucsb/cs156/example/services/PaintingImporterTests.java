@@ -0,0 +1,192 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.BulkResult;
+import edu.ucsb.cs156.example.models.RowError;
+import edu.ucsb.cs156.example.repositories.PaintingRepository;
+
+class PaintingImporterTests {
+
+  private BulkWriter bulkWriter = mock(BulkWriter.class);
+  private ExecutorService workers = Executors.newFixedThreadPool(2);
+  private PaintingRepository paintingRepository = mock(PaintingRepository.class);
+  private PaintingImporter importer = new PaintingImporter(bulkWriter, paintingRepository, workers, 2, 2);
+
+  private List<List<String>> saved = new ArrayList<>();
+
+  private static BulkWriter realBulkWriter() {
+    return new BulkWriter(new ObjectMapper(), new TransactionTemplate(mock(PlatformTransactionManager.class)),
+        mock(ApplicationEventPublisher.class), 2);
+  }
+
+  @AfterEach
+  void shutdown() {
+    workers.shutdownNow();
+  }
+
+  @SuppressWarnings("unchecked")
+  private BulkResult importCsv(String csv) throws IOException {
+    when(bulkWriter.insertChunk(eq(Painting.class), any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+      List<Painting> chunk = invocation.getArgument(2);
+      saved.add(chunk.stream().map(Painting::getCode).collect(Collectors.toList()));
+      return chunk.size();
+    });
+    InputStream in = new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    return importer.importCsv(in);
+  }
+
+  @Test
+  void test_rows_are_saved_in_file_order_a_chunk_at_a_time() throws IOException {
+    BulkResult result = importCsv("""
+        code,name,artist,year,medium,period
+        mona-lisa,Mona Lisa,Leonardo da Vinci,1517,Oil,Renaissance
+        starry-night,Starry Night,Vincent van Gogh,1889,Oil,Post-Impressionism
+
+        the-scream,The Scream,Edvard Munch,1893,Tempera,Expressionism
+        """);
+
+    assertEquals(3, result.getSaved());
+    assertEquals(List.of(), result.getErrors());
+    assertEquals(List.of(List.of("mona-lisa", "starry-night"), List.of("the-scream")), saved);
+  }
+
+  @Test
+  void test_columns_may_come_in_any_order_and_be_left_out() throws IOException {
+    importCsv("\uFEFFName,CODE\n\"Girl with a Pearl Earring\",pearl-earring\n");
+
+    assertEquals(List.of(List.of("pearl-earring")), saved);
+    verify(bulkWriter).insertChunk(eq(Painting.class), any(),
+        eq(List.of(Painting.builder().code("pearl-earring").name("Girl with a Pearl Earring").artist("").medium("").period("").build())),
+        eq(List.of(0L)), any(), any(), any());
+  }
+
+  @Test
+  void test_bad_rows_are_reported_and_skipped() throws IOException {
+    BulkResult result = importCsv("""
+        code,name,year
+        ,No Code,1900
+        no-name,,1900
+        guernica,Guernica,1937
+        bad-year,Bad Year,nineteen hundred
+        """);
+
+    assertEquals(1, result.getSaved());
+    assertEquals(List.of(List.of("guernica")), saved);
+    assertEquals(List.of(
+        new RowError(0, "code is required"),
+        new RowError(1, "name is required"),
+        new RowError(3, "year must be a whole number, not 'nineteen hundred'")), result.getErrors());
+  }
+
+  @Test
+  void test_header_must_name_the_required_columns() {
+    BadRequestException e = assertThrows(BadRequestException.class, () -> importCsv("code,artist\nx,y\n"));
+    assertEquals(true, e.getMessage().startsWith("The header row has no name column"));
+    verify(bulkWriter, never()).insertChunk(any(), any(), any(), any(), any(), any(), any());
+  }
+
+  @Test
+  void test_a_broken_file_stops_the_import_and_says_how_much_was_saved() {
+    BadRequestException e = assertThrows(BadRequestException.class,
+        () -> importCsv("code,name\na,A\nb,B\nc,C\nd,D\ne,E\n\"f,F\n"));
+    assertEquals("Unterminated quoted field starting on line 7 (2 rows before it were saved)", e.getMessage());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void test_paintings_are_inserted_not_merged() throws IOException {
+    importCsv("code,name\nmona-lisa,Mona Lisa\n");
+
+    ArgumentCaptor<Function<List<Painting>, Iterable<Painting>>> saveAll = ArgumentCaptor.forClass(Function.class);
+    verify(bulkWriter).insertChunk(eq(Painting.class), any(), any(), any(), any(), any(), saveAll.capture());
+    List<Painting> rows = List.of(Painting.builder().code("mona-lisa").name("Mona Lisa").build());
+    saveAll.getValue().apply(rows);
+    verify(paintingRepository).insertAll(rows);
+    verify(paintingRepository, never()).saveAll(any());
+  }
+
+  @Test
+  void test_stored_codes_are_reported_and_the_rest_are_saved() throws IOException {
+    PaintingImporter importer = new PaintingImporter(realBulkWriter(), paintingRepository, workers, 2, 2);
+    when(paintingRepository.findExistingCodes(any()))
+        .thenAnswer(invocation -> invocation.<List<String>>getArgument(0).stream()
+            .filter(code -> code.equals("mona-lisa") || saved.stream().anyMatch(chunk -> chunk.contains(code)))
+            .collect(Collectors.toList()));
+    when(paintingRepository.insertAll(any())).thenAnswer(invocation -> {
+      List<Painting> chunk = invocation.getArgument(0);
+      saved.add(chunk.stream().map(Painting::getCode).collect(Collectors.toList()));
+      return chunk;
+    });
+
+    BulkResult result = importer.importCsv(new ByteArrayInputStream(
+        "code,name\na,A\nmona-lisa,Mona Lisa\nc,C\nd,D\nd,D again\n".getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals(3, result.getSaved());
+    assertEquals(List.of(List.of("a"), List.of("c", "d")), saved);
+    assertEquals(List.of(new RowError(1, "Painting mona-lisa already exists"), new RowError(4, "Painting d already exists")),
+        result.getErrors());
+  }
+
+  @Test
+  void test_a_code_stored_concurrently_is_looked_up_again() throws IOException {
+    when(bulkWriter.insertChunk(eq(Painting.class), any(), any(), any(), any(), any(), any()))
+        .thenThrow(new DataIntegrityViolationException("could not execute statement",
+            new SQLException("Unique index or primary key violation: mona-lisa")))
+        .thenAnswer(invocation -> {
+          invocation.<List<RowError>>getArgument(5).add(new RowError(0, "Painting mona-lisa already exists"));
+          return 1;
+        });
+
+    BulkResult result = importer.importCsv(new ByteArrayInputStream(
+        "code,name\nmona-lisa,Mona Lisa\nb,B\n".getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals(1, result.getSaved());
+    assertEquals(List.of(new RowError(0, "Painting mona-lisa already exists")), result.getErrors());
+  }
+
+  @Test
+  void test_a_chunk_that_fails_twice_stops_the_import_and_says_how_much_was_saved() {
+    when(bulkWriter.insertChunk(eq(Painting.class), any(), any(), any(), any(), any(), any()))
+        .thenReturn(2)
+        .thenThrow(new DataIntegrityViolationException("could not execute statement",
+            new SQLException("Unique index or primary key violation: mona-lisa")));
+    InputStream in = new ByteArrayInputStream("code,name\na,A\nb,B\nmona-lisa,Mona Lisa\nd,D\n"
+        .getBytes(StandardCharsets.UTF_8));
+
+    BadRequestException e = assertThrows(BadRequestException.class, () -> importer.importCsv(in));
+    assertEquals("Rows 2 to 3 were not saved: Unique index or primary key violation: mona-lisa"
+        + " (2 rows before them were saved)", e.getMessage());
+  }
+}
@@ -0,0 +1,80 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Painting;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.repositories.PaintingRepository;
+
+class PaintingSuggestionsTests {
+
+  private PaintingRepository repository = mock(PaintingRepository.class);
+  private PaintingSuggestions suggestions = new PaintingSuggestions(repository);
+
+  private Painting monaLisa = painting("mona-lisa", "Mona Lisa", "Leonardo da Vinci");
+  private Painting starryNight = painting("starry-night", "Starry Night", "Vincent van Gogh");
+  private Painting sunflowers = painting("sunflowers", "Sunflowers", "Vincent van Gogh");
+  private Painting nighthawks = painting("nighthawks", "Nighthawks", "Edward Hopper");
+
+  private static Painting painting(String code, String name, String artist) {
+    return Painting.builder().code(code).name(name).artist(artist).build();
+  }
+
+  private static List<String> codes(List<Painting> paintings) {
+    return paintings.stream().map(Painting::getCode).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_prefix_matches_names_and_artists_case_insensitively() {
+    when(repository.findAll()).thenReturn(List.of(monaLisa, starryNight, sunflowers, nighthawks));
+
+    assertEquals(List.of("starry-night", "sunflowers"), codes(suggestions.suggest("S", 10)));
+    assertEquals(List.of("starry-night", "sunflowers"), codes(suggestions.suggest("van  GO", 10)));
+    assertEquals(List.of("mona-lisa"), codes(suggestions.suggest("leo", 10)));
+  }
+
+  @Test
+  void test_matches_at_the_start_come_before_matches_inside() {
+    when(repository.findAll()).thenReturn(List.of(monaLisa, starryNight, sunflowers, nighthawks));
+
+    assertEquals(List.of("nighthawks", "starry-night"), codes(suggestions.suggest("night", 10)));
+    assertEquals(List.of("nighthawks"), codes(suggestions.suggest("night", 1)));
+  }
+
+  @Test
+  void test_each_painting_is_suggested_once() {
+    when(repository.findAll()).thenReturn(List.of(painting("vv", "Vincent", "Vincent van Gogh")));
+
+    assertEquals(List.of("vv"), codes(suggestions.suggest("vin", 10)));
+  }
+
+  @Test
+  void test_blank_prefix_suggests_nothing() {
+    assertEquals(List.of(), suggestions.suggest("  ", 10));
+  }
+
+  @Test
+  void test_writes_update_the_suggestions_without_reloading() {
+    when(repository.findAll()).thenReturn(List.of(monaLisa, starryNight));
+    suggestions.size();
+
+    starryNight.setName("The Starry Night");
+    suggestions.onEntityChanged(new EntityChangedEvent(Painting.class, "starry-night", EntityChangedEvent.Operation.UPDATE, starryNight));
+    suggestions.onEntityChanged(new EntityChangedEvent(Painting.class, "nighthawks", EntityChangedEvent.Operation.CREATE, nighthawks));
+    suggestions.onEntityChanged(new EntityChangedEvent(Painting.class, "mona-lisa", EntityChangedEvent.Operation.DELETE, null));
+
+    assertEquals(List.of("starry-night"), codes(suggestions.suggest("the", 10)));
+    assertEquals(List.of(), codes(suggestions.suggest("mona", 10)));
+    assertEquals(List.of("nighthawks", "starry-night"), codes(suggestions.suggest("night", 10)));
+    verify(repository, times(1)).findAll();
+  }
+}
@@ -0,0 +1,130 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+
+class RestaurantFuzzyIndexTests {
+
+  private RestaurantRepository repository = mock(RestaurantRepository.class);
+  private RestaurantFuzzyIndex index = new RestaurantFuzzyIndex(repository);
+
+  private Restaurant tanakaya = restaurant("tanakaya", "Tanakaya",
+      "Japanese soba and udon noodles are the draw at this popular, compact eatery with a casual atmosphere");
+  private Restaurant mokkoji = restaurant("mokkoji", "Mokkoji", "Korean comfort food");
+  private Restaurant freebirds = restaurant("freebirds", "Freebirds World Burrito", "Build your own burrito");
+  private Restaurant habit = restaurant("habit", "The Habit Burger Grill", "Charburgers and sandwiches");
+
+  private static Restaurant restaurant(String code, String name, String descript) {
+    return Restaurant.builder().code(code).name(name).descript(descript).yelp_rating("4 stars").build();
+  }
+
+  private static List<String> codes(List<SearchHit<Restaurant>> hits) {
+    return hits.stream().map(hit -> hit.getItem().getCode()).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_trigrams_pad_words_and_fold_case_and_punctuation() {
+    int s = 19;
+    int o = 15;
+    int b = 2;
+    int a = 1;
+    int[] expected = {
+        (0 * 37 + s) * 37 + o,
+        (o * 37 + b) * 37 + a,
+        (b * 37 + a) * 37 + 0,
+        (s * 37 + o) * 37 + b,
+    };
+    Arrays.sort(expected);
+    assertArrayEquals(expected, RestaurantFuzzyIndex.trigrams("  SOBA!"));
+    assertEquals(0, RestaurantFuzzyIndex.trigrams("?!").length);
+    assertEquals(0, RestaurantFuzzyIndex.trigrams(null).length);
+  }
+
+  @Test
+  void test_misspelled_names_are_found() {
+    when(repository.findAll()).thenReturn(List.of(tanakaya, mokkoji, freebirds, habit));
+
+    List<SearchHit<Restaurant>> hits = index.search("tanakya", 0.3, 10);
+
+    assertEquals(List.of("tanakaya"), codes(hits));
+    assertEquals(0.5, hits.get(0).getScore(), 1e-9);
+    assertEquals(List.of("mokkoji"), codes(index.search("mokoji", 0.3, 10)));
+    assertEquals(List.of("habit"), codes(index.search("habit burgr", 0.3, 10)));
+  }
+
+  @Test
+  void test_descriptions_match_at_half_weight() {
+    when(repository.findAll()).thenReturn(List.of(tanakaya, mokkoji, freebirds, habit));
+
+    List<SearchHit<Restaurant>> hits = index.search("noodle", 0.3, 10);
+
+    assertEquals(List.of("tanakaya"), codes(hits));
+    assertEquals(0.5 * 5 / 6, hits.get(0).getScore(), 1e-9);
+    assertEquals(List.of(), codes(index.search("noodle", 0.6, 10)));
+  }
+
+  @Test
+  void test_unrelated_queries_find_nothing() {
+    when(repository.findAll()).thenReturn(List.of(tanakaya, mokkoji, freebirds, habit));
+
+    assertEquals(List.of(), codes(index.search("xyz", 0.3, 10)));
+    assertEquals(List.of(), codes(index.search("  ", 0.3, 10)));
+  }
+
+  @Test
+  void test_only_matching_documents_are_scored_and_ties_go_to_the_lower_code() {
+    List<Restaurant> restaurants = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      restaurants.add(restaurant("r%03d".formatted(i), i % 100 == 0 ? "Soba House" : "Grill " + i, "Burgers"));
+    }
+    restaurants.add(restaurant("udon", "Udon Bar", "Soba house favourites"));
+    when(repository.findAll()).thenReturn(restaurants);
+
+    List<SearchHit<Restaurant>> hits = index.search("soba house", 0.3, 3);
+
+    assertEquals(List.of("r000", "r100", "r200"), codes(hits));
+    assertEquals(1.0, hits.get(0).getScore(), 1e-9);
+    assertEquals(List.of("r000", "r100", "r200", "r300", "r400", "udon"), codes(index.search("soba house", 0.3, 10)));
+  }
+
+  @Test
+  void test_similarity_must_be_in_range() {
+    assertThrows(BadRequestException.class, () -> index.search("soba", 0, 10));
+    assertThrows(BadRequestException.class, () -> index.search("soba", 1.5, 10));
+  }
+
+  @Test
+  void test_writes_update_the_postings_and_reuse_document_numbers() {
+    when(repository.findAll()).thenReturn(List.of(tanakaya, mokkoji));
+    index.size();
+
+    mokkoji.setName("Mokkoji Korean Kitchen");
+    index.onEntityChanged(new EntityChangedEvent(Restaurant.class, "mokkoji", EntityChangedEvent.Operation.UPDATE, mokkoji));
+    index.onEntityChanged(new EntityChangedEvent(Restaurant.class, "tanakaya", EntityChangedEvent.Operation.DELETE, null));
+    index.onEntityChanged(new EntityChangedEvent(Restaurant.class, "freebirds", EntityChangedEvent.Operation.CREATE, freebirds));
+
+    assertEquals(List.of(), codes(index.search("tanakya", 0.3, 10)));
+    assertEquals(List.of("mokkoji"), codes(index.search("korean kitchen", 0.3, 10)));
+    assertEquals(List.of("freebirds"), codes(index.search("burito", 0.3, 10)));
+    assertEquals(2, index.size());
+    verify(repository, times(1)).findAll();
+  }
+}
@@ -0,0 +1,70 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import edu.ucsb.cs156.example.entities.Backfill;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.repositories.BackfillRepository;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+
+@ExtendWith(MockitoExtension.class)
+class RestaurantRatingBackfillTests {
+
+  @Mock
+  RestaurantRepository restaurantRepository;
+
+  @Mock
+  BackfillRepository backfillRepository;
+
+  @InjectMocks
+  RestaurantRatingBackfill restaurantRatingBackfill;
+
+  @Test
+  void test_parse_rating_takes_the_first_plausible_number() {
+    assertEquals(4.0, Restaurant.parseRating("4 stars"));
+    assertEquals(4.5, Restaurant.parseRating("rated 4.5/5"));
+    assertEquals(null, Restaurant.parseRating("four stars"));
+    assertEquals(null, Restaurant.parseRating("10 out of 10"));
+    assertEquals(null, Restaurant.parseRating(null));
+  }
+
+  @Test
+  void test_backfill_derives_the_rating_of_unrated_rows_and_records_that_it_ran() {
+    Restaurant unrated = new Restaurant("mokkoji", "Mokkoji", "Korean comfort food", "4.5 stars", null);
+    Restaurant unparseable = new Restaurant("ohshima", "Ohshima", "Japanese", "four stars", null);
+    when(restaurantRepository.findUnrated()).thenReturn(List.of(unrated, unparseable));
+
+    restaurantRatingBackfill.backfill();
+
+    assertEquals(4.5, unrated.getRating());
+    assertEquals(null, unparseable.getRating());
+    verify(restaurantRepository, times(1)).saveAll(List.of(unrated)); // rows with no rating are left alone
+    ArgumentCaptor<Backfill> done = ArgumentCaptor.forClass(Backfill.class);
+    verify(backfillRepository, times(1)).save(done.capture());
+    assertEquals(RestaurantRatingBackfill.NAME, done.getValue().getName());
+  }
+
+  @Test
+  void test_backfill_does_nothing_once_it_has_run() {
+    when(backfillRepository.existsById(RestaurantRatingBackfill.NAME)).thenReturn(true);
+
+    restaurantRatingBackfill.backfill();
+
+    verify(restaurantRepository, never()).findUnrated();
+    verify(backfillRepository, never()).save(any());
+  }
+}
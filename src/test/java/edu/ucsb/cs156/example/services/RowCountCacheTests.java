@@ -0,0 +1,59 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+
+class RowCountCacheTests {
+
+  private RowCountCache rowCountCache = new RowCountCache(60);
+  private AtomicLong counted = new AtomicLong();
+
+  private long countBooks() {
+    counted.incrementAndGet();
+    return 3;
+  }
+
+  @Test
+  void test_count_is_reused_within_the_ttl() {
+    assertEquals(3, rowCountCache.rowCount(Book.class, this::countBooks));
+    assertEquals(3, rowCountCache.rowCount(Book.class, this::countBooks));
+    assertEquals(1, counted.get());
+  }
+
+  @Test
+  void test_creates_and_deletes_adjust_the_cached_count_of_their_table_only() {
+    rowCountCache.rowCount(Book.class, this::countBooks);
+    rowCountCache.rowCount(Music.class, () -> 5);
+
+    rowCountCache.onEntityChanged(new EntityChangedEvent(Book.class, 4L, EntityChangedEvent.Operation.CREATE, null));
+    rowCountCache.onEntityChanged(new EntityChangedEvent(Book.class, 5L, EntityChangedEvent.Operation.CREATE, null));
+    rowCountCache.onEntityChanged(new EntityChangedEvent(Book.class, 1L, EntityChangedEvent.Operation.DELETE, null));
+    rowCountCache.onEntityChanged(new EntityChangedEvent(Book.class, 2L, EntityChangedEvent.Operation.UPDATE, null));
+
+    assertEquals(4, rowCountCache.rowCount(Book.class, this::countBooks));
+    assertEquals(5, rowCountCache.rowCount(Music.class, () -> 6));
+    assertEquals(1, counted.get());
+  }
+
+  @Test
+  void test_writes_before_the_first_count_are_ignored() {
+    rowCountCache.onEntityChanged(new EntityChangedEvent(Book.class, 4L, EntityChangedEvent.Operation.CREATE, null));
+
+    assertEquals(3, rowCountCache.rowCount(Book.class, this::countBooks));
+  }
+
+  @Test
+  void test_zero_ttl_counts_every_time() {
+    RowCountCache uncached = new RowCountCache(0);
+    uncached.rowCount(Book.class, this::countBooks);
+    uncached.rowCount(Book.class, this::countBooks);
+    assertEquals(2, counted.get());
+  }
+}
@@ -0,0 +1,45 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.models.TableVersion;
+
+class TableVersionServiceTests {
+
+  private TableVersionService tableVersionService = new TableVersionService();
+
+  @Test
+  void test_untouched_table_is_at_version_zero() {
+    TableVersion version = tableVersionService.getVersion(Book.class);
+    assertEquals(0, version.getVersion());
+    assertEquals(version, tableVersionService.getVersion(Book.class));
+  }
+
+  @Test
+  void test_each_write_bumps_only_its_own_table() {
+    TableVersion books = tableVersionService.getVersion(Book.class);
+    TableVersion music = tableVersionService.getVersion(Music.class);
+
+    tableVersionService.onEntityChanged(new EntityChangedEvent(Book.class, 1L, EntityChangedEvent.Operation.CREATE, null));
+    tableVersionService.onEntityChanged(new EntityChangedEvent(Book.class, 1L, EntityChangedEvent.Operation.DELETE, null));
+
+    TableVersion updated = tableVersionService.getVersion(Book.class);
+    assertEquals(2, updated.getVersion());
+    assertNotEquals(books.getEtag(), updated.getEtag());
+    assertEquals(music, tableVersionService.getVersion(Music.class));
+  }
+
+  @Test
+  void test_etag_is_a_strong_quoted_tag_naming_the_table() {
+    String etag = tableVersionService.getVersion(Book.class).getEtag();
+    assertTrue(etag.startsWith("\"book-"));
+    assertTrue(etag.endsWith("-0\""));
+  }
+}
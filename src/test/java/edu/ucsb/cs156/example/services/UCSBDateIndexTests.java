@@ -0,0 +1,122 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.errors.BadRequestException;
+import edu.ucsb.cs156.example.models.EntityChangedEvent;
+import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+
+class UCSBDateIndexTests {
+
+  private UCSBDateRepository repository = mock(UCSBDateRepository.class);
+  private UCSBDateIndex index = new UCSBDateIndex(repository);
+
+  private UCSBDate springStart = date(1, "20222", "firstDayOfClasses", "2022-03-28T00:00:00");
+  private UCSBDate springEnd = date(2, "20222", "lastDayOfClasses", "2022-06-03T00:00:00");
+  private UCSBDate summerStart = date(3, "20223", "firstDayOfClasses", "2022-06-20T00:00:00");
+  private UCSBDate fallStart = date(4, "20224", "firstDayOfClasses", "2022-09-22T00:00:00");
+  private UCSBDate sameTime = date(5, "20224", "convocation", "2022-09-22T00:00:00");
+
+  private static UCSBDate date(long id, String quarterYYYYQ, String name, String localDateTime) {
+    return UCSBDate.builder()
+        .id(id)
+        .quarterYYYYQ(quarterYYYYQ)
+        .name(name)
+        .localDateTime(LocalDateTime.parse(localDateTime))
+        .build();
+  }
+
+  private static LocalDateTime at(String localDateTime) {
+    return LocalDateTime.parse(localDateTime);
+  }
+
+  @Test
+  void test_range_is_inclusive_from_and_exclusive_to() {
+    when(repository.findAll()).thenReturn(List.of(fallStart, springEnd, summerStart, springStart));
+
+    assertEquals(List.of(springEnd, summerStart),
+        index.range(null, at("2022-06-03T00:00:00"), at("2022-09-22T00:00:00"), null, 100));
+  }
+
+  @Test
+  void test_range_can_be_limited_to_one_quarter_and_left_open() {
+    when(repository.findAll()).thenReturn(List.of(fallStart, springEnd, summerStart, springStart));
+
+    assertEquals(List.of(springStart, springEnd), index.range("20222", null, null, null, 100));
+    assertEquals(List.of(springEnd), index.range("20222", at("2022-04-01T00:00:00"), null, null, 100));
+    assertEquals(List.of(), index.range("20231", null, null, null, 100));
+    assertEquals(List.of(springStart, springEnd, summerStart, fallStart), index.range(null, null, null, null, 100));
+  }
+
+  @Test
+  void test_range_is_read_a_page_at_a_time_through_equal_times() {
+    when(repository.findAll()).thenReturn(List.of(sameTime, fallStart, springEnd, summerStart, springStart));
+
+    assertEquals(List.of(springStart, springEnd), index.range(null, null, null, null, 2));
+    assertEquals(List.of(summerStart, fallStart), index.range(null, null, null, UCSBDateIndex.Cursor.of(springEnd), 2));
+    assertEquals(List.of(sameTime), index.range(null, null, null, UCSBDateIndex.Cursor.of(fallStart), 2));
+  }
+
+  @Test
+  void test_range_continues_after_a_cursor_whose_date_was_deleted() {
+    when(repository.findAll()).thenReturn(List.of(sameTime, fallStart, springEnd, summerStart, springStart));
+    UCSBDateIndex.Cursor cursor = UCSBDateIndex.Cursor.of(index.range(null, null, null, null, 2).get(1));
+
+    index.onEntityChanged(new EntityChangedEvent(UCSBDate.class, 2L, EntityChangedEvent.Operation.DELETE, null));
+
+    assertEquals(List.of(summerStart, fallStart), index.range(null, null, null, cursor, 2));
+  }
+
+  @Test
+  void test_cursors_are_sent_as_time_and_id() {
+    UCSBDateIndex.Cursor cursor = UCSBDateIndex.Cursor.of(springEnd);
+
+    assertEquals("2022-06-03T00:00,2", cursor.toString());
+    assertEquals(cursor, UCSBDateIndex.Cursor.parse("2022-06-03T00:00,2"));
+    assertThrows(BadRequestException.class, () -> UCSBDateIndex.Cursor.parse("2"));
+    assertThrows(BadRequestException.class, () -> UCSBDateIndex.Cursor.parse("2022-06-03T00:00,two"));
+  }
+
+  @Test
+  void test_range_that_ends_before_it_starts_is_rejected() {
+    assertThrows(BadRequestException.class,
+        () -> index.range(null, at("2022-06-03T00:00:00"), at("2022-06-01T00:00:00"), null, 100));
+  }
+
+  @Test
+  void test_upcoming_returns_the_next_dates_in_order() {
+    when(repository.findAll()).thenReturn(List.of(sameTime, fallStart, springEnd, summerStart, springStart));
+
+    assertEquals(List.of(summerStart, fallStart, sameTime), index.upcoming(null, at("2022-06-10T00:00:00"), 3));
+    assertEquals(List.of(fallStart), index.upcoming("20224", at("2022-06-10T00:00:00"), 1));
+    assertEquals(List.of(), index.upcoming(null, at("2023-01-01T00:00:00"), 3));
+  }
+
+  @Test
+  void test_writes_update_the_index_without_reloading() {
+    when(repository.findAll()).thenReturn(List.of(springStart, springEnd));
+    index.size();
+
+    springEnd.setLocalDateTime(at("2022-06-04T00:00:00"));
+    springEnd.setQuarterYYYYQ("20223");
+    index.onEntityChanged(new EntityChangedEvent(UCSBDate.class, 2L, EntityChangedEvent.Operation.UPDATE, springEnd));
+    index.onEntityChanged(new EntityChangedEvent(UCSBDate.class, 4L, EntityChangedEvent.Operation.CREATE, fallStart));
+    index.onEntityChanged(new EntityChangedEvent(UCSBDate.class, 1L, EntityChangedEvent.Operation.DELETE, null));
+
+    assertEquals(List.of(), index.range("20222", null, null, null, 100));
+    assertEquals(List.of(springEnd), index.range("20223", null, null, null, 100));
+    assertEquals(List.of(springEnd, fallStart), index.range(null, null, null, null, 100));
+    verify(repository, times(1)).findAll();
+  }
+}
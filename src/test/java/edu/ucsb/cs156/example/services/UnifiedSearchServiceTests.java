@@ -0,0 +1,129 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.models.SourcedHit;
+import edu.ucsb.cs156.example.models.UnifiedSearchResults;
+
+class UnifiedSearchServiceTests {
+
+  private ExecutorService executor = Executors.newFixedThreadPool(4);
+  private Map<String, UnifiedSearchService.Source> sources = new LinkedHashMap<>();
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static List<Object> items(UnifiedSearchResults results) {
+    return results.getHits().stream().map(SourcedHit::getItem).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_results_are_interleaved_by_rank_within_each_table() {
+    sources.put("books", (q, limit) -> List.of("book 1", "book 2", "book 3"));
+    sources.put("music", (q, limit) -> List.of("song 1"));
+    UnifiedSearchService service = new UnifiedSearchService(sources, executor, 1000);
+
+    UnifiedSearchResults results = service.search("q", 3);
+
+    assertEquals(List.of("book 1", "song 1", "book 2"), items(results));
+    assertEquals("music", results.getHits().get(1).getSource());
+    assertEquals(1.0 / 61, results.getHits().get(1).getScore(), 1e-12);
+    assertEquals(List.of(), results.getIncomplete());
+  }
+
+  @Test
+  void test_tables_are_queried_at_the_same_time() {
+    // Neither source can finish until both have started.
+    CountDownLatch started = new CountDownLatch(2);
+    UnifiedSearchService.Source waitForOther = (q, limit) -> {
+      started.countDown();
+      try {
+        return started.await(5, TimeUnit.SECONDS) ? List.of(q) : List.of();
+      } catch (InterruptedException e) {
+        return List.of();
+      }
+    };
+    sources.put("books", waitForOther);
+    sources.put("music", waitForOther);
+    UnifiedSearchService service = new UnifiedSearchService(sources, executor, 10000);
+
+    assertEquals(List.of("q", "q"), items(service.search("q", 10)));
+  }
+
+  @Test
+  void test_slow_and_failing_tables_are_left_out() {
+    sources.put("books", (q, limit) -> List.of("book 1"));
+    sources.put("music", (q, limit) -> {
+      try {
+        Thread.sleep(5000);
+      } catch (InterruptedException e) {
+      }
+      return List.of("song 1");
+    });
+    sources.put("movies", (q, limit) -> {
+      throw new IllegalStateException("database is down");
+    });
+    UnifiedSearchService service = new UnifiedSearchService(sources, executor, 50);
+
+    UnifiedSearchResults results = service.search("q", 10);
+
+    assertEquals(List.of("book 1"), items(results));
+    assertEquals(List.of("music", "movies"), results.getIncomplete());
+  }
+
+  @Test
+  void test_a_table_that_times_out_has_its_search_cancelled() throws InterruptedException {
+    CountDownLatch interrupted = new CountDownLatch(1);
+    sources.put("music", (q, limit) -> {
+      try {
+        Thread.sleep(5000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return List.of("song 1");
+    });
+    UnifiedSearchService service = new UnifiedSearchService(sources, executor, 50);
+
+    UnifiedSearchResults results = service.search("q", 10);
+
+    assertEquals(List.of("music"), results.getIncomplete());
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void test_a_saturated_pool_returns_the_tables_it_could_run() {
+    ExecutorService oneThread = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+    sources.put("books", (q, limit) -> {
+      try {
+        Thread.sleep(200); // still busy when music is submitted
+      } catch (InterruptedException e) {
+      }
+      return List.of("book 1");
+    });
+    sources.put("music", (q, limit) -> List.of("song 1"));
+    UnifiedSearchService service = new UnifiedSearchService(sources, oneThread, 5000);
+
+    UnifiedSearchResults results = service.search("q", 10);
+    oneThread.shutdownNow();
+
+    assertEquals(List.of("book 1"), items(results));
+    assertEquals(List.of("music"), results.getIncomplete());
+  }
+}
@@ -5,6 +5,8 @@ import org.springframework.context.annotation.Bean;
 
 import edu.ucsb.cs156.example.services.CurrentUserService;
 import edu.ucsb.cs156.example.services.GrantedAuthoritiesService;
+import edu.ucsb.cs156.example.services.RowCountCache;
+import edu.ucsb.cs156.example.services.TableVersionService;
 
 @TestConfiguration
 public class TestConfig {
@@ -18,4 +20,15 @@ public class TestConfig {
     public GrantedAuthoritiesService grantedAuthoritiesService() {
         return new GrantedAuthoritiesService();
     }
+
+    @Bean
+    public TableVersionService tableVersionService() {
+        return new TableVersionService();
+    }
+
+    // no caching, so every test sees the count its own mocks return
+    @Bean
+    public RowCountCache rowCountCache() {
+        return new RowCountCache(0);
+    }
 }